@@ -0,0 +1,40 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Cost of turning one chat message into a frame body and back, per wire format
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"SERIALIZED", "BINARY"})
+    private WireFormat format;
+
+    private MessageCodec codec;
+    private Message message;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = format.codec();
+        message = Message.createPrivate("user1", "user2", "Hello user2, are you coming to the meeting later?");
+        encoded = codec.encode(message);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return codec.encode(message);
+    }
+
+    @Benchmark
+    public Message decode() throws IOException {
+        return codec.decode(encoded, 0, encoded.length);
+    }
+}
@@ -0,0 +1,44 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Member;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Building a member list snapshot on the server and parsing it on the client
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipPayloadBenchmark {
+    @Param({"10", "100", "1000"})
+    private int members;
+
+    private List<Member> list;
+    private String snapshot;
+
+    @Setup
+    public void setUp() {
+        list = new ArrayList<>();
+        for (int i = 0; i < members; i++) {
+            list.add(new Member("member-" + i, InetAddress.getLoopbackAddress(), 40000 + i));
+        }
+        list.get(0).setHost(true);
+        snapshot = MembershipPayload.snapshot(members, list);
+    }
+
+    @Benchmark
+    public String encodeSnapshot() {
+        return MembershipPayload.snapshot(members, list);
+    }
+
+    @Benchmark
+    public List<Member> parseSnapshot() {
+        return MembershipPayload.members(snapshot);
+    }
+}
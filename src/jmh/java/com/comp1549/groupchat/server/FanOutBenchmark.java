@@ -0,0 +1,59 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Routing one message through the server to N in-memory members
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+    @Param({"10", "100", "1000"})
+    private int members;
+
+    private GroupServer server;
+    private ClientConnection sender;
+    private int senderHandle;
+    private Message broadcast;
+    private Message privateMessage;
+
+    @Setup
+    public void setUp() throws IOException {
+        ServerConfig config = new ServerConfig(0);
+        config.setSearch(null);         // measure routing, not indexing
+        server = new GroupServer(config);
+        for (int i = 0; i < members; i++) {
+            String id = "member-" + i;
+            ClientConnection connection = new SinkConnection(WireFormat.BINARY, 40000 + i);
+            server.registerMember(new Message(id, null, Message.Type.JOIN, "bench"), connection);
+            if (i == 0) {
+                sender = connection;
+                senderHandle = server.sessionHandle(id, connection);
+            }
+        }
+        broadcast = Message.createBroadcast("member-0", "Hello everyone, the meeting starts in five minutes");
+        privateMessage = Message.createPrivate("member-0", "member-" + (members - 1), "See you there");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public void broadcast() {
+        server.handleMessage(senderHandle, broadcast, sender, 0);
+    }
+
+    @Benchmark
+    public void privateMessage() {
+        server.handleMessage(senderHandle, privateMessage, sender, 0);
+    }
+}
@@ -0,0 +1,66 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Member;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Heartbeat bookkeeping for a large group: the wheel's periodic tick against a scan of every member,
+// which is what checkHeartbeats used to do
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeartbeatBenchmark {
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(250);
+
+    @Param({"10000"})
+    private int members;
+
+    private List<Member> list;
+    private HeartbeatWheel wheel;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        list = new ArrayList<>();
+        // Anyone who does expire during a long run rejoins straight away
+        wheel = new HeartbeatWheel(TIMEOUT, TICK, System.nanoTime(), member -> {
+            member.updateHeartbeat();
+            wheel.add(member);
+        });
+        for (int i = 0; i < members; i++) {
+            Member member = new Member("member-" + i, InetAddress.getLoopbackAddress(), 40000 + i);
+            list.add(member);
+            wheel.add(member);
+        }
+    }
+
+    @Benchmark
+    public void tick() {
+        wheel.tick(System.nanoTime());
+    }
+
+    @Benchmark
+    public int scan() {
+        long now = System.nanoTime();
+        int expired = 0;
+        for (Member member : list) {
+            if (member.getLastHeartbeatNanos() + TIMEOUT - now <= 0) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    @Benchmark
+    public void heartbeat() {
+        list.get(next++ % members).updateHeartbeat();
+    }
+}
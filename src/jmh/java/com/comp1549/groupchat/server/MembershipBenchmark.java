@@ -0,0 +1,55 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Handshake;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// One member joining and leaving a group of N, with everyone on membership deltas or on the
+// legacy full member list
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipBenchmark {
+    @Param({"10", "100", "1000"})
+    private int members;
+
+    @Param({"true", "false"})
+    private boolean deltas;
+
+    private GroupServer server;
+    private Message join;
+    private Message leave;
+
+    @Setup
+    public void setUp() throws IOException {
+        String content = deltas ? new Handshake().set(Handshake.MEMBERSHIP, Handshake.DELTA).toString() : "bench";
+        ServerConfig config = new ServerConfig(0);
+        config.setSearch(null);         // measure routing, not indexing
+        server = new GroupServer(config);
+        for (int i = 0; i < members; i++) {
+            server.registerMember(new Message("member-" + i, null, Message.Type.JOIN, content),
+                new SinkConnection(WireFormat.BINARY, 40000 + i));
+        }
+        join = new Message("joiner", null, Message.Type.JOIN, content);
+        leave = new Message("joiner", null, Message.Type.LEAVE, "Leaving group");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public void joinAndLeave() throws IOException {
+        ClientConnection connection = new SinkConnection(WireFormat.BINARY, 39999);
+        String id = server.registerMember(join, connection);
+        server.handleMessage(server.sessionHandle(id, connection), leave, connection, 0);
+    }
+}
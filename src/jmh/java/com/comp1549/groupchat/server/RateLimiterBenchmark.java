@@ -0,0 +1,45 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// What a member under its limits pays per message: with only a member limit set, or with a
+// member, type and fan-out limit
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+    @Param({"member", "all"})
+    private String limited;
+
+    private RateLimiter limiter;
+    private final AtomicLongArray buckets = new AtomicLongArray(RateLimiter.SLOTS);
+
+    @Setup
+    public void setUp() {
+        RateLimits limits = new RateLimits();
+        limits.setMemberLimit(new RateLimit(1_000_000_000L, 1_000_000_000L));
+        if (limited.equals("all")) {
+            limits.setTypeLimit(Message.Type.BROADCAST, new RateLimit(1_000_000_000L, 1_000_000_000L));
+            limits.setFanOutLimit(new RateLimit(1_000_000_000L, 1_000_000_000L));
+        }
+        limiter = new RateLimiter(limits);
+    }
+
+    // The clock read admit makes, for reference; on some virtual machines it is most of the cost
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public long admit() {
+        return limiter.admit(buckets, Message.Type.BROADCAST, 1);
+    }
+}
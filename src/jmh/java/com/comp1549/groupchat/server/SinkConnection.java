@@ -0,0 +1,51 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.protocol.WireFormat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+// In-memory member link: encodes what it is sent, as a real connection would, and drops it
+class SinkConnection implements ClientConnection {
+    private final WireFormat format;
+    private final int port;
+    private long bytes;
+
+    SinkConnection(WireFormat format, int port) {
+        this.format = format;
+        this.port = port;
+    }
+
+    @Override
+    public void send(EncodedMessage message) throws IOException {
+        bytes += message.frame(format).length;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public int queueDepth() {
+        return 0;
+    }
+
+    @Override
+    public long droppedMessages() {
+        return 0;
+    }
+
+    @Override
+    public InetAddress getAddress() {
+        return InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+    }
+}
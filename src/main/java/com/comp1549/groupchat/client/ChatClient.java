@@ -0,0 +1,513 @@
+package com.comp1549.groupchat.client;
+
+import com.comp1549.groupchat.model.Member;
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Compression;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.Handshake;
+import com.comp1549.groupchat.protocol.MembershipPayload;
+import com.comp1549.groupchat.protocol.MessageCodec;
+import com.comp1549.groupchat.protocol.SearchPayload;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// A member's connection to the server, without any console: it joins, keeps the heartbeat going,
+// tracks the member list, reconnects and catches up, and reports everything to a ChatListener.
+// Sends may come from any thread: they only queue the message, and a single writer thread packs
+// whatever has queued up into one socket write. Heartbeats go out only when nothing else has for
+// half an interval, since the server counts any message as one.
+public class ChatClient implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ChatClient.class);
+    private static final long RECONNECT_MIN_DELAY = 500; // milliseconds
+    private static final long RECONNECT_MAX_DELAY = 8000;
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+    private static final long CLOSE_TIMEOUT = 1000;      // milliseconds to drain the queue on close
+
+    private final String id;
+    private final ClientConfig config;
+    private final ChatListener listener;
+    private volatile String host;              // where a draining server sent us, else config's
+    private volatile int port;
+    private long hintedDelay = -1;             // first reconnect wait a draining server asked for
+    private volatile Socket socket;
+    private volatile OutputStream out;               // null until the JOIN has gone out
+    private final Queue<Message> outbox = new ConcurrentLinkedQueue<>();
+    private volatile Thread writer;
+    private volatile boolean writerWaiting;
+    private volatile long lastWriteNanos;
+    private DataInputStream in;                      // receiver thread only
+    private final MessageCodec codec;
+    private final ThreadFactory threads;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private volatile ScheduledFuture<?> heartbeat;
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    private long membershipVersion = -1;
+    private boolean awaitingSnapshot;
+    // Catch-up state, receiver thread only. While a replay runs, the point to resume from stays
+    // where it was, and every sequence shown since is remembered so live and replayed copies show once.
+    private String historyId;
+    private String token;
+    private long lastSequence;
+    private long replayUntil;                        // 0: not replaying
+    private final Set<Long> shownDuringReplay = new HashSet<>();
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicLong searchIds = new AtomicLong();
+    private volatile boolean running;
+
+    public ChatClient(String id, ClientConfig config, ChatListener listener) throws IOException {
+        this(id, config, listener, null);
+    }
+
+    // Clients sharing a scheduler only add a heartbeat task each, not a thread
+    ChatClient(String id, ClientConfig config, ChatListener listener, ScheduledExecutorService scheduler)
+            throws IOException {
+        this.id = id;
+        this.config = config;
+        this.listener = listener;
+        this.host = config.getHost();
+        this.port = config.getPort();
+        // Sending the JOIN in the binary codec asks the server to answer in it too
+        this.codec = WireFormat.BINARY.codec();
+        this.threads = config.isVirtualThreads()
+                ? Thread.ofVirtual().name("client-", 0).factory()
+                : Thread.ofPlatform().name("client-", 0).factory();
+        this.ownScheduler = scheduler == null;
+        this.scheduler = scheduler != null ? scheduler : Executors.newScheduledThreadPool(1, threads);
+        connect();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    private void connect() throws IOException {
+        Socket socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.socket = socket;
+    }
+
+    private void join() throws IOException {
+        // Ask for membership deltas rather than the whole list on every change, for catch-up, and
+        // for a refused join to come back as REJECTED rather than as an ERROR
+        Handshake handshake = new Handshake()
+                .set(Handshake.MEMBERSHIP, Handshake.DELTA)
+                .set(Handshake.REPLAY, "true")
+                .set(Handshake.REJECTS, "true");
+        if (historyId != null) {
+            handshake.set(Handshake.HISTORY, historyId)
+                    .set(Handshake.TOKEN, token)
+                    .set(Handshake.LAST_SEQUENCE, Long.toString(lastSequence));
+        }
+        if (!rooms.isEmpty()) {
+            handshake.set(Handshake.ROOMS, String.join(",", rooms));
+        }
+        if (config.isCompression()) {
+            handshake.set(Handshake.COMPRESS, Compression.DEFLATE);
+        }
+        // Written here rather than queued, so on a new socket it comes before anything queued meanwhile
+        OutputStream stream = socket.getOutputStream();
+        stream.write(Frames.frame(codec.encode(new Message(id, null, Message.Type.JOIN, handshake.toString()))));
+        lastWriteNanos = System.nanoTime();
+        out = stream;
+    }
+
+    // Joins the group and starts the heartbeat, the writer and the receiver thread
+    public void start() throws IOException {
+        running = true;
+        join();
+        long check = Math.max(1, config.getHeartbeatIntervalMillis() / 2);
+        heartbeat = scheduler.scheduleAtFixedRate(this::sendHeartbeat, check, check, TimeUnit.MILLISECONDS);
+        writer = threads.newThread(this::writeMessages);
+        writer.start();
+        threads.newThread(this::receiveMessages).start();
+    }
+
+    // Packs everything queued, up to the batch limit, into one write. A batch that fails to go out
+    // is dropped, and closing the socket has the receiver reconnect.
+    private void writeMessages() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 * 1024);
+        DataOutputStream batch = new DataOutputStream(bytes);
+        while (true) {
+            Message message = outbox.poll();
+            if (message == null) {
+                if (!running) {
+                    return;
+                }
+                // Submitters unpark us only once they see the flag, so check the queue again after setting it
+                writerWaiting = true;
+                if (outbox.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                writerWaiting = false;
+                continue;
+            }
+
+            bytes.reset();
+            OutputStream stream = out;
+            try {
+                do {
+                    byte[] body = codec.encode(message);
+                    batch.writeInt(body.length);
+                    batch.write(body);
+                } while (bytes.size() < MAX_BATCH_BYTES && (message = outbox.poll()) != null);
+                bytes.writeTo(stream);
+                lastWriteNanos = System.nanoTime();
+            } catch (IOException e) {
+                // Leave a socket the receiver has already replaced alone
+                if (running && stream == out) {
+                    logger.debug("{} could not write: {}", id, e.getMessage());
+                    closeSocket();
+                }
+            }
+        }
+    }
+
+    private void receiveMessages() {
+        while (running) {
+            try {
+                byte[] frame = Frames.readFrame(in);
+                handleMessage(WireFormat.decode(frame, 0, frame.length));
+            } catch (IOException e) {
+                if (!running) {
+                    break;
+                }
+                logger.warn("{} lost connection to server: {}", id, e.getMessage());
+                if (!config.isReconnect() || !reconnect()) {
+                    shutdown();
+                }
+            }
+        }
+    }
+
+    // Retries with backoff until the server takes us back; the JOIN asks for what we missed
+    private boolean reconnect() {
+        closeSocket();
+        long delay = RECONNECT_MIN_DELAY;
+        long wait = hintedDelay >= 0 ? hintedDelay : delay;
+        hintedDelay = -1;
+        while (running) {
+            try {
+                Thread.sleep(wait);
+                connect();
+                join();
+                listener.onReconnected();
+                return true;
+            } catch (IOException e) {
+                logger.debug("Reconnect failed: {}", e.getMessage());
+                closeSocket();
+                wait = delay;
+                delay = Math.min(delay * 2, RECONNECT_MAX_DELAY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Error closing socket: {}", e.getMessage());
+        }
+    }
+
+    private void handleMessage(Message message) {
+        switch (message.getType()) {
+            case PRIVATE:
+            case BROADCAST:
+                chatMessage(message);
+                break;
+            case WELCOME:
+                welcomed(Handshake.parse(message.getContent()));
+                break;
+            case REPLAY_END:
+                lastSequence = Math.max(lastSequence,
+                        Handshake.parse(message.getContent()).getLong(Handshake.SEQUENCE, 0));
+                for (long shown : shownDuringReplay) {
+                    lastSequence = Math.max(lastSequence, shown);
+                }
+                replayUntil = 0;
+                shownDuringReplay.clear();
+                listener.onCaughtUp();
+                break;
+            case ROOM_JOIN:
+                if (message.getSenderId().equals(id)) {
+                    rooms.add(message.getRecipientId());
+                    listener.onRoomJoined(message.getRecipientId(), id,
+                            Arrays.asList(message.getContent().split("\n")));
+                } else {
+                    listener.onRoomJoined(message.getRecipientId(), message.getSenderId(), List.of());
+                }
+                break;
+            case ROOM_LEAVE:
+                listener.onRoomLeft(message.getRecipientId(), message.getSenderId());
+                break;
+            case ROOM_HOST:
+                listener.onRoomHostChanged(message.getRecipientId(), message.getContent());
+                break;
+            case MEMBER_LIST:
+            case MEMBER_JOINED:
+            case MEMBER_LEFT:
+            case HOST_CHANGED:
+                applyMembership(message);
+                break;
+            case SEARCH:
+                listener.onSearchResults(SearchPayload.queryId(message.getContent()),
+                        SearchPayload.hits(message.getContent()));
+                break;
+            case RECONNECT:
+                drained(Handshake.parse(message.getContent()));
+                break;
+            case REJECTED:
+                shutdown();
+                listener.onRejected(message.getContent());
+                break;
+            case ERROR:
+                listener.onError(message.getContent());
+                break;
+            default:
+                logger.debug("Received message of type {}: {}", message.getType(), message.getContent());
+        }
+    }
+
+    // The server is going away and will close the connection once our queue is through. Every
+    // member it drains reconnects at a random point in the window, so they do not all arrive at once.
+    private void drained(Handshake hint) {
+        String server = hint.get(Handshake.SERVER);
+        int colon = server != null ? server.lastIndexOf(':') : -1;
+        if (colon > 0) {
+            try {
+                port = Integer.parseInt(server.substring(colon + 1));
+                host = server.substring(0, colon);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring malformed reconnect server {}", server);
+            }
+        }
+        long within = hint.getLong(Handshake.WITHIN, 0);
+        hintedDelay = within > 0 ? ThreadLocalRandom.current().nextLong(within) : 0;
+        listener.onServerDraining(server);
+    }
+
+    private void chatMessage(Message message) {
+        long sequence = message.getSequence();
+        if (replayUntil > 0 && sequence > 0) {
+            if (!shownDuringReplay.add(sequence)) {
+                return;
+            }
+            if (sequence <= replayUntil) {
+                listener.onChat(message, true);
+                return;
+            }
+        } else {
+            lastSequence = Math.max(lastSequence, sequence);
+        }
+        listener.onChat(message, false);
+    }
+
+    private void welcomed(Handshake welcome) {
+        long latest = welcome.getLong(Handshake.SEQUENCE, 0);
+        String history = welcome.get(Handshake.HISTORY);
+        token = welcome.get(Handshake.TOKEN);
+        if (history == null || !history.equals(historyId)) {
+            // First join, or the server lost its history: start from now
+            historyId = history;
+            lastSequence = latest;
+            replayUntil = 0;
+            shownDuringReplay.clear();
+        } else if (lastSequence < latest) {
+            // The server replays (lastSequence, latest], then sends REPLAY_END
+            replayUntil = Math.max(replayUntil, latest);
+        }
+    }
+
+    // Runs on the receiver thread; other threads only read the list through members()
+    private synchronized void applyMembership(Message message) {
+        String payload = message.getContent();
+        long version = MembershipPayload.version(payload);
+
+        if (message.getType() == Message.Type.MEMBER_LIST) {
+            members.clear();
+            for (Member member : MembershipPayload.members(payload)) {
+                members.put(member.getId(), member);
+            }
+            membershipVersion = version;
+            awaitingSnapshot = false;
+            listener.onMembers(List.copyOf(members.values()));
+            return;
+        }
+
+        // Already covered by the snapshot we have, or we are waiting for a newer one
+        if (version <= membershipVersion || awaitingSnapshot) {
+            return;
+        }
+        if (version != membershipVersion + 1) {
+            // Missed a change: our list can no longer be patched
+            awaitingSnapshot = true;
+            requestMemberList();
+            return;
+        }
+        membershipVersion = version;
+
+        switch (message.getType()) {
+            case MEMBER_JOINED:
+                Member joined = MembershipPayload.members(payload).get(0);
+                members.put(joined.getId(), joined);
+                listener.onMemberJoined(joined);
+                break;
+            case MEMBER_LEFT:
+                members.remove(MembershipPayload.memberId(payload));
+                listener.onMemberLeft(MembershipPayload.memberId(payload));
+                break;
+            case HOST_CHANGED:
+                Member host = members.get(MembershipPayload.memberId(payload));
+                if (host != null) {
+                    host.setHost(true);
+                }
+                listener.onHostChanged(MembershipPayload.memberId(payload));
+                break;
+            default:
+                break;
+        }
+    }
+
+    // The member list as of the last update
+    public synchronized List<Member> members() {
+        return new ArrayList<>(members.values());
+    }
+
+    private void requestMemberList() {
+        try {
+            send(new Message(id, null, Message.Type.MEMBER_LIST, ""));
+        } catch (IOException e) {
+            logger.error("Error requesting member list", e);
+        }
+    }
+
+    // Runs every half interval, but only sends when the link has been quiet that long
+    private void sendHeartbeat() {
+        long quiet = System.nanoTime() - lastWriteNanos;
+        if (quiet < TimeUnit.MILLISECONDS.toNanos(config.getHeartbeatIntervalMillis() / 2)) {
+            return;
+        }
+        try {
+            send(Message.createHeartbeat(id));
+        } catch (IOException e) {
+            logger.debug("Error sending heartbeat: {}", e.getMessage());
+        }
+    }
+
+    public void broadcast(String content) throws IOException {
+        send(Message.createBroadcast(id, content));
+    }
+
+    public void sendPrivate(String recipientId, String content) throws IOException {
+        send(Message.createPrivate(id, recipientId, content));
+    }
+
+    public void sendToRoom(String room, String content) throws IOException {
+        send(new Message(id, room, Message.Type.BROADCAST, content));
+    }
+
+    public void joinRoom(String room) throws IOException {
+        send(new Message(id, room, Message.Type.ROOM_JOIN, ""));
+    }
+
+    public void leaveRoom(String room) throws IOException {
+        rooms.remove(room);
+        send(new Message(id, room, Message.Type.ROOM_LEAVE, ""));
+    }
+
+    // Past messages this member can see that contain every word; the hits come back through
+    // onSearchResults with the id this returns
+    public long search(String words) throws IOException {
+        return search(words, null, 0, 0, 20);
+    }
+
+    // senderId may be null for anyone; afterMillis and beforeMillis 0 for no bound
+    public long search(String words, String senderId, long afterMillis, long beforeMillis, int limit)
+            throws IOException {
+        long queryId = searchIds.incrementAndGet();
+        send(new Message(id, null, Message.Type.SEARCH, SearchPayload.query(
+                new SearchPayload.Query(queryId, words, senderId, afterMillis, beforeMillis, limit))));
+        return queryId;
+    }
+
+    // Queues the message for the writer; fails only once the client is closed
+    private void send(Message message) throws IOException {
+        if (closed.get()) {
+            throw new IOException("Client is closed");
+        }
+        enqueue(message);
+    }
+
+    private void enqueue(Message message) {
+        outbox.add(message);
+        if (writerWaiting) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    // Leaves the group, lets the writer send what is still queued, and closes the connection
+    @Override
+    public void close() throws IOException {
+        if (closed.get()) {
+            return;
+        }
+        enqueue(new Message(id, null, Message.Type.LEAVE, "Leaving group"));
+        shutdown();
+    }
+
+    private void shutdown() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        running = false;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+        if (ownScheduler) {
+            scheduler.shutdown();
+        }
+        Thread writer = this.writer;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            if (writer != Thread.currentThread()) {
+                try {
+                    writer.join(CLOSE_TIMEOUT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        closeSocket();
+        listener.onDisconnected();
+    }
+}
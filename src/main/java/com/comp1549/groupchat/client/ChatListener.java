@@ -0,0 +1,64 @@
+package com.comp1549.groupchat.client;
+
+import com.comp1549.groupchat.model.Member;
+import com.comp1549.groupchat.model.Message;
+
+import java.util.Collection;
+import java.util.List;
+
+// What a ChatClient reports. Calls come from the client's receiver thread, one at a time, so a
+// slow listener holds up that client's reads; every method does nothing unless overridden.
+public interface ChatListener {
+    // A private or broadcast message; missed is true for messages replayed after a reconnect
+    default void onChat(Message message, boolean missed) {
+    }
+
+    // A replay after a reconnect is over
+    default void onCaughtUp() {
+    }
+
+    // The whole member list, on joining and whenever the client had to ask for it again
+    default void onMembers(Collection<Member> members) {
+    }
+
+    default void onMemberJoined(Member member) {
+    }
+
+    default void onMemberLeft(String memberId) {
+    }
+
+    default void onHostChanged(String memberId) {
+    }
+
+    // members lists the room, host first, when this client is the one joining; otherwise it is empty
+    default void onRoomJoined(String room, String memberId, List<String> members) {
+    }
+
+    default void onRoomLeft(String room, String memberId) {
+    }
+
+    default void onRoomHostChanged(String room, String memberId) {
+    }
+
+    // Hits for a search this client sent, newest first; queryId is what search() returned
+    default void onSearchResults(long queryId, List<Message> hits) {
+    }
+
+    default void onError(String error) {
+    }
+
+    // The server turned the id down; the client has already closed
+    default void onRejected(String reason) {
+    }
+
+    // The server is shutting down; the client will reconnect, to server (host:port) if it is not null
+    default void onServerDraining(String server) {
+    }
+
+    default void onReconnected() {
+    }
+
+    // The connection is gone for good: closed, or lost without reconnecting
+    default void onDisconnected() {
+    }
+}
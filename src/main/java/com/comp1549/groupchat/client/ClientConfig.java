@@ -0,0 +1,81 @@
+package com.comp1549.groupchat.client;
+
+// Connection options for a ChatClient
+public class ClientConfig {
+    private String host;
+    private int port;
+    private long heartbeatIntervalMillis;
+    private boolean reconnect;
+    private boolean virtualThreads;
+    private boolean compression;
+
+    public ClientConfig(String host, int port) {
+        setHost(host);
+        setPort(port);
+        this.heartbeatIntervalMillis = 15_000;
+        this.reconnect = true;
+        this.compression = true;
+        // -Dgroupchat.virtualThreads=true runs the receiver and heartbeat on virtual threads
+        this.virtualThreads = Boolean.getBoolean("groupchat.virtualThreads");
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        if (host == null || host.isBlank()) {
+            throw new IllegalArgumentException("host must not be empty");
+        }
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("port must be between 1 and 65535");
+        }
+        this.port = port;
+    }
+
+    // Must stay below the server's heartbeat timeout
+    public long getHeartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+
+    public void setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+        if (heartbeatIntervalMillis < 1) {
+            throw new IllegalArgumentException("heartbeatIntervalMillis must be at least 1");
+        }
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    // Whether a dropped connection is retried with backoff, or just reported
+    public boolean isReconnect() {
+        return reconnect;
+    }
+
+    public void setReconnect(boolean reconnect) {
+        this.reconnect = reconnect;
+    }
+
+    // Whether the server may send large messages compressed
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+}
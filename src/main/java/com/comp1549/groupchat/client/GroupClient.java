@@ -1,144 +1,145 @@
 package com.comp1549.groupchat.client;
 
+import com.comp1549.groupchat.model.Member;
 import com.comp1549.groupchat.model.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Scanner;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
-public class GroupClient {
+// The console front end: reads commands from stdin and prints what the ChatClient reports
+public class GroupClient implements ChatListener {
     private static final Logger logger = LoggerFactory.getLogger(GroupClient.class);
-    private static final int HEARTBEAT_INTERVAL = 15; // seconds
 
     private final String id;
-    private final Socket socket;
-    private final ObjectOutputStream out;
-    private final ObjectInputStream in;
-    private final ScheduledExecutorService scheduler;
+    private final ChatClient client;
     private final Scanner scanner;
     private volatile boolean running;
 
     public GroupClient(String id, String serverHost, int serverPort) throws IOException {
         this.id = id;
-        this.socket = new Socket(serverHost, serverPort);
-        this.out = new ObjectOutputStream(socket.getOutputStream());
-        this.in = new ObjectInputStream(socket.getInputStream());
-        this.scheduler = Executors.newScheduledThreadPool(2);
+        this.client = new ChatClient(id, new ClientConfig(serverHost, serverPort), this);
         this.scanner = new Scanner(System.in);
         this.running = true;
     }
 
     public void start() throws IOException {
-        // Send join message
-        Message joinMessage = new Message(id, null, Message.Type.JOIN,
-                String.format("Joining from %s:%d", socket.getLocalAddress().getHostAddress(), socket.getLocalPort()));
-        out.writeObject(joinMessage);
-        out.flush();
-
-        // Start heartbeat sender
-        scheduler.scheduleAtFixedRate(this::sendHeartbeat,
-                HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.SECONDS);
-
-        // Start message receiver thread
-        new Thread(this::receiveMessages).start();
+        client.start();
 
         // Display commands and start command line interface
         displayCommands();
         startCommandLineInterface();
     }
 
-    private void receiveMessages() {
-        try {
-            while (running) {
-                Message message = (Message) in.readObject();
-                handleMessage(message);
-            }
-        } catch (IOException | ClassNotFoundException e) {
-            if (running) {
-                logger.error("Error receiving messages", e);
-            }
+    @Override
+    public void onChat(Message message, boolean missed) {
+        if (missed) {
+            System.out.printf("\nMissed from %s at %s: %s%n", sender(message),
+                    message.getTimestamp(), message.getContent());
+        } else {
+            System.out.printf("\nReceived from %s: %s%n", sender(message), message.getContent());
         }
     }
 
-    private void handleMessage(Message message) {
-        switch (message.getType()) {
-            case PRIVATE:
-            case BROADCAST:
-                System.out.printf("\nReceived from %s: %s%n", message.getSenderId(), message.getContent());
-                break;
-            case MEMBER_LIST:
-                updateMemberList(message.getContent());
-                break;
-            case ERROR:
-                System.out.printf("\nError: %s%n", message.getContent());
-                if (message.getContent().contains("User ID already exists")) {
-                    System.out.println("Exiting due to duplicate user ID...");
-                    try {
-                        quit();
-                    } catch (IOException e) {
-                        logger.error("Error while quitting", e);
-                        System.exit(1);
-                    }
-                }
-                break;
-            default:
-                logger.debug("Received message of type {}: {}", message.getType(), message.getContent());
-        }
+    private static String sender(Message message) {
+        return message.isBroadcast() && message.getRecipientId() != null
+                ? message.getSenderId() + " in #" + message.getRecipientId()
+                : message.getSenderId();
     }
 
-    private void updateMemberList(String memberListStr) {
-        System.out.println("\n=== Current Group Members ===");
+    @Override
+    public void onCaughtUp() {
+        System.out.println("\n*** Caught up");
+    }
 
-        // Handle empty list case
-        if (memberListStr == null || memberListStr.trim().equals("[]")) {
-            System.out.println("No members connected");
-            return;
-        }
+    @Override
+    public void onServerDraining(String server) {
+        System.out.println(server != null ? "\n*** Server shutting down; moving to " + server
+                : "\n*** Server restarting; reconnecting shortly");
+    }
+
+    @Override
+    public void onReconnected() {
+        System.out.println("\n*** Reconnected to server");
+    }
 
-        // Remove brackets and split by "Member{"
-        String[] members = memberListStr.substring(1, memberListStr.length() - 1).split("Member\\{");
+    @Override
+    public void onMembers(Collection<Member> members) {
+        printMembers(members);
+    }
 
-        for (String member : members) {
-            // Skip empty entries
-            if (member.trim().isEmpty())
-                continue;
+    @Override
+    public void onMemberJoined(Member joined) {
+        System.out.printf("\n*** %s joined from %s:%d%n", joined.getId(),
+                joined.getip().getHostAddress(), joined.getPort());
+    }
 
-            try {
-                // Extract values using regex patterns for safety
-                String id = member.matches(".*id='([^']*)'.*") ? member.replaceAll(".*id='([^']*)'.*", "$1")
-                        : "unknown";
+    @Override
+    public void onMemberLeft(String memberId) {
+        System.out.printf("\n*** %s left%n", memberId);
+    }
 
-                String ip = member.matches(".*ip=([^,]*).*") ? member.replaceAll(".*ip=([^,]*).*", "$1") : "unknown";
+    @Override
+    public void onHostChanged(String memberId) {
+        System.out.printf("\n*** %s is now host%n", memberId);
+    }
 
-                String port = member.matches(".*port=(\\d+).*") ? member.replaceAll(".*port=(\\d+).*", "$1")
-                        : "unknown";
+    @Override
+    public void onRoomJoined(String room, String memberId, List<String> members) {
+        if (memberId.equals(id)) {
+            System.out.printf("\n*** Joined #%s with: %s (host %s)%n", room, String.join(" ", members), members.get(0));
+        } else {
+            System.out.printf("\n*** %s joined #%s%n", memberId, room);
+        }
+    }
 
-                boolean isHost = member.contains("host=true");
+    @Override
+    public void onRoomLeft(String room, String memberId) {
+        System.out.printf("\n*** %s left #%s%n", memberId, room);
+    }
 
-                // Format and print each member
-                System.out.printf("%-15s %s:%-6s %s%n",
-                        id,
-                        ip,
-                        port,
-                        isHost ? "[Host]" : "");
-            } catch (Exception e) {
-                System.out.println("Error parsing member: " + member);
-            }
+    @Override
+    public void onRoomHostChanged(String room, String memberId) {
+        System.out.printf("\n*** %s is now host of #%s%n", memberId, room);
+    }
+
+    @Override
+    public void onSearchResults(long queryId, List<Message> hits) {
+        System.out.printf("\n=== %d search result%s ===%n", hits.size(), hits.size() == 1 ? "" : "s");
+        for (Message hit : hits) {
+            System.out.printf("%s %s: %s%n", hit.getTimestamp(), sender(hit), hit.getContent());
         }
     }
 
-    private void sendHeartbeat() {
-        try {
-            Message heartbeat = Message.createHeartbeat(id);
-            out.writeObject(heartbeat);
-            out.flush();
-        } catch (IOException e) {
-            logger.error("Error sending heartbeat", e);
+    @Override
+    public void onError(String error) {
+        System.out.printf("\nError: %s%n", error);
+    }
+
+    @Override
+    public void onRejected(String reason) {
+        System.out.printf("\nError: %s%n", reason);
+        System.out.println("Exiting due to rejected user ID...");
+        System.exit(0);
+    }
+
+    private void printMembers(Collection<Member> members) {
+        System.out.println("\n=== Current Group Members ===");
+
+        if (members.isEmpty()) {
+            System.out.println("No members connected");
+            return;
+        }
+
+        for (Member member : members) {
+            System.out.printf("%-15s %s:%-6s %s%n",
+                    member.getId(),
+                    member.getip().getHostAddress(),
+                    member.getPort(),
+                    member.host() ? "[Host]" : "");
         }
     }
 
@@ -158,8 +159,7 @@ public class GroupClient {
                             System.out.println("Usage: broadcast <message>");
                             continue;
                         }
-                        String message = line.substring("broadcast ".length());
-                        sendBroadcast(message);
+                        client.broadcast(line.substring("broadcast ".length()));
                         break;
                     case "private":
                         if (parts.length < 3) {
@@ -169,7 +169,36 @@ public class GroupClient {
                         String recipientId = parts[1];
                         int messageStart = line.indexOf(recipientId) + recipientId.length() + 1;
                         String privateMessage = line.substring(messageStart);
-                        sendPrivate(recipientId, privateMessage);
+                        client.sendPrivate(recipientId, privateMessage);
+                        break;
+                    case "members":
+                        printMembers(client.members());
+                        break;
+                    case "join":
+                    case "leave":
+                        if (parts.length < 2) {
+                            System.out.println("Usage: " + parts[0].toLowerCase() + " <room>");
+                            continue;
+                        }
+                        if (parts[0].equalsIgnoreCase("join")) {
+                            client.joinRoom(parts[1]);
+                        } else {
+                            client.leaveRoom(parts[1]);
+                        }
+                        break;
+                    case "room":
+                        if (parts.length < 3) {
+                            System.out.println("Usage: room <room> <message>");
+                            continue;
+                        }
+                        client.sendToRoom(parts[1], parts[2]);
+                        break;
+                    case "search":
+                        if (parts.length < 2) {
+                            System.out.println("Usage: search <words>");
+                            continue;
+                        }
+                        client.search(line.substring("search ".length()));
                         break;
                     case "quit":
                         quit();
@@ -187,30 +216,18 @@ public class GroupClient {
         System.out.println("\nCommands:");
         System.out.println("1. broadcast <message> - Send message to all members");
         System.out.println("2. private <recipient-id> <message> - Send private message");
-        System.out.println("3. quit - Leave the group");
-    }
-
-    private void sendBroadcast(String content) throws IOException {
-        Message message = Message.createBroadcast(id, content);
-        out.writeObject(message);
-        out.flush();
-    }
-
-    private void sendPrivate(String recipientId, String content) throws IOException {
-        Message message = Message.createPrivate(id, recipientId, content);
-        out.writeObject(message);
-        out.flush();
+        System.out.println("3. members - Show current members");
+        System.out.println("4. join <room> - Join a room, creating it if needed");
+        System.out.println("5. leave <room> - Leave a room");
+        System.out.println("6. room <room> <message> - Send message to everyone in a room");
+        System.out.println("7. search <words> - Find past messages containing all the words");
+        System.out.println("8. quit - Leave the group");
     }
 
     private void quit() throws IOException {
         running = false;
-        Message leaveMessage = new Message(id, null, Message.Type.LEAVE, "Leaving group");
-        out.writeObject(leaveMessage);
-        out.flush();
-
-        scheduler.shutdown();
+        client.close();
         scanner.close();
-        socket.close();
         System.exit(0);
     }
 
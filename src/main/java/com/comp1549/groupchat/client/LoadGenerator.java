@@ -0,0 +1,313 @@
+package com.comp1549.groupchat.client;
+
+import com.comp1549.groupchat.metrics.LatencyHistogram;
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.server.GroupServer;
+import com.comp1549.groupchat.server.ServerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Capacity testing: opens many simulated members from one JVM, joins them at a set rate, then
+// sends a broadcast and private mix at a set rate for a while. Every message carries its send
+// time, so each delivery's latency is measured on the same clock. Reports the throughput
+// achieved and the delivery latency percentiles.
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final long SETTLE_MILLIS = 10_000;  // longest wait for joins to spread, or deliveries to drain
+
+    private final String host;
+    private final int port;
+    private int members;
+    private double joinsPerSecond;
+    private double messagesPerSecond;
+    private int privatePercent;
+    private int messageSize;
+    private long heartbeatIntervalMillis;
+    private long durationSeconds;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean stopping;
+
+    public LoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+        this.members = 1000;
+        this.joinsPerSecond = 200;
+        this.messagesPerSecond = 1000;
+        this.privatePercent = 10;
+        this.messageSize = 128;
+        this.heartbeatIntervalMillis = 15_000;
+        this.durationSeconds = 30;
+    }
+
+    public static LoadGenerator fromSystemProperties(String host, int port) {
+        LoadGenerator generator = new LoadGenerator(host, port);
+        generator.setMembers(Integer.getInteger("groupchat.load.members", generator.getMembers()));
+        generator.setJoinsPerSecond(Double.parseDouble(
+            System.getProperty("groupchat.load.joinsPerSecond", Double.toString(generator.getJoinsPerSecond()))));
+        generator.setMessagesPerSecond(Double.parseDouble(
+            System.getProperty("groupchat.load.messagesPerSecond", Double.toString(generator.getMessagesPerSecond()))));
+        generator.setPrivatePercent(Integer.getInteger("groupchat.load.privatePercent", generator.getPrivatePercent()));
+        generator.setMessageSize(Integer.getInteger("groupchat.load.messageSize", generator.getMessageSize()));
+        generator.setHeartbeatIntervalMillis(
+            Long.getLong("groupchat.load.heartbeatIntervalMillis", generator.getHeartbeatIntervalMillis()));
+        generator.setDurationSeconds(Long.getLong("groupchat.load.seconds", generator.getDurationSeconds()));
+        return generator;
+    }
+
+    public int getMembers() {
+        return members;
+    }
+
+    public void setMembers(int members) {
+        if (members < 2) {
+            throw new IllegalArgumentException("members must be at least 2");
+        }
+        this.members = members;
+    }
+
+    public double getJoinsPerSecond() {
+        return joinsPerSecond;
+    }
+
+    public void setJoinsPerSecond(double joinsPerSecond) {
+        if (!(joinsPerSecond > 0)) {
+            throw new IllegalArgumentException("joinsPerSecond must be positive");
+        }
+        this.joinsPerSecond = joinsPerSecond;
+    }
+
+    // Across all members together
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public void setMessagesPerSecond(double messagesPerSecond) {
+        if (!(messagesPerSecond > 0)) {
+            throw new IllegalArgumentException("messagesPerSecond must be positive");
+        }
+        this.messagesPerSecond = messagesPerSecond;
+    }
+
+    // The share of messages sent privately to one random member; the rest are broadcasts
+    public int getPrivatePercent() {
+        return privatePercent;
+    }
+
+    public void setPrivatePercent(int privatePercent) {
+        if (privatePercent < 0 || privatePercent > 100) {
+            throw new IllegalArgumentException("privatePercent must be between 0 and 100");
+        }
+        this.privatePercent = privatePercent;
+    }
+
+    // Characters of content per message, send time included
+    public int getMessageSize() {
+        return messageSize;
+    }
+
+    public void setMessageSize(int messageSize) {
+        if (messageSize < 20) {
+            throw new IllegalArgumentException("messageSize must be at least 20, to hold the send time");
+        }
+        this.messageSize = messageSize;
+    }
+
+    public long getHeartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+
+    public void setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+        if (heartbeatIntervalMillis < 1) {
+            throw new IllegalArgumentException("heartbeatIntervalMillis must be at least 1");
+        }
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(long durationSeconds) {
+        if (durationSeconds < 1) {
+            throw new IllegalArgumentException("durationSeconds must be at least 1");
+        }
+        this.durationSeconds = durationSeconds;
+    }
+
+    public Report run() throws InterruptedException {
+        ClientConfig config = new ClientConfig(host, port);
+        config.setHeartbeatIntervalMillis(heartbeatIntervalMillis);
+        config.setReconnect(false);
+        config.setVirtualThreads(true);
+        ChatListener listener = new Recipient();
+        ScheduledExecutorService heartbeats = Executors.newScheduledThreadPool(2,
+            Thread.ofPlatform().name("load-heartbeat-", 0).daemon().factory());
+        List<ChatClient> clients = new ArrayList<>(members);
+        stopping = false;
+
+        try {
+            long joinStart = System.nanoTime();
+            for (int i = 0; i < members; i++) {
+                pace(joinStart, i, joinsPerSecond);
+                try {
+                    ChatClient client = new ChatClient("load" + i, config, listener, heartbeats);
+                    client.start();
+                    clients.add(client);
+                } catch (IOException e) {
+                    logger.warn("load{} could not join: {}", i, e.getMessage());
+                }
+            }
+            double joinSeconds = (System.nanoTime() - joinStart) / 1e9;
+            if (clients.size() < 2) {
+                throw new IllegalStateException("Only " + clients.size() + " members could join");
+            }
+            // Broadcasts are only counted as owed once everyone has heard of everyone
+            ChatClient last = clients.get(clients.size() - 1);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS);
+            while (last.members().size() < clients.size() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            long sent = 0;
+            long expected = 0;
+            long sendStart = System.nanoTime();
+            long sendEnd = sendStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+            String padding = "x".repeat(messageSize);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < sendEnd) {
+                pace(sendStart, sent, messagesPerSecond);
+                ChatClient sender = clients.get(random.nextInt(clients.size()));
+                String sentAt = Long.toString(System.nanoTime());
+                String content = sentAt + ' ' + padding.substring(sentAt.length() + 1);
+                try {
+                    if (random.nextInt(100) < privatePercent) {
+                        ChatClient recipient = clients.get(random.nextInt(clients.size()));
+                        if (recipient == sender) {
+                            continue;
+                        }
+                        sender.sendPrivate(recipient.getId(), content);
+                        expected++;
+                    } else {
+                        sender.broadcast(content);
+                        expected += clients.size() - 1;
+                    }
+                    sent++;
+                } catch (IOException e) {
+                    logger.debug("{} could not send: {}", sender.getId(), e.getMessage());
+                }
+            }
+            double sendSeconds = (System.nanoTime() - sendStart) / 1e9;
+
+            // Let what is still queued arrive, until nothing more comes in
+            long delivered = latencies.count();
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS);
+            while (delivered < expected && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+                long now = latencies.count();
+                if (now == delivered) {
+                    break;
+                }
+                delivered = now;
+            }
+
+            return new Report(clients.size(), joinSeconds, sent, sendSeconds, delivered, expected,
+                latencies.percentile(0.5), latencies.percentile(0.99), latencies.percentile(0.999),
+                dropped.get());
+        } finally {
+            stopping = true;
+            for (ChatClient client : clients) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    logger.debug("{} could not leave: {}", client.getId(), e.getMessage());
+                }
+            }
+            heartbeats.shutdownNow();
+        }
+    }
+
+    // Waits until the index-th event is due at the given rate
+    private static void pace(long start, long index, double perSecond) {
+        long due = start + (long) (index * 1e9 / perSecond);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    // Shared by every simulated member, so it keeps no per-member state
+    private final class Recipient implements ChatListener {
+        @Override
+        public void onChat(Message message, boolean replayed) {
+            if (replayed) {
+                return;
+            }
+            String content = message.getContent();
+            int space = content.indexOf(' ');
+            if (space > 0) {
+                latencies.record(System.nanoTime() - Long.parseLong(content, 0, space, 10));
+            }
+        }
+
+        @Override
+        public void onDisconnected() {
+            if (!stopping) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    public record Report(int members, double joinSeconds, long sent, double sendSeconds, long delivered,
+                         long expected, long p50Nanos, long p99Nanos, long p999Nanos, long disconnected) {
+        @Override
+        public String toString() {
+            return String.format("Joined %d members in %.1fs (%.0f/s)%n"
+                    + "Sent %d messages in %.1fs (%.0f/s)%n"
+                    + "Delivered %d of %d (%.0f/s)%n"
+                    + "Latency p50 %.3fms, p99 %.3fms, p99.9 %.3fms%n"
+                    + "Disconnected during the run: %d",
+                members, joinSeconds, members / joinSeconds,
+                sent, sendSeconds, sent / sendSeconds,
+                delivered, expected, delivered / sendSeconds,
+                p50Nanos / 1e6, p99Nanos / 1e6, p999Nanos / 1e6,
+                disconnected);
+        }
+    }
+
+    // Against a running server, or with no arguments, a server started in this JVM from the
+    // same -Dgroupchat.* options as GroupServer takes
+    public static void main(String[] args) throws Exception {
+        GroupServer server = null;
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port;
+        if (args.length > 1) {
+            port = Integer.parseInt(args[1]);
+        } else {
+            server = new GroupServer(ServerConfig.fromSystemProperties(0));
+            Thread serverThread = new Thread(server::start, "server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            port = server.getLocalPort();
+        }
+
+        try {
+            System.out.println(fromSystemProperties(host, port).run());
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.comp1549.groupchat.journal;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.MessageCodec;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Durable, append-only history of chat messages in memory-mapped segment files.
+// append() only queues the message under the caller's sequence number, which must increase from
+// one call to the next. A single writer thread encodes and copies it into the active segment, and
+// forces what it has written at most once per fsync interval, so every message in between shares
+// one fsync. A full queue drops the message rather than block.
+public class Journal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+    private static final long IDLE_WAIT = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_BATCH = 4096;
+    private static final Pending CLOSE = new Pending(-1, null);
+    private static final String ID_FILE = "journal.id";
+
+    private final JournalConfig config;
+    private final MessageCodec codec = WireFormat.BINARY.codec();
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final BlockingQueue<Pending> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private final String id;
+    private final long resumeSequence;
+    private volatile long writtenSequence;      // highest sequence readers can see
+    private volatile boolean running = true;
+    private Segment active;                     // writer thread only, once started
+    private long lastRetentionCheck;
+
+    private Journal(JournalConfig config) throws IOException {
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+
+        Path directory = Files.createDirectories(config.getDirectory());
+        this.id = readOrCreateId(directory.resolve(ID_FILE));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(Segment::isSegment).sorted().toList()) {
+                Segment segment = Segment.open(path, config.getIndexIntervalBytes());
+                segments.put(segment.baseSequence(), segment);
+            }
+        }
+
+        // Sequences start at 1, so 0 can mean "nothing seen yet"
+        if (segments.isEmpty()) {
+            active = Segment.create(directory, 1, config.getSegmentBytes(), config.getIndexIntervalBytes());
+            segments.put(active.baseSequence(), active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        resumeSequence = active.lastSequence() + 1;
+        writtenSequence = resumeSequence - 1;
+        logger.info("Journal {} opened in {} at sequence {}", id, directory, resumeSequence);
+
+        this.writer = Thread.ofPlatform().name("journal-writer").daemon().unstarted(this::writeLoop);
+    }
+
+    public static Journal open(JournalConfig config) throws IOException {
+        Journal journal = new Journal(config);
+        journal.writer.start();
+        return journal;
+    }
+
+    // Never blocks on I/O; false if the message was dropped
+    public boolean append(long sequence, Message message) {
+        if (!running || !queue.offer(new Pending(sequence, message))) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // Identifies this history across restarts, so sequence numbers from it are never confused
+    // with those of another journal
+    public String id() {
+        return id;
+    }
+
+    // Where numbering continues after the entries recovered on open
+    public long resumeSequence() {
+        return resumeSequence;
+    }
+
+    // Entries from the given sequence on, oldest first; starts at the oldest retained entry if
+    // the sequence has already been deleted
+    public List<JournalEntry> read(long fromSequence, int maxEntries) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        if (maxEntries <= 0) {
+            return entries;
+        }
+        Long first = segments.floorKey(fromSequence);
+        if (first == null && segments.isEmpty()) {
+            return entries;
+        }
+        Iterable<Segment> candidates = first == null ? segments.values() : segments.tailMap(first).values();
+        for (Segment segment : candidates) {
+            boolean more = segment.read(fromSequence, (sequence, appendedMillis, body) -> {
+                entries.add(new JournalEntry(sequence, appendedMillis, codec.decode(body, 0, body.length)));
+                return entries.size() < maxEntries;
+            });
+            if (!more) {
+                break;
+            }
+        }
+        return entries;
+    }
+
+    // Sequence of the first entry appended at or after the given time
+    public long sequenceAt(long epochMillis) {
+        for (Segment segment : segments.values()) {
+            if (segment.lastMillis() >= epochMillis) {
+                long sequence = segment.sequenceAt(epochMillis);
+                if (sequence >= 0) {
+                    return sequence;
+                }
+            }
+        }
+        return writtenSequence + 1;
+    }
+
+    public long writtenSequence() {
+        return writtenSequence;
+    }
+
+    // Messages that could not be journaled: queue full, too large for a segment, or write failed
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    // Writes out everything already appended before returning
+    @Override
+    public void close() {
+        running = false;
+        queue.offer(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        long fsyncInterval = TimeUnit.MILLISECONDS.toNanos(config.getFsyncIntervalMillis());
+        long lastForce = System.nanoTime();
+        boolean dirty = false;
+
+        while (running || !queue.isEmpty()) {
+            try {
+                long wait = dirty ? Math.max(0, lastForce + fsyncInterval - System.nanoTime()) : IDLE_WAIT;
+                Pending pending = queue.poll(wait, TimeUnit.NANOSECONDS);
+                for (int batch = 0; pending != null && batch < MAX_BATCH; batch++) {
+                    if (pending != CLOSE) {
+                        write(pending);
+                        dirty = true;
+                    }
+                    pending = batch + 1 < MAX_BATCH ? queue.poll() : null;
+                }
+
+                long now = System.nanoTime();
+                if (dirty && now - lastForce >= fsyncInterval) {
+                    active.force();
+                    lastForce = now;
+                    dirty = false;
+                }
+                if (now - lastRetentionCheck >= IDLE_WAIT) {
+                    lastRetentionCheck = now;
+                    enforceRetention();
+                }
+            } catch (InterruptedException e) {
+                // Keep draining; close() stops the loop through running
+            }
+        }
+
+        active.force();
+        for (Segment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.error("Error closing journal segment", e);
+            }
+        }
+        logger.info("Journal closed at sequence {}", writtenSequence);
+    }
+
+    private void write(Pending pending) {
+        if (pending.sequence() <= active.lastSequence()) {
+            logger.warn("Message {} is out of sequence for the journal", pending.sequence());
+            dropped.increment();
+            return;
+        }
+        try {
+            byte[] body = codec.encode(pending.message());
+            long now = System.currentTimeMillis();
+            // Checked before rolling, so a record no segment can hold never leaves an empty one behind
+            if (Segment.HEADER_LENGTH + body.length > config.getSegmentBytes()) {
+                logger.warn("Message {} is too large for a journal segment", pending.sequence());
+                dropped.increment();
+                return;
+            }
+            if (!active.append(pending.sequence(), now, body)) {
+                roll(pending.sequence());
+                if (!active.append(pending.sequence(), now, body)) {
+                    logger.warn("Message {} did not fit in a new journal segment", pending.sequence());
+                    dropped.increment();
+                    return;
+                }
+            }
+            writtenSequence = pending.sequence();
+        } catch (IOException e) {
+            logger.error("Error journaling message {}", pending.sequence(), e);
+            dropped.increment();
+        }
+    }
+
+    private void roll(long baseSequence) throws IOException {
+        active.force();
+        Segment next = Segment.create(config.getDirectory(), baseSequence,
+            config.getSegmentBytes(), config.getIndexIntervalBytes());
+        segments.put(baseSequence, next);
+        active = next;
+        enforceRetention();
+    }
+
+    // Deletes the oldest segments while over the size limit or older than the age limit
+    private void enforceRetention() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.size();
+        }
+        long cutoff = System.currentTimeMillis() - config.getRetentionMillis();
+
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == active || (total <= config.getRetentionBytes() && oldest.lastMillis() >= cutoff)) {
+                break;
+            }
+            segments.remove(oldest.baseSequence());
+            total -= oldest.size();
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                logger.error("Error deleting journal segment {}", oldest.baseSequence(), e);
+            }
+        }
+    }
+
+    private static String readOrCreateId(Path file) throws IOException {
+        if (Files.exists(file)) {
+            return Files.readString(file).trim();
+        }
+        String id = Long.toHexString(new SecureRandom().nextLong());
+        Files.writeString(file, id);
+        return id;
+    }
+
+    private record Pending(long sequence, Message message) {
+    }
+}
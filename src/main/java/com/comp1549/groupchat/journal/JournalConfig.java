@@ -0,0 +1,99 @@
+package com.comp1549.groupchat.journal;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Journal options; the server only keeps a journal when it is given one of these
+public class JournalConfig {
+    private Path directory;
+    private int segmentBytes;
+    private int indexIntervalBytes;
+    private long retentionBytes;
+    private long retentionMillis;
+    private long fsyncIntervalMillis;
+    private int queueCapacity;
+
+    public JournalConfig(Path directory) {
+        this.directory = directory;
+        this.segmentBytes = 64 << 20;
+        this.indexIntervalBytes = 16 << 10;
+        this.retentionBytes = 1L << 30;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(7);
+        this.fsyncIntervalMillis = 50;
+        this.queueCapacity = 65536;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public void setSegmentBytes(int segmentBytes) {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("segmentBytes must be at least 4096");
+        }
+        this.segmentBytes = segmentBytes;
+    }
+
+    public int getIndexIntervalBytes() {
+        return indexIntervalBytes;
+    }
+
+    public void setIndexIntervalBytes(int indexIntervalBytes) {
+        if (indexIntervalBytes < 1) {
+            throw new IllegalArgumentException("indexIntervalBytes must be at least 1");
+        }
+        this.indexIntervalBytes = indexIntervalBytes;
+    }
+
+    public long getRetentionBytes() {
+        return retentionBytes;
+    }
+
+    public void setRetentionBytes(long retentionBytes) {
+        if (retentionBytes < 1) {
+            throw new IllegalArgumentException("retentionBytes must be at least 1");
+        }
+        this.retentionBytes = retentionBytes;
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    public void setRetentionMillis(long retentionMillis) {
+        if (retentionMillis < 1) {
+            throw new IllegalArgumentException("retentionMillis must be at least 1");
+        }
+        this.retentionMillis = retentionMillis;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+    public void setFsyncIntervalMillis(long fsyncIntervalMillis) {
+        if (fsyncIntervalMillis < 0) {
+            throw new IllegalArgumentException("fsyncIntervalMillis must not be negative");
+        }
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+}
@@ -0,0 +1,7 @@
+package com.comp1549.groupchat.journal;
+
+import com.comp1549.groupchat.model.Message;
+
+// A journaled message with the sequence number it was given and when it was appended
+public record JournalEntry(long sequence, long appendedMillis, Message message) {
+}
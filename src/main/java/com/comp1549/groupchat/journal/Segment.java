@@ -0,0 +1,243 @@
+package com.comp1549.groupchat.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// One fixed-size, memory-mapped journal file. Records are appended back to back:
+//   length:i32  crc32c:i32  sequence:i64  appendedMillis:i64  body[length]
+// A zero length marks the end; sequences increase but skip any message the journal dropped.
+// Only the journal writer appends. Readers see records up to the published end position,
+// and the sparse index lets them skip most of the file.
+final class Segment {
+    static final int HEADER_LENGTH = 24;
+    private static final String SUFFIX = ".log";
+
+    private final Path path;
+    private final long baseSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int indexInterval;
+
+    // Sparse index: written before indexCount is published, so readers never see a torn entry
+    private final long[] indexSequences;
+    private final long[] indexMillis;
+    private final int[] indexPositions;
+    private volatile int indexCount;
+    private int nextIndexPosition;
+
+    private volatile int end;
+    private volatile long lastSequence;
+    private volatile long lastMillis;
+
+    private Segment(Path path, long baseSequence, FileChannel channel, int size, int indexInterval) throws IOException {
+        this.path = path;
+        this.baseSequence = baseSequence;
+        this.channel = channel;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.indexInterval = indexInterval;
+        int capacity = size / indexInterval + 2;
+        this.indexSequences = new long[capacity];
+        this.indexMillis = new long[capacity];
+        this.indexPositions = new int[capacity];
+        this.lastSequence = baseSequence - 1;
+    }
+
+    static Segment create(Path directory, long baseSequence, int size, int indexInterval) throws IOException {
+        Path path = directory.resolve(fileName(baseSequence));
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(path, baseSequence, channel, size, indexInterval);
+    }
+
+    // Rebuilds the index and finds the end: the first record that is missing, torn or out of sequence
+    static Segment open(Path path, int indexInterval) throws IOException {
+        long baseSequence = baseSequence(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(path, baseSequence, channel, (int) channel.size(), indexInterval);
+        segment.recover();
+        return segment;
+    }
+
+    static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(SUFFIX) && name.length() == 20 + SUFFIX.length();
+    }
+
+    static long baseSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long baseSequence) {
+        return String.format("%020d%s", baseSequence, SUFFIX);
+    }
+
+    // Writer thread only; false if the record does not fit
+    boolean append(long sequence, long appendedMillis, byte[] body) {
+        int position = end;
+        if (buffer.capacity() - position < HEADER_LENGTH + body.length) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        buffer.putLong(position + 8, sequence);
+        buffer.putLong(position + 16, appendedMillis);
+        buffer.put(position + HEADER_LENGTH, body);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, body.length);
+
+        if (position >= nextIndexPosition) {
+            addIndexEntry(sequence, appendedMillis, position);
+        }
+        lastSequence = sequence;
+        lastMillis = appendedMillis;
+        end = position + HEADER_LENGTH + body.length;
+        return true;
+    }
+
+    // Calls the visitor for records from the given sequence on, until it returns false
+    boolean read(long fromSequence, RecordVisitor visitor) throws IOException {
+        int position = indexedPosition(fromSequence);
+        int limit = end;
+        while (position < limit) {
+            int length = buffer.getInt(position);
+            long sequence = buffer.getLong(position + 8);
+            if (sequence >= fromSequence) {
+                byte[] body = new byte[length];
+                buffer.get(position + HEADER_LENGTH, body);
+                if (!visitor.visit(sequence, buffer.getLong(position + 16), body)) {
+                    return false;
+                }
+            }
+            position += HEADER_LENGTH + length;
+        }
+        return true;
+    }
+
+    // First record appended at or after the given time, or -1 if none in this segment
+    long sequenceAt(long appendedMillis) {
+        int count = indexCount;
+        int low = 0;
+        int high = count - 1;
+        int start = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexMillis[mid] < appendedMillis) {
+                start = indexPositions[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int limit = end;
+        for (int position = start; position < limit; position += HEADER_LENGTH + buffer.getInt(position)) {
+            if (buffer.getLong(position + 16) >= appendedMillis) {
+                return buffer.getLong(position + 8);
+            }
+        }
+        return -1;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    // The mapping stays valid for readers already holding it until it is collected
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    long baseSequence() {
+        return baseSequence;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    long lastMillis() {
+        return lastMillis;
+    }
+
+    int size() {
+        return buffer.capacity();
+    }
+
+    private void recover() {
+        int position = 0;
+        CRC32C crc = new CRC32C();
+        while (buffer.capacity() - position >= HEADER_LENGTH) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - HEADER_LENGTH) {
+                break;
+            }
+            long sequence = buffer.getLong(position + 8);
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER_LENGTH, length));
+            // Sequences only ever increase; one that does not is left over from before a crash
+            if (sequence <= lastSequence || (int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            long appendedMillis = buffer.getLong(position + 16);
+            if (position >= nextIndexPosition) {
+                addIndexEntry(sequence, appendedMillis, position);
+            }
+            lastSequence = sequence;
+            lastMillis = appendedMillis;
+            position += HEADER_LENGTH + length;
+        }
+
+        // Clear whatever a crash left past the end, so it can never be mistaken for a record later
+        // Reading first keeps the untouched zero pages of a fresh file clean
+        int i = position;
+        for (; i + 8 <= buffer.capacity(); i += 8) {
+            if (buffer.getLong(i) != 0) {
+                buffer.putLong(i, 0);
+            }
+        }
+        for (; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        end = position;
+    }
+
+    private void addIndexEntry(long sequence, long appendedMillis, int position) {
+        int count = indexCount;
+        indexSequences[count] = sequence;
+        indexMillis[count] = appendedMillis;
+        indexPositions[count] = position;
+        indexCount = count + 1;
+        nextIndexPosition = position + indexInterval;
+    }
+
+    // Start of the last indexed record at or before the sequence
+    private int indexedPosition(long sequence) {
+        int low = 0;
+        int high = indexCount - 1;
+        int position = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexSequences[mid] <= sequence) {
+                position = indexPositions[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return position;
+    }
+
+    interface RecordVisitor {
+        boolean visit(long sequence, long appendedMillis, byte[] body) throws IOException;
+    }
+}
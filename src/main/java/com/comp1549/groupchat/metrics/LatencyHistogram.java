@@ -0,0 +1,99 @@
+package com.comp1549.groupchat.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Latencies in log-linear buckets: exact below 32ns, then 16 buckets per power of two up to 2^40ns
+// (about eighteen minutes), so any percentile is within about 6% of the true value. Recording is a
+// leading-zero count and one striped increment, and never allocates once a bucket's adder has its
+// cells. The server exports these as Prometheus histograms and the load generator reads percentiles.
+public final class LatencyHistogram {
+    private static final int EXACT = 32;
+    private static final int SUB_BUCKETS = 16;
+    private static final int MAX_EXPONENT = 40;     // the last bucket holds everything from 2^40ns
+    static final int BUCKETS = EXACT + (MAX_EXPONENT - 5) * SUB_BUCKETS + 1;
+    private static final int FIRST_EXPORTED = 8;    // 256ns; smaller values fold into it
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < EXACT) {
+            return (int) Math.max(0, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);     // 5 or more
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+        return EXACT + (exponent - 5) * SUB_BUCKETS + sub;
+    }
+
+    // Smallest value that falls into the bucket
+    static long lowest(int bucket) {
+        if (bucket < EXACT) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT) / SUB_BUCKETS + 5;
+        int sub = (bucket - EXACT) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - 4);
+    }
+
+    public void record(long nanos) {
+        buckets[bucket(nanos)].increment();
+        sum.add(nanos);
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets[i].sum();
+        }
+        return total;
+    }
+
+    // The midpoint of the bucket holding the given quantile, e.g. 0.99; 0 when nothing was recorded
+    public long percentile(double quantile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return i == BUCKETS - 1 ? lowest(i) : (lowest(i) + lowest(i + 1) - 1) / 2;
+            }
+        }
+        return lowest(BUCKETS - 1);
+    }
+
+    // Prometheus histogram series: cumulative buckets at each power of two in seconds, then sum and
+    // count. A power of two starts a bucket, so each bound counts the values just below it.
+    public void writeTo(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        int bucket = 0;
+        for (int exponent = FIRST_EXPORTED; exponent < MAX_EXPONENT; exponent++) {
+            for (int end = bucket(1L << exponent); bucket < end; bucket++) {
+                cumulative += buckets[bucket].sum();
+            }
+            out.append(name).append("_bucket{le=\"").append((1L << exponent) / NANOS_PER_SECOND).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+        for (; bucket < BUCKETS; bucket++) {
+            cumulative += buckets[bucket].sum();
+        }
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(sum.sum() / NANOS_PER_SECOND).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
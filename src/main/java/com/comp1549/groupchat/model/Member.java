@@ -6,18 +6,22 @@ import java.time.LocalDateTime;
 import java.util.Objects;
 
 public class Member implements Serializable {
+    // Pinned to the original computed value; the heartbeat is no longer part of the serialized form
+    private static final long serialVersionUID = 2284234573113331692L;
+
     private final String id;
     private final InetAddress ip;
     private final int port;
     private boolean host;
-    private LocalDateTime lastHeartbeat;
+    // Monotonic, so wall-clock changes cannot expire anyone; meaningless outside this JVM
+    private transient volatile long lastHeartbeatNanos;
 
     public Member(String id, InetAddress ip, int port) {
         this.id = id;
         this.ip = ip;
         this.port = port;
         this.host = false;
-        this.lastHeartbeat = LocalDateTime.now();
+        this.lastHeartbeatNanos = System.nanoTime();
     }
 
     public String getId() {
@@ -40,12 +44,17 @@ public class Member implements Serializable {
         this.host = host;
     }
 
+    public long getLastHeartbeatNanos() {
+        return lastHeartbeatNanos;
+    }
+
+    // Wall-clock view of the last heartbeat, for display
     public LocalDateTime getLastHeartbeat() {
-        return lastHeartbeat;
+        return LocalDateTime.now().minusNanos(System.nanoTime() - lastHeartbeatNanos);
     }
 
     public void updateHeartbeat() {
-        this.lastHeartbeat = LocalDateTime.now();
+        this.lastHeartbeatNanos = System.nanoTime();
     }
 
     @Override
@@ -4,6 +4,10 @@ import java.io.Serializable;
 import java.time.LocalDateTime;
 
 public class Message implements Serializable {
+    // Pinned to the original computed value so older clients can still deserialize messages
+    private static final long serialVersionUID = 7345386651257399015L;
+
+    // The binary codec sends the ordinal: only ever append new types
     public enum Type {
         JOIN,           // New member joining
         LEAVE,          // Member leaving
@@ -12,7 +16,22 @@ public class Message implements Serializable {
         PRIVATE,        // Private message between members
         BROADCAST,      // Broadcast message to all members
         MEMBER_LIST,    // List of current members
-        ERROR           // Error messages
+        ERROR,          // Error messages
+        MEMBER_JOINED,  // Membership deltas, only sent to clients that ask for them in their JOIN
+        MEMBER_LEFT,
+        HOST_CHANGED,
+        WELCOME,        // Server's reply to a JOIN that asked for catch-up: history id, token, latest sequence
+        REPLAY_END,     // Catch-up replay finished; later messages are live
+        ROOM_JOIN,      // Recipient names the room. From the server, the joiner gets the room's members
+                        // (host first, one per line) and everyone else in the room an empty content.
+        ROOM_LEAVE,     // Recipient names the room
+        ROOM_HOST,      // Server to a room: content is the room's new host
+        SEARCH,         // Client: a query over past messages. Server: that member's hits (see SearchPayload)
+        RECONNECT,      // Server going away: reconnect once it closes the connection. Content is Handshake
+                        // options: "within", milliseconds to spread the reconnect over, and "server",
+                        // the host:port to reconnect to if not this one
+        REJECTED        // Server's reply to a JOIN it refused, content saying why. Only sent to clients that
+                        // ask for it in their JOIN; others get an ERROR
     }
 
     private final String senderId;
@@ -20,13 +39,25 @@ public class Message implements Serializable {
     private final Type type;
     private final String content;
     private final LocalDateTime timestamp;
+    // Position in the server's history, 0 if none; older peers simply ignore the field
+    private final long sequence;
 
     public Message(String senderId, String recipientId, Type type, String content) {
+        this(senderId, recipientId, type, content, LocalDateTime.now());
+    }
+
+    public Message(String senderId, String recipientId, Type type, String content, LocalDateTime timestamp) {
+        this(senderId, recipientId, type, content, timestamp, 0);
+    }
+
+    public Message(String senderId, String recipientId, Type type, String content, LocalDateTime timestamp,
+                   long sequence) {
         this.senderId = senderId;
         this.recipientId = recipientId;
         this.type = type;
         this.content = content;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = timestamp;
+        this.sequence = sequence;
     }
 
     public static Message createBroadcast(String senderId, String content) {
@@ -61,6 +92,14 @@ public class Message implements Serializable {
         return timestamp;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Message withSequence(long sequence) {
+        return new Message(senderId, recipientId, type, content, timestamp, sequence);
+    }
+
     public boolean isBroadcast() {
         return type == Type.BROADCAST;
     }
@@ -0,0 +1,174 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// Compact message layout:
+//   version:u8  type:u8  timestamp:i64 (epoch millis)  sender:str  recipient:str  content:str  [sequence:varlong]
+// where str is a varint of (UTF-8 length + 1) followed by the bytes, and 0 means null.
+// The sequence is only written when set; decoders that predate it ignore the trailing bytes.
+// Sender and recipient ids are interned on decode.
+public class BinaryCodec implements MessageCodec {
+    public static final byte VERSION = 1;
+
+    private static final Message.Type[] TYPES = Message.Type.values();
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final IdInterner ids = new IdInterner(4096);
+
+    @Override
+    public byte[] encode(Message message) {
+        byte[] sender = utf8(message.getSenderId());
+        byte[] recipient = utf8(message.getRecipientId());
+        byte[] content = utf8(message.getContent());
+
+        long sequence = message.getSequence();
+        ByteBuffer buffer = ByteBuffer.allocate(10 + encodedLength(sender) + encodedLength(recipient)
+            + encodedLength(content) + (sequence > 0 ? varlongLength(sequence) : 0));
+        buffer.put(VERSION);
+        buffer.put((byte) message.getType().ordinal());
+        buffer.putLong(message.getTimestamp().atZone(ZONE).toInstant().toEpochMilli());
+        putString(buffer, sender);
+        putString(buffer, recipient);
+        putString(buffer, content);
+        if (sequence > 0) {
+            putVarlong(buffer, sequence);
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public Message decode(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        try {
+            if (buffer.get() != VERSION) {
+                throw new StreamCorruptedException("Unsupported binary codec version");
+            }
+            int type = buffer.get() & 0xFF;
+            if (type >= TYPES.length) {
+                throw new StreamCorruptedException("Unknown message type: " + type);
+            }
+            LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong()), ZONE);
+            String sender = getId(buffer);
+            String recipient = getId(buffer);
+            String content = getString(buffer);
+            long sequence = buffer.hasRemaining() ? getVarlong(buffer) : 0;
+            return new Message(sender, recipient, TYPES[type], content, timestamp, sequence);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new StreamCorruptedException("Truncated binary message");
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int encodedLength(byte[] value) {
+        int length = value == null ? 0 : value.length;
+        return varintLength(length + 1) + length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            putVarint(buffer, 0);
+            return;
+        }
+        putVarint(buffer, value.length + 1);
+        buffer.put(value);
+    }
+
+    private String getId(ByteBuffer buffer) throws StreamCorruptedException {
+        int length = getLength(buffer);
+        if (length < 0) {
+            return null;
+        }
+        String id = ids.intern(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return id;
+    }
+
+    private static String getString(ByteBuffer buffer) throws StreamCorruptedException {
+        int length = getLength(buffer);
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    // Returns -1 for null
+    private static int getLength(ByteBuffer buffer) throws StreamCorruptedException {
+        int length = getVarint(buffer) - 1;
+        if (length > buffer.remaining()) {
+            throw new StreamCorruptedException("String length exceeds message");
+        }
+        return length;
+    }
+
+    static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer buffer) throws StreamCorruptedException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    static int varlongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static void putVarlong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarlong(ByteBuffer buffer) throws StreamCorruptedException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varlong");
+    }
+}
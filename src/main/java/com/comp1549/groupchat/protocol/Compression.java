@@ -0,0 +1,116 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Optional compression of frame bodies, for clients that ask for it with "compress=deflate" in
+// their JOIN. A compressed body is:
+//   marker:u8  dictionary:u8  length:i32 (uncompressed)  raw deflate data
+// The marker starts neither codec's bodies, so compressed and plain frames can be mixed freely.
+// Membership payloads are deflated against a preset dictionary of what their lines look like.
+public final class Compression {
+    public static final String DEFLATE = "deflate";
+    public static final int HEADER_LENGTH = 6;
+
+    private static final byte MARKER = (byte) 0xDF;
+    private static final int NO_DICTIONARY = 0;
+    private static final int MEMBERSHIP = 1;
+    private static final byte[][] DICTIONARIES = {
+        null,
+        ("SERVER\tfalse\n\ttrue\n\t127.0.0.1\t\t192.168.\t10.0.0.\t0:0:0:0:0:0:0:1\t"
+            + "Member{id='', ip=127.0.0.1, port=, host=false}, Member{id='").getBytes(StandardCharsets.UTF_8)
+    };
+
+    // zlib streams are costly to set up and hold native memory, so they are pooled rather than kept
+    // per thread: a server may run a virtual thread per connection
+    private static final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    private Compression() {
+    }
+
+    public static boolean isCompressed(byte[] data, int offset, int length) {
+        return length >= HEADER_LENGTH && data[offset] == MARKER;
+    }
+
+    // The compressed form of the body, or null if compressing would not make it smaller
+    public static byte[] compress(byte[] data, int offset, int bodyLength, Message.Type type) {
+        int dictionary = dictionaryFor(type);
+        byte[] compressed = new byte[bodyLength];
+        if (compressed.length <= HEADER_LENGTH) {
+            return null;
+        }
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        int length;
+        try {
+            if (dictionary != NO_DICTIONARY) {
+                deflater.setDictionary(DICTIONARIES[dictionary]);
+            }
+            deflater.setInput(data, offset, bodyLength);
+            deflater.finish();
+            length = HEADER_LENGTH + deflater.deflate(compressed, HEADER_LENGTH, compressed.length - HEADER_LENGTH);
+            if (!deflater.finished()) {
+                return null;
+            }
+        } finally {
+            deflater.reset();
+            deflaters.add(deflater);
+        }
+
+        compressed[0] = MARKER;
+        compressed[1] = (byte) dictionary;
+        compressed[2] = (byte) (bodyLength >>> 24);
+        compressed[3] = (byte) (bodyLength >>> 16);
+        compressed[4] = (byte) (bodyLength >>> 8);
+        compressed[5] = (byte) bodyLength;
+        return Arrays.copyOf(compressed, length);
+    }
+
+    public static byte[] decompress(byte[] data, int offset, int length) throws StreamCorruptedException {
+        int dictionary = data[offset + 1] & 0xFF;
+        int original = ((data[offset + 2] & 0xFF) << 24) | ((data[offset + 3] & 0xFF) << 16)
+            | ((data[offset + 4] & 0xFF) << 8) | (data[offset + 5] & 0xFF);
+        if (dictionary >= DICTIONARIES.length || !Frames.isValidLength(original)) {
+            throw new StreamCorruptedException("Invalid compressed frame");
+        }
+
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        byte[] body = new byte[original];
+        try {
+            if (dictionary != NO_DICTIONARY) {
+                inflater.setDictionary(DICTIONARIES[dictionary]);
+            }
+            inflater.setInput(data, offset + HEADER_LENGTH, length - HEADER_LENGTH);
+            if (inflater.inflate(body) != original || !inflater.finished()) {
+                throw new StreamCorruptedException("Compressed frame does not match its length");
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Invalid compressed frame: " + e.getMessage());
+        } finally {
+            inflater.reset();
+            inflaters.add(inflater);
+        }
+        return body;
+    }
+
+    private static int dictionaryFor(Message.Type type) {
+        return switch (type) {
+            case MEMBER_LIST, MEMBER_JOINED -> MEMBERSHIP;
+            default -> NO_DICTIONARY;
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package com.comp1549.groupchat.protocol;
+
+import java.io.*;
+
+// Wire framing: a 4-byte big-endian length followed by the encoded message
+public final class Frames {
+    public static final int HEADER_LENGTH = 4;
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    // Legacy clients open with a raw Java object stream instead of frames
+    private static final int STREAM_MAGIC_HIGH = 0xAC;
+    private static final int STREAM_MAGIC_LOW = 0xED;
+
+    private Frames() {
+    }
+
+    public static byte[] frame(byte[] body) {
+        if (!isValidLength(body.length)) {
+            throw new IllegalArgumentException("Message too large for a frame: " + body.length + " bytes");
+        }
+        byte[] frame = new byte[HEADER_LENGTH + body.length];
+        writeLength(frame, body.length);
+        System.arraycopy(body, 0, frame, HEADER_LENGTH, body.length);
+        return frame;
+    }
+
+    public static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (!isValidLength(length)) {
+            throw new StreamCorruptedException("Invalid frame length: " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+
+    public static boolean isValidLength(int length) {
+        return length >= 0 && length <= MAX_FRAME_LENGTH;
+    }
+
+    public static boolean isObjectStream(int first, int second) {
+        return first == STREAM_MAGIC_HIGH && second == STREAM_MAGIC_LOW;
+    }
+
+    private static void writeLength(byte[] frame, int length) {
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+    }
+}
@@ -0,0 +1,87 @@
+package com.comp1549.groupchat.protocol;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Options a client advertises in its JOIN content as "key=value;key=value".
+// Older clients send free text there, which simply parses to no options.
+public final class Handshake {
+    public static final String MEMBERSHIP = "membership";
+    public static final String DELTA = "delta";
+    // Catch-up after a reconnect: the client says it can replay, and on rejoining names the
+    // server history it saw, the last sequence it got and the token it was given
+    public static final String REPLAY = "replay";
+    public static final String HISTORY = "history";
+    public static final String LAST_SEQUENCE = "lastSeq";
+    public static final String TOKEN = "token";
+    public static final String SEQUENCE = "seq";
+    // The client takes a refused JOIN as a REJECTED message rather than an ERROR
+    public static final String REJECTS = "rejects";
+    // Rooms to rejoin straight away, comma separated
+    public static final String ROOMS = "rooms";
+    // Frame compression the client can take, e.g. "deflate"
+    public static final String COMPRESS = "compress";
+    // A draining server's reconnect hint: where to go, and over how many milliseconds to spread out
+    public static final String SERVER = "server";
+    public static final String WITHIN = "within";
+    // Sent instead of member options by another server node opening a cluster link
+    public static final String NODE = "node";
+    // The node's proof that it knows the cluster secret: "<epoch millis>.<hex HMAC>"
+    public static final String AUTH = "auth";
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+
+    public static Handshake parse(String content) {
+        Handshake handshake = new Handshake();
+        if (content == null) {
+            return handshake;
+        }
+        for (String option : content.split(";")) {
+            int separator = option.indexOf('=');
+            if (separator > 0) {
+                handshake.options.put(option.substring(0, separator).trim(), option.substring(separator + 1).trim());
+            }
+        }
+        return handshake;
+    }
+
+    public Handshake set(String key, String value) {
+        if (key.indexOf(';') >= 0 || key.indexOf('=') >= 0 || value.indexOf(';') >= 0) {
+            throw new IllegalArgumentException("Invalid handshake option: " + key + "=" + value);
+        }
+        options.put(key, value);
+        return this;
+    }
+
+    public String get(String key) {
+        return options.get(key);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public boolean has(String key, String value) {
+        return value.equals(options.get(key));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder content = new StringBuilder();
+        options.forEach((key, value) -> {
+            if (content.length() > 0) {
+                content.append(';');
+            }
+            content.append(key).append('=').append(value);
+        });
+        return content.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.comp1549.groupchat.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Maps encoded member ids back to one shared String, so decoding a known id allocates nothing.
+// Lock-free: slots hold immutable entries and a collision simply replaces the older id.
+class IdInterner {
+    private final Entry[] entries;
+    private final int mask;
+
+    IdInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    String intern(byte[] data, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        Entry entry = entries[slot];
+        if (entry != null && Arrays.equals(entry.bytes, 0, entry.bytes.length, data, offset, offset + length)) {
+            return entry.value;
+        }
+
+        String value = new String(data, offset, length, StandardCharsets.UTF_8);
+        entries[slot] = new Entry(Arrays.copyOfRange(data, offset, offset + length), value);
+        return value;
+    }
+
+    private record Entry(byte[] bytes, String value) {
+    }
+}
@@ -0,0 +1,93 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Member;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Content of versioned membership messages, one field per tab and one record per line:
+//   MEMBER_LIST    version, then one "id, address, port, host" line per member
+//   MEMBER_JOINED  version, then the new member's line
+//   MEMBER_LEFT    version, then the member id
+//   HOST_CHANGED   version, then the new host's id
+// Every change bumps the version by one, so a client that sees a gap asks for a new snapshot.
+public final class MembershipPayload {
+    private static final char FIELD = '\t';
+    private static final char RECORD = '\n';
+
+    private MembershipPayload() {
+    }
+
+    public static String snapshot(long version, Collection<Member> members) {
+        StringBuilder payload = new StringBuilder(16 + members.size() * 40).append(version);
+        for (Member member : members) {
+            appendMember(payload.append(RECORD), member);
+        }
+        return payload.toString();
+    }
+
+    public static String joined(long version, Member member) {
+        return appendMember(new StringBuilder().append(version).append(RECORD), member).toString();
+    }
+
+    // MEMBER_LEFT and HOST_CHANGED only name the member
+    public static String event(long version, String memberId) {
+        return version + String.valueOf(RECORD) + memberId;
+    }
+
+    public static long version(String payload) {
+        int end = payload.indexOf(RECORD);
+        return Long.parseLong(end < 0 ? payload : payload.substring(0, end));
+    }
+
+    public static String memberId(String payload) {
+        return payload.substring(payload.indexOf(RECORD) + 1);
+    }
+
+    public static List<Member> members(String payload) {
+        List<Member> members = new ArrayList<>();
+        String[] records = payload.split(String.valueOf(RECORD));
+        for (int i = 1; i < records.length; i++) {
+            members.add(parseMember(records[i]));
+        }
+        return members;
+    }
+
+    // Ids are written verbatim, so they must not contain the separators
+    public static boolean isValidId(String id) {
+        if (id == null || id.isBlank()) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (Character.isISOControl(id.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static StringBuilder appendMember(StringBuilder payload, Member member) {
+        return payload.append(member.getId())
+            .append(FIELD).append(member.getip().getHostAddress())
+            .append(FIELD).append(member.getPort())
+            .append(FIELD).append(member.host());
+    }
+
+    private static Member parseMember(String record) {
+        String[] fields = record.split(String.valueOf(FIELD));
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Malformed member record: " + record);
+        }
+        try {
+            // A literal address, so this never goes to DNS
+            Member member = new Member(fields[0], InetAddress.getByName(fields[1]), Integer.parseInt(fields[2]));
+            member.setHost(Boolean.parseBoolean(fields[3]));
+            return member;
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Malformed member address: " + fields[1], e);
+        }
+    }
+}
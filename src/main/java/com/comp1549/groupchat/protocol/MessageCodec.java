@@ -0,0 +1,11 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.io.IOException;
+
+public interface MessageCodec {
+    byte[] encode(Message message) throws IOException;
+
+    Message decode(byte[] data, int offset, int length) throws IOException;
+}
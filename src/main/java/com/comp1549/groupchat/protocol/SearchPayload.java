@@ -0,0 +1,158 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+// Content of SEARCH messages, one field per tab and one record per line:
+//   from a client    query id, limit, sender ("" for anyone), after and before in epoch
+//                    milliseconds (0 for no bound), then the words a hit must all contain
+//   from the server  query id, then one hit per line, newest first: sequence, type, sender,
+//                    recipient ("" for none), epoch milliseconds, content
+// The words and each hit's content are escaped, so tabs and newlines in them survive.
+public final class SearchPayload {
+    private static final char FIELD = '\t';
+    private static final char RECORD = '\n';
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    // What a member asked for; words may be empty when only the sender or time range matters
+    public record Query(long id, String words, String senderId, long afterMillis, long beforeMillis, int limit) {
+        public Query {
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be at least 1");
+            }
+            if (senderId != null && senderId.isEmpty()) {
+                senderId = null;
+            }
+        }
+
+        public Query(long id, String words, int limit) {
+            this(id, words, null, 0, 0, limit);
+        }
+    }
+
+    private SearchPayload() {
+    }
+
+    public static String query(Query query) {
+        return new StringBuilder(64 + query.words().length())
+            .append(query.id())
+            .append(FIELD).append(query.limit())
+            .append(FIELD).append(query.senderId() != null ? query.senderId() : "")
+            .append(FIELD).append(query.afterMillis())
+            .append(FIELD).append(query.beforeMillis())
+            .append(RECORD).append(escape(query.words()))
+            .toString();
+    }
+
+    public static Query parseQuery(String payload) {
+        int end = payload != null ? payload.indexOf(RECORD) : -1;
+        if (end < 0) {
+            throw new IllegalArgumentException("Malformed search query");
+        }
+        String[] fields = payload.substring(0, end).split(String.valueOf(FIELD), -1);
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Malformed search query: " + payload.substring(0, end));
+        }
+        try {
+            return new Query(Long.parseLong(fields[0]), unescape(payload.substring(end + 1)), fields[2],
+                Long.parseLong(fields[3]), Long.parseLong(fields[4]), Integer.parseInt(fields[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed search query: " + e.getMessage(), e);
+        }
+    }
+
+    // Stops adding hits before the payload would pass maxLength characters
+    public static String results(long queryId, List<Message> hits, int maxLength) {
+        StringBuilder payload = new StringBuilder(256).append(queryId);
+        for (Message hit : hits) {
+            int mark = payload.length();
+            payload.append(RECORD).append(hit.getSequence())
+                .append(FIELD).append(hit.getType().ordinal())
+                .append(FIELD).append(hit.getSenderId())
+                .append(FIELD).append(hit.getRecipientId() != null ? hit.getRecipientId() : "")
+                .append(FIELD).append(toEpochMillis(hit.getTimestamp()))
+                .append(FIELD);
+            escape(hit.getContent(), payload);
+            if (payload.length() > maxLength) {
+                payload.setLength(mark);
+                break;
+            }
+        }
+        return payload.toString();
+    }
+
+    public static long queryId(String payload) {
+        int end = payload.indexOf(RECORD);
+        return Long.parseLong(end < 0 ? payload : payload.substring(0, end));
+    }
+
+    public static List<Message> hits(String payload) {
+        List<Message> hits = new ArrayList<>();
+        String[] records = payload.split(String.valueOf(RECORD));
+        for (int i = 1; i < records.length; i++) {
+            String[] fields = records[i].split(String.valueOf(FIELD), 6);
+            if (fields.length != 6) {
+                throw new IllegalArgumentException("Malformed search hit: " + records[i]);
+            }
+            try {
+                int type = Integer.parseInt(fields[1]);
+                if (type < 0 || type >= TYPES.length) {
+                    throw new IllegalArgumentException("Unknown message type in search hit: " + type);
+                }
+                hits.add(new Message(fields[2], fields[3].isEmpty() ? null : fields[3], TYPES[type],
+                    unescape(fields[5]), toLocalDateTime(Long.parseLong(fields[4])), Long.parseLong(fields[0])));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed search hit: " + records[i], e);
+            }
+        }
+        return hits;
+    }
+
+    // Message timestamps are local times; queries and hits carry them as epoch milliseconds
+    public static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private static String escape(String text) {
+        return escape(text, new StringBuilder(text.length() + 8)).toString();
+    }
+
+    private static StringBuilder escape(String text, StringBuilder out) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case FIELD -> out.append("\\t");
+                case RECORD -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+        return out;
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                out.append(c);
+                continue;
+            }
+            char next = text.charAt(++i);
+            out.append(next == 't' ? FIELD : next == 'n' ? RECORD : next);
+        }
+        return out.toString();
+    }
+}
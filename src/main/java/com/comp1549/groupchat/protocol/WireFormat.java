@@ -0,0 +1,42 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+// Frame bodies are self-describing: serialized bodies start with the object stream magic,
+// binary bodies with the codec version. A server answers each member in the format of its JOIN.
+// Either may arrive compressed, for clients that asked for it.
+public enum WireFormat {
+    SERIALIZED(new SerializationCodec()),
+    BINARY(new BinaryCodec());
+
+    private final MessageCodec codec;
+
+    WireFormat(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    public MessageCodec codec() {
+        return codec;
+    }
+
+    public static WireFormat of(byte[] data, int offset, int length) throws StreamCorruptedException {
+        if (length > 0 && data[offset] == BinaryCodec.VERSION) {
+            return BINARY;
+        }
+        if (length > 1 && Frames.isObjectStream(data[offset] & 0xFF, data[offset + 1] & 0xFF)) {
+            return SERIALIZED;
+        }
+        throw new StreamCorruptedException("Unknown frame format");
+    }
+
+    public static Message decode(byte[] data, int offset, int length) throws IOException {
+        if (Compression.isCompressed(data, offset, length)) {
+            byte[] body = Compression.decompress(data, offset, length);
+            return decode(body, 0, body.length);
+        }
+        return of(data, offset, length).codec.decode(data, offset, length);
+    }
+}
@@ -0,0 +1,227 @@
+package com.comp1549.groupchat.search;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// An immutable slice of the index: messages in the order they were routed, a sorted term
+// dictionary, and for each term the ascending positions of the messages that contain it.
+// Built once by the indexer or by merging neighbours, then only read.
+final class IndexSegment {
+    // Rough JVM costs, for keeping the index under its memory limit
+    private static final int MESSAGE_OVERHEAD = 160;   // message, timestamp, strings, slot
+    private static final int TERM_OVERHEAD = 80;       // string, postings array, slots
+
+    private final Message[] messages;
+    private final long[] millis;
+    private final String[] terms;
+    private final int[][] postings;
+    private final long minMillis;
+    private final long maxMillis;
+    private final long messageBytes;
+    private final long bytes;
+
+    private IndexSegment(Message[] messages, long[] millis, String[] terms, int[][] postings, long messageBytes) {
+        this.messages = messages;
+        this.millis = millis;
+        this.terms = terms;
+        this.postings = postings;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long time : millis) {
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+        }
+        this.minMillis = min;
+        this.maxMillis = max;
+        this.messageBytes = messageBytes;
+        long termBytes = 0;
+        for (int i = 0; i < terms.length; i++) {
+            termBytes += TERM_OVERHEAD + 2L * terms[i].length() + 4L * postings[i].length;
+        }
+        this.bytes = messageBytes + termBytes;
+    }
+
+    // Concatenates neighbouring segments, oldest first, into one
+    static IndexSegment merge(List<IndexSegment> segments) {
+        int total = 0;
+        long messageBytes = 0;
+        for (IndexSegment segment : segments) {
+            total += segment.size();
+            messageBytes += segment.messageBytes;
+        }
+        Message[] messages = new Message[total];
+        long[] millis = new long[total];
+        int[] bases = new int[segments.size()];
+        int base = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            IndexSegment segment = segments.get(s);
+            System.arraycopy(segment.messages, 0, messages, base, segment.size());
+            System.arraycopy(segment.millis, 0, millis, base, segment.size());
+            bases[s] = base;
+            base += segment.size();
+        }
+
+        // k-way merge of the sorted dictionaries; k is the merge factor, so a linear pick is enough
+        int[] cursors = new int[segments.size()];
+        String[] terms = new String[16];
+        int[][] postings = new int[16][];
+        int count = 0;
+        while (true) {
+            String term = null;
+            for (int s = 0; s < segments.size(); s++) {
+                String[] dictionary = segments.get(s).terms;
+                if (cursors[s] < dictionary.length && (term == null || dictionary[cursors[s]].compareTo(term) < 0)) {
+                    term = dictionary[cursors[s]];
+                }
+            }
+            if (term == null) {
+                break;
+            }
+            int length = 0;
+            for (int s = 0; s < segments.size(); s++) {
+                IndexSegment segment = segments.get(s);
+                if (cursors[s] < segment.terms.length && segment.terms[cursors[s]].equals(term)) {
+                    length += segment.postings[cursors[s]].length;
+                }
+            }
+            int[] merged = new int[length];
+            int at = 0;
+            for (int s = 0; s < segments.size(); s++) {
+                IndexSegment segment = segments.get(s);
+                if (cursors[s] < segment.terms.length && segment.terms[cursors[s]].equals(term)) {
+                    for (int position : segment.postings[cursors[s]]) {
+                        merged[at++] = bases[s] + position;
+                    }
+                    cursors[s]++;
+                }
+            }
+            if (count == terms.length) {
+                terms = Arrays.copyOf(terms, count * 2);
+                postings = Arrays.copyOf(postings, count * 2);
+            }
+            terms[count] = term;
+            postings[count++] = merged;
+        }
+        return new IndexSegment(messages, millis, Arrays.copyOf(terms, count), Arrays.copyOf(postings, count),
+            messageBytes);
+    }
+
+    int size() {
+        return messages.length;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    // Adds the segment's matches to hits, newest first, until there are limit of them. queryTerms
+    // must all be present; an empty array matches every message in the time range.
+    void search(String[] queryTerms, long afterMillis, long beforeMillis, Predicate<Message> filter,
+                List<Message> hits, int limit) {
+        if (maxMillis < afterMillis || minMillis > beforeMillis) {
+            return;
+        }
+        int[][] lists = new int[queryTerms.length][];
+        for (int i = 0; i < queryTerms.length; i++) {
+            int found = Arrays.binarySearch(terms, queryTerms[i]);
+            if (found < 0) {
+                return;
+            }
+            lists[i] = postings[found];
+        }
+        // Walk the rarest term's list and look each position up in the others
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] ends = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            ends[i] = lists[i].length;
+        }
+
+        int remaining = lists.length > 0 ? lists[0].length : messages.length;
+        candidates:
+        while (remaining-- > 0 && hits.size() < limit) {
+            int position = lists.length > 0 ? lists[0][remaining] : remaining;
+            for (int i = 1; i < lists.length; i++) {
+                int found = Arrays.binarySearch(lists[i], 0, ends[i], position);
+                // Positions only go down from here, so the rest of each list can be left out
+                ends[i] = found >= 0 ? found : -found - 1;
+                if (found < 0) {
+                    continue candidates;
+                }
+            }
+            long time = millis[position];
+            if (time >= afterMillis && time <= beforeMillis && filter.test(messages[position])) {
+                hits.add(messages[position]);
+            }
+        }
+    }
+
+    // Collects messages until sealed; the indexer thread's alone
+    static final class Builder {
+        private final Map<String, Postings> postings = new HashMap<>();
+        private Message[] messages = new Message[64];
+        private long[] millis = new long[64];
+        private int size;
+        private long messageBytes;
+
+        void add(Message message, long epochMillis, Iterable<String> terms) {
+            if (size == messages.length) {
+                messages = Arrays.copyOf(messages, size * 2);
+                millis = Arrays.copyOf(millis, size * 2);
+            }
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> new Postings()).add(size);
+            }
+            messages[size] = message;
+            millis[size] = epochMillis;
+            messageBytes += MESSAGE_OVERHEAD + 2L * (message.getContent().length() + message.getSenderId().length());
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        // Hands the collected messages over as a segment and starts again empty
+        IndexSegment seal() {
+            String[] terms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            int[][] lists = new int[terms.length][];
+            for (int i = 0; i < terms.length; i++) {
+                lists[i] = postings.get(terms[i]).toArray();
+            }
+            IndexSegment segment = new IndexSegment(Arrays.copyOf(messages, size), Arrays.copyOf(millis, size),
+                terms, lists, messageBytes);
+            postings.clear();
+            messages = new Message[64];
+            millis = new long[64];
+            size = 0;
+            messageBytes = 0;
+            return segment;
+        }
+    }
+
+    private static final class Postings {
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.comp1549.groupchat.search;
+
+// Search index options; the server only indexes messages when it is given one of these
+public class SearchConfig {
+    private long memoryBytes;
+    private int segmentMessages;
+    private long refreshMillis;
+    private int mergeFactor;
+    private int queueCapacity;
+
+    public SearchConfig() {
+        this.memoryBytes = 64L << 20;
+        this.segmentMessages = 4096;
+        this.refreshMillis = 100;
+        this.mergeFactor = 8;
+        this.queueCapacity = 65536;
+    }
+
+    // Roughly what the index may hold, messages included; the oldest segments go first
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public void setMemoryBytes(long memoryBytes) {
+        if (memoryBytes < 1 << 20) {
+            throw new IllegalArgumentException("memoryBytes must be at least " + (1 << 20));
+        }
+        this.memoryBytes = memoryBytes;
+    }
+
+    // Messages buffered before they are sealed into a searchable segment
+    public int getSegmentMessages() {
+        return segmentMessages;
+    }
+
+    public void setSegmentMessages(int segmentMessages) {
+        if (segmentMessages < 1) {
+            throw new IllegalArgumentException("segmentMessages must be at least 1");
+        }
+        this.segmentMessages = segmentMessages;
+    }
+
+    // Longest a message waits before searches can find it
+    public long getRefreshMillis() {
+        return refreshMillis;
+    }
+
+    public void setRefreshMillis(long refreshMillis) {
+        if (refreshMillis < 1) {
+            throw new IllegalArgumentException("refreshMillis must be at least 1");
+        }
+        this.refreshMillis = refreshMillis;
+    }
+
+    // How many neighbouring segments of about the same size are merged into one
+    public int getMergeFactor() {
+        return mergeFactor;
+    }
+
+    public void setMergeFactor(int mergeFactor) {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("mergeFactor must be at least 2");
+        }
+        this.mergeFactor = mergeFactor;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+}
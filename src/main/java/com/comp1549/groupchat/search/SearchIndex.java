@@ -0,0 +1,282 @@
+package com.comp1549.groupchat.search;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.SearchPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// In-memory inverted index over the chat messages the server routes.
+// add() only queues the message, so routing never waits on the index. A single indexer thread
+// tokenizes what has queued into a buffer, and seals the buffer into an immutable segment once it
+// is full or its oldest message has waited a refresh interval; only sealed segments are searched.
+// A merge thread combines runs of neighbouring segments of about the same size, so a search looks
+// at a few large segments rather than many small ones. When the index grows past its memory limit
+// the oldest segments are dropped: searches cover the most recent messages that fit.
+// A full queue drops the message rather than block.
+public class SearchIndex implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndex.class);
+    private static final long IDLE_WAIT = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_BATCH = 4096;
+    private static final int MAX_SEGMENT_SHARE = 8;   // no merge makes a segment over 1/8 of the memory limit
+    private static final Message CLOSE = new Message(null, null, Message.Type.HEARTBEAT, "");
+
+    private final SearchConfig config;
+    private final BlockingQueue<Message> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread indexer;
+    private final ExecutorService merger;
+    private final AtomicBoolean merging = new AtomicBoolean();
+    private final Lock lock = new ReentrantLock();    // guards replacing segments
+    private volatile List<IndexSegment> segments = List.of();   // oldest first
+    private volatile boolean running = true;
+    private final IndexSegment.Builder buffer = new IndexSegment.Builder();  // indexer thread only
+
+    private SearchIndex(SearchConfig config) {
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        this.indexer = Thread.ofPlatform().name("search-indexer").daemon().unstarted(this::indexLoop);
+        this.merger = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("search-merger").daemon().factory());
+    }
+
+    public static SearchIndex open(SearchConfig config) {
+        SearchIndex index = new SearchIndex(config);
+        index.indexer.start();
+        return index;
+    }
+
+    // Private and broadcast messages only; never blocks, and false if the message was dropped
+    public boolean add(Message message) {
+        Message.Type type = message.getType();
+        if ((type != Message.Type.BROADCAST && type != Message.Type.PRIVATE) || message.getContent() == null) {
+            return false;
+        }
+        if (!running || !queue.offer(message)) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // Newest first: up to limit messages containing every word, from the sender if one is given,
+    // timestamped within [afterMillis, beforeMillis] (0 leaves that end open), that pass the filter
+    public List<Message> search(String words, String senderId, long afterMillis, long beforeMillis, int limit,
+                                Predicate<Message> filter) {
+        Set<String> terms = Tokenizer.terms(words);
+        if (senderId != null) {
+            terms.add(Tokenizer.sender(senderId));
+        }
+        String[] queryTerms = terms.toArray(new String[0]);
+        long before = beforeMillis > 0 ? beforeMillis : Long.MAX_VALUE;
+
+        List<Message> hits = new ArrayList<>(Math.min(limit, 256));
+        List<IndexSegment> current = segments;
+        for (int i = current.size() - 1; i >= 0 && hits.size() < limit; i--) {
+            current.get(i).search(queryTerms, afterMillis, before, filter, hits, limit);
+        }
+        return hits;
+    }
+
+    // Messages that could not be indexed because the queue was full
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public long documents() {
+        long documents = 0;
+        for (IndexSegment segment : segments) {
+            documents += segment.size();
+        }
+        return documents;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public long memoryBytes() {
+        long bytes = 0;
+        for (IndexSegment segment : segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+
+    // Indexes everything already added before returning
+    @Override
+    public void close() {
+        running = false;
+        queue.offer(CLOSE);
+        try {
+            indexer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        merger.shutdownNow();
+    }
+
+    private void indexLoop() {
+        long refresh = TimeUnit.MILLISECONDS.toNanos(config.getRefreshMillis());
+        long firstBuffered = 0;
+
+        while (running || !queue.isEmpty()) {
+            try {
+                long wait = buffer.isEmpty() ? IDLE_WAIT : Math.max(0, firstBuffered + refresh - System.nanoTime());
+                Message message = queue.poll(wait, TimeUnit.NANOSECONDS);
+                for (int batch = 0; message != null && batch < MAX_BATCH; batch++) {
+                    if (message != CLOSE) {
+                        if (buffer.isEmpty()) {
+                            firstBuffered = System.nanoTime();
+                        }
+                        index(message);
+                        if (buffer.size() >= config.getSegmentMessages()) {
+                            seal();
+                        }
+                    }
+                    message = batch + 1 < MAX_BATCH ? queue.poll() : null;
+                }
+                if (!buffer.isEmpty() && System.nanoTime() - firstBuffered >= refresh) {
+                    seal();
+                }
+            } catch (InterruptedException e) {
+                // Keep draining; close() stops the loop through running
+            } catch (RuntimeException e) {
+                logger.error("Error indexing messages", e);
+            }
+        }
+        if (!buffer.isEmpty()) {
+            seal();
+        }
+        logger.debug("Search index closed with {} messages in {} segments", documents(), segmentCount());
+    }
+
+    private void index(Message message) {
+        Set<String> terms = Tokenizer.terms(message.getContent());
+        terms.add(Tokenizer.sender(message.getSenderId()));
+        buffer.add(message, SearchPayload.toEpochMillis(message.getTimestamp()), terms);
+    }
+
+    private void seal() {
+        IndexSegment segment = buffer.seal();
+        lock.lock();
+        try {
+            List<IndexSegment> next = new ArrayList<>(segments.size() + 1);
+            next.addAll(segments);
+            next.add(segment);
+            segments = enforceLimit(next);
+        } finally {
+            lock.unlock();
+        }
+        scheduleMerge();
+    }
+
+    // Drops the oldest segments while over the memory limit, always keeping the newest
+    private List<IndexSegment> enforceLimit(List<IndexSegment> list) {
+        long total = 0;
+        for (IndexSegment segment : list) {
+            total += segment.bytes();
+        }
+        int first = 0;
+        while (total > config.getMemoryBytes() && first < list.size() - 1) {
+            total -= list.get(first++).bytes();
+        }
+        return List.copyOf(list.subList(first, list.size()));
+    }
+
+    private void scheduleMerge() {
+        if (running && mergeCandidate(segments) != null && merging.compareAndSet(false, true)) {
+            merger.execute(this::mergeLoop);
+        }
+    }
+
+    private void mergeLoop() {
+        try {
+            List<IndexSegment> run;
+            while (running && (run = mergeCandidate(segments)) != null) {
+                IndexSegment merged = IndexSegment.merge(run);
+                lock.lock();
+                try {
+                    segments = replace(segments, run, merged);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error merging search segments", e);
+        } finally {
+            merging.set(false);
+        }
+        // A seal may have come in after the last look but before the flag was cleared
+        if (mergeCandidate(segments) != null) {
+            scheduleMerge();
+        }
+    }
+
+    // The oldest run of mergeFactor neighbours in the same size tier, or null if there is none.
+    // Oldest first keeps the segments in tiers from largest to smallest, so none is left behind.
+    private List<IndexSegment> mergeCandidate(List<IndexSegment> list) {
+        int factor = config.getMergeFactor();
+        long maxBytes = config.getMemoryBytes() / MAX_SEGMENT_SHARE;
+        int runStart = 0;
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0 && tier(list.get(i)) != tier(list.get(i - 1))) {
+                runStart = i;
+            }
+            if (i - runStart + 1 == factor) {
+                List<IndexSegment> run = list.subList(runStart, i + 1);
+                long bytes = 0;
+                for (IndexSegment segment : run) {
+                    bytes += segment.bytes();
+                }
+                if (bytes <= maxBytes) {
+                    return List.copyOf(run);
+                }
+                runStart++;
+            }
+        }
+        return null;
+    }
+
+    // 0 below segmentMessages * mergeFactor messages, then one more for each further factor
+    private int tier(IndexSegment segment) {
+        long bound = (long) config.getSegmentMessages() * config.getMergeFactor();
+        int tier = 0;
+        while (segment.size() >= bound) {
+            tier++;
+            bound *= config.getMergeFactor();
+        }
+        return tier;
+    }
+
+    // Unless the memory limit dropped part of the run in the meantime
+    private List<IndexSegment> replace(List<IndexSegment> list, List<IndexSegment> run, IndexSegment merged) {
+        int start = list.indexOf(run.get(0));
+        if (start < 0 || start + run.size() > list.size()) {
+            return list;
+        }
+        for (int i = 0; i < run.size(); i++) {
+            if (list.get(start + i) != run.get(i)) {
+                return list;
+            }
+        }
+        List<IndexSegment> next = new ArrayList<>(list.size() - run.size() + 1);
+        next.addAll(list.subList(0, start));
+        next.add(merged);
+        next.addAll(list.subList(start + run.size(), list.size()));
+        return enforceLimit(next);
+    }
+}
@@ -0,0 +1,44 @@
+package com.comp1549.groupchat.search;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Splits text into lower-case runs of letters and digits, the same way for messages and queries.
+// Senders are indexed as "@id" terms, which no word can collide with.
+final class Tokenizer {
+    static final int MAX_TERM_LENGTH = 64;        // longer runs are not indexed
+    private static final char SENDER = '@';
+
+    private Tokenizer() {
+    }
+
+    static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                term.appendCodePoint(Character.toLowerCase(codePoint));
+            } else {
+                add(terms, term);
+            }
+        }
+        add(terms, term);
+        return terms;
+    }
+
+    static String sender(String senderId) {
+        return SENDER + senderId;
+    }
+
+    private static void add(Set<String> terms, StringBuilder term) {
+        if (term.length() > 0 && term.length() <= MAX_TERM_LENGTH) {
+            terms.add(term.toString());
+        }
+        term.setLength(0);
+    }
+}
@@ -0,0 +1,135 @@
+package com.comp1549.groupchat.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Direct buffers for socket I/O, reused instead of allocated and freed for every message.
+// Sizes are rounded up to a power of two from MIN_SIZE to MAX_SIZE, and each size keeps its share
+// of maxIdleBytes as idle buffers; anything larger is allocated for the one use and left to the GC.
+// With -Dgroupchat.bufferLeakDetection=true (the tests run that way) every buffer is watched, and
+// one that becomes unreachable before its last release is logged with where it was taken.
+final class BufferPool {
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+    static final int MIN_SIZE = 1 << 9;
+    static final int MAX_SIZE = 1 << 16;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+    private static final boolean LEAK_DETECTION = Boolean.getBoolean("groupchat.bufferLeakDetection");
+    private static final Cleaner LEAK_WATCHER = Cleaner.create();
+
+    // Idle buffers by size class; null where the share is too small to keep even one
+    private final ArrayBlockingQueue<ByteBuffer>[] idle;
+    private final boolean leakDetection;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder leaked = new LongAdder();
+
+    BufferPool(long maxIdleBytes) {
+        this(maxIdleBytes, LEAK_DETECTION);
+    }
+
+    @SuppressWarnings("unchecked")
+    BufferPool(long maxIdleBytes, boolean leakDetection) {
+        this.idle = new ArrayBlockingQueue[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            long count = maxIdleBytes / CLASSES / sizeOf(i);
+            if (count > 0) {
+                idle[i] = new ArrayBlockingQueue<>((int) Math.min(count, Integer.MAX_VALUE));
+            }
+        }
+        this.leakDetection = leakDetection;
+    }
+
+    // A cleared buffer of at least capacity bytes, with one reference for the caller
+    PooledBuffer acquire(int capacity) {
+        int sizeClass = sizeClass(capacity);
+        ByteBuffer buffer = sizeClass >= 0 && idle[sizeClass] != null ? idle[sizeClass].poll() : null;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(sizeClass >= 0 ? sizeOf(sizeClass) : capacity);
+            allocated.increment();
+        }
+        acquired.increment();
+        PooledBuffer pooled = new PooledBuffer(this, buffer, sizeClass);
+        if (leakDetection) {
+            pooled.watch(LEAK_WATCHER.register(pooled,
+                new LeakCheck(this, pooled.references(), new Throwable("Acquired here"))));
+        }
+        return pooled;
+    }
+
+    // The bytes ready to be read from the start of the buffer
+    PooledBuffer copyOf(byte[] bytes) {
+        PooledBuffer pooled = acquire(bytes.length);
+        pooled.buffer().put(bytes).flip();
+        return pooled;
+    }
+
+    // Called once, by the last release
+    void recycle(ByteBuffer buffer, int sizeClass) {
+        returned.increment();
+        if (sizeClass >= 0 && idle[sizeClass] != null) {
+            idle[sizeClass].offer(buffer.clear());
+        }
+    }
+
+    long buffersInUse() {
+        return acquired.sum() - returned.sum();
+    }
+
+    long leaks() {
+        return leaked.sum();
+    }
+
+    void writeTo(StringBuilder out) {
+        int idleBuffers = 0;
+        long idleBytes = 0;
+        for (int i = 0; i < CLASSES; i++) {
+            if (idle[i] != null) {
+                idleBuffers += idle[i].size();
+                idleBytes += (long) idle[i].size() * sizeOf(i);
+            }
+        }
+        Metrics.gauge(out, "groupchat_buffers_in_use", "Pooled I/O buffers held by frames and connections",
+            buffersInUse());
+        Metrics.gauge(out, "groupchat_buffers_idle", "Pooled I/O buffers waiting to be reused", idleBuffers);
+        Metrics.gauge(out, "groupchat_buffers_idle_bytes", "Off-heap memory held by idle pooled buffers", idleBytes);
+        Metrics.counter(out, "groupchat_buffers_allocated_total", "Direct buffers allocated because none was idle",
+            allocated.sum());
+        if (leakDetection) {
+            Metrics.counter(out, "groupchat_buffers_leaked_total", "Pooled buffers lost without their last release",
+                leaked.sum());
+        }
+    }
+
+    // -1 for sizes the pool does not keep
+    static int sizeClass(int capacity) {
+        if (capacity > MAX_SIZE) {
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(capacity, MIN_SIZE) - 1);
+        return shift - MIN_SHIFT;
+    }
+
+    static int sizeOf(int sizeClass) {
+        return MIN_SIZE << sizeClass;
+    }
+
+    // Holds only the reference count, so it never keeps the buffer it watches reachable
+    private record LeakCheck(BufferPool pool, AtomicInteger references, Throwable acquiredAt) implements Runnable {
+        @Override
+        public void run() {
+            if (references.get() > 0) {
+                pool.leaked.increment();
+                pool.returned.increment();
+                logger.error("Pooled buffer was not released before it became unreachable", acquiredAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+// A member's outbound link, independent of the transport that accepted it
+interface ClientConnection {
+    // Fan-outs pass the same encoded message to every recipient
+    void send(EncodedMessage message) throws IOException;
+
+    default void send(Message message) throws IOException {
+        EncodedMessage encoded = new EncodedMessage(message);
+        try {
+            send(encoded);
+        } finally {
+            encoded.release();
+        }
+    }
+
+    // From now on, frames with bodies of at least threshold bytes go out compressed. Only framed
+    // connections can; the rest ignore it.
+    default void enableCompression(int threshold) {
+    }
+
+    // Lets what is already queued go out, then closes
+    default void closeWhenDrained() {
+        close();
+    }
+
+    // Messages waiting for this member's writer
+    int queueDepth();
+
+    // Messages discarded by the overflow policy
+    long droppedMessages();
+
+    InetAddress getAddress();
+
+    int getPort();
+
+    void close();
+}
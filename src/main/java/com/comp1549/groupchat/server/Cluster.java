@@ -0,0 +1,242 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.Handshake;
+import com.comp1549.groupchat.protocol.MembershipPayload;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Links to the other nodes of a cluster. Every pair of nodes shares one link, dialed by the node
+// with the lower id and accepted by the other like any client, whose JOIN names the node instead
+// of a member. Links use the binary frames clients do. Over a link each node sends its own members'
+// joins and leaves (after a snapshot when the link comes up), privates for members on the other
+// node, and every broadcast once, for the other node to fan out to its own members.
+// A dialing node proves it knows the cluster secret with an HMAC of both node ids and the time, so
+// the secret itself never crosses the wire. A proof is only good for a short window and only for a
+// later time than the last one accepted from that node, so a recorded JOIN cannot be replayed.
+final class Cluster {
+    private static final Logger logger = LoggerFactory.getLogger(Cluster.class);
+    private static final long RECONNECT_MIN_DELAY = 250; // milliseconds
+    private static final long RECONNECT_MAX_DELAY = 5000;
+    private static final long AUTH_WINDOW = 30_000;      // milliseconds either way, for clock skew
+    private static final String HMAC = "HmacSHA256";
+
+    private final GroupServer server;
+    private final ServerConfig config;
+    private final String nodeId;
+    private final Map<String, String> peerAddresses = new HashMap<>();   // nodeId -> host:port
+    private final Map<String, ClientConnection> links = new ConcurrentHashMap<>();
+    private final Map<ClientConnection, String> accepted = new ConcurrentHashMap<>();
+    private final SecretKeySpec secret;
+    private final Map<String, Long> lastProof = new HashMap<>();         // guarded by itself
+    private final ExecutorService threads = Executors.newThreadPerTaskExecutor(
+        Thread.ofPlatform().name("cluster-", 0).daemon().factory());
+    private volatile boolean running = true;
+
+    Cluster(GroupServer server, ServerConfig config) {
+        this.server = server;
+        this.config = config;
+        this.nodeId = config.getNodeId();
+        if (config.getClusterSecret() == null) {
+            throw new IllegalArgumentException("A cluster node needs groupchat.clusterSecret to authenticate its links");
+        }
+        this.secret = new SecretKeySpec(config.getClusterSecret().getBytes(StandardCharsets.UTF_8), HMAC);
+        for (String peer : config.getPeers()) {
+            int at = peer.indexOf('@');
+            if (!peer.substring(0, at).equals(nodeId)) {
+                peerAddresses.put(peer.substring(0, at), peer.substring(at + 1));
+            }
+        }
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    void start() {
+        peerAddresses.forEach((peer, address) -> {
+            if (nodeId.compareTo(peer) < 0) {
+                threads.execute(() -> dial(peer, address));
+            }
+        });
+    }
+
+    boolean isPeer(String node) {
+        return peerAddresses.containsKey(node);
+    }
+
+    // Whether a JOIN naming node carries a fresh proof made with the cluster secret
+    boolean authenticates(String node, String auth) {
+        int dot = auth != null ? auth.indexOf('.') : -1;
+        if (dot < 0) {
+            return false;
+        }
+        long millis;
+        byte[] mac;
+        try {
+            millis = Long.parseLong(auth.substring(0, dot));
+            mac = HexFormat.of().parseHex(auth.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (Math.abs(System.currentTimeMillis() - millis) > AUTH_WINDOW
+                || !MessageDigest.isEqual(mac, mac(node, nodeId, millis))) {
+            return false;
+        }
+        synchronized (lastProof) {
+            Long last = lastProof.get(node);
+            if (last != null && millis <= last) {
+                return false;
+            }
+            lastProof.put(node, millis);
+        }
+        return true;
+    }
+
+    private String proof(String to) {
+        long millis = System.currentTimeMillis();
+        return millis + "." + HexFormat.of().formatHex(mac(nodeId, to, millis));
+    }
+
+    private byte[] mac(String from, String to, long millis) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(secret);
+            return mac.doFinal((from + '\n' + to + '\n' + millis).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC + " is not available", e);
+        }
+    }
+
+    // The node at the other end of an accepted link, or null for a member's connection
+    String nodeOf(ClientConnection connection) {
+        return connection == null || accepted.isEmpty() ? null : accepted.get(connection);
+    }
+
+    void accept(String node, ClientConnection link) {
+        accepted.put(link, node);
+    }
+
+    // Called under the membership lock, just before the snapshot goes out
+    void addLink(String node, ClientConnection link) {
+        ClientConnection previous = links.put(node, link);
+        if (previous != null && previous != link) {
+            previous.close();
+        }
+    }
+
+    // False if the link had already been replaced
+    boolean removeLink(String node, ClientConnection link) {
+        accepted.remove(link);
+        return links.remove(node, link);
+    }
+
+    int linkCount() {
+        return links.size();
+    }
+
+    void send(String node, EncodedMessage message) throws IOException {
+        ClientConnection link = links.get(node);
+        if (link != null) {
+            link.send(message);
+        }
+    }
+
+    // Once per node, however many members it has
+    void broadcast(EncodedMessage message) throws IOException {
+        for (ClientConnection link : links.values()) {
+            link.send(message);
+        }
+    }
+
+    void broadcast(Message message) throws IOException {
+        EncodedMessage encoded = new EncodedMessage(message);
+        try {
+            broadcast(encoded);
+        } finally {
+            encoded.release();
+        }
+    }
+
+    void receive(String node, Message message) throws IOException {
+        switch (message.getType()) {
+            case MEMBER_LIST -> server.remoteSnapshot(node, MembershipPayload.members(message.getContent()));
+            case MEMBER_JOINED -> server.remoteJoined(node, MembershipPayload.members(message.getContent()).get(0));
+            case MEMBER_LEFT -> server.remoteLeft(node, MembershipPayload.memberId(message.getContent()));
+            case PRIVATE, BROADCAST -> server.deliverFromPeer(message);
+            default -> logger.warn("Unexpected {} from node {}", message.getType(), node);
+        }
+    }
+
+    void stop() {
+        running = false;
+        for (ClientConnection link : links.values()) {
+            link.close();
+        }
+        threads.shutdownNow();
+    }
+
+    // Keeps a link to the peer up, redialing with backoff whenever it drops
+    private void dial(String peer, String address) {
+        int colon = address.lastIndexOf(':');
+        String host = address.substring(0, colon);
+        int port = Integer.parseInt(address.substring(colon + 1));
+        long delay = RECONNECT_MIN_DELAY;
+
+        while (running) {
+            FramedStreamConnection link = null;
+            try {
+                Socket socket = new Socket(host, port);
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                link = new FramedStreamConnection(socket, WireFormat.BINARY, config, server.metrics());
+                threads.execute(link::writeLoop);
+
+                String hello = new Handshake().set(Handshake.NODE, nodeId).set(Handshake.AUTH, proof(peer)).toString();
+                link.send(new Message(nodeId, null, Message.Type.JOIN, hello));
+                server.linkUp(peer, link);
+                logger.info("Linked to node {} at {}", peer, address);
+                delay = RECONNECT_MIN_DELAY;
+
+                while (running) {
+                    byte[] frame = Frames.readFrame(in);
+                    receive(peer, WireFormat.decode(frame, 0, frame.length));
+                }
+            } catch (IOException e) {
+                if (running) {
+                    logger.info("Link to node {} at {} failed: {}", peer, address, e.getMessage());
+                }
+            } finally {
+                if (link != null) {
+                    link.close();
+                    server.linkDown(peer, link);
+                }
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            delay = Math.min(delay * 2, RECONNECT_MAX_DELAY);
+        }
+    }
+}
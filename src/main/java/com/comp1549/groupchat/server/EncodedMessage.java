@@ -0,0 +1,132 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.metrics.LatencyHistogram;
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Compression;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.WireFormat;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// A message encoded at most once per wire format, and compressed at most once per format, and
+// shared by every recipient of a fan-out
+final class EncodedMessage {
+    private static final int FORMATS = WireFormat.values().length;
+
+    private final Message message;
+    // Plain frames by format, then the frames for members that take compression
+    private final AtomicReferenceArray<byte[]> frames = new AtomicReferenceArray<>(2 * FORMATS);
+    private final AtomicReferenceArray<PooledBuffer> directFrames = new AtomicReferenceArray<>(2 * FORMATS);
+    private volatile boolean released;
+    private volatile Trace trace;               // only for sampled messages
+
+    EncodedMessage(Message message) {
+        this.message = message;
+    }
+
+    Message message() {
+        return message;
+    }
+
+    Trace trace() {
+        return trace;
+    }
+
+    // Set before the message is handed to any connection
+    void trace(Trace trace) {
+        this.trace = trace;
+    }
+
+    // Complete frame, header included; callers must not modify it
+    byte[] frame(WireFormat format) throws IOException {
+        return frame(format, null);
+    }
+
+    // Records the encoding time if this call is the one that encodes
+    byte[] frame(WireFormat format, LatencyHistogram encodeTimes) throws IOException {
+        byte[] frame = frames.get(format.ordinal());
+        if (frame == null) {
+            long start = System.nanoTime();
+            frame = Frames.frame(format.codec().encode(message));
+            long nanos = System.nanoTime() - start;
+            if (encodeTimes != null) {
+                encodeTimes.record(nanos);
+            }
+            Trace traced = trace;
+            if (traced != null) {
+                traced.serialized(nanos);
+            }
+            if (!frames.compareAndSet(format.ordinal(), null, frame)) {
+                frame = frames.get(format.ordinal());
+            }
+        }
+        return frame;
+    }
+
+    // For a member that takes compression: bodies of at least compressAbove bytes are compressed,
+    // unless that would not make them smaller. A negative compressAbove means no compression.
+    byte[] frame(WireFormat format, int compressAbove, LatencyHistogram encodeTimes) throws IOException {
+        if (compressAbove < 0) {
+            return frame(format, encodeTimes);
+        }
+        int slot = FORMATS + format.ordinal();
+        byte[] frame = frames.get(slot);
+        if (frame == null) {
+            frame = frame(format, encodeTimes);
+            int bodyLength = frame.length - Frames.HEADER_LENGTH;
+            if (bodyLength >= compressAbove) {
+                byte[] compressed = Compression.compress(frame, Frames.HEADER_LENGTH, bodyLength, message.getType());
+                if (compressed != null) {
+                    frame = Frames.frame(compressed);
+                }
+            }
+            if (!frames.compareAndSet(slot, null, frame)) {
+                frame = frames.get(slot);
+            }
+        }
+        return frame;
+    }
+
+    // The frame off-heap, copied into a pooled buffer once and shared by every recipient until
+    // release(); after that each call copies it for that caller alone. Channel writes then skip the
+    // per-write copy of a heap buffer. The caller releases its reference once the frame is written
+    // or dropped.
+    PooledBuffer directFrame(BufferPool pool, WireFormat format, int compressAbove, LatencyHistogram encodeTimes)
+            throws IOException {
+        byte[] frame = frame(format, compressAbove, encodeTimes);
+        // Left uncompressed: share the plain copy
+        int slot = frame == frames.get(format.ordinal()) ? format.ordinal() : FORMATS + format.ordinal();
+        while (!released) {
+            PooledBuffer shared = directFrames.get(slot);
+            if (shared == null) {
+                PooledBuffer copy = pool.copyOf(frame);     // this reference is the message's own
+                if (!directFrames.compareAndSet(slot, null, copy)) {
+                    copy.release();
+                    continue;
+                }
+                if (released && directFrames.compareAndSet(slot, copy, null)) {
+                    // release() ran in between and missed it, so the reference passes to the caller
+                    return copy;
+                }
+                shared = copy;
+            }
+            if (shared.retain()) {
+                return shared;
+            }
+        }
+        return pool.copyOf(frame);
+    }
+
+    // Once every recipient has been handed the message: gives up the shared off-heap frames, which go
+    // back to the pool when the last recipient has written them. The heap frames stay for later sends.
+    void release() {
+        released = true;
+        for (int slot = 0; slot < directFrames.length(); slot++) {
+            PooledBuffer shared = directFrames.getAndSet(slot, null);
+            if (shared != null) {
+                shared.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.protocol.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+// Length-prefixed frames over a blocking socket
+class FramedStreamConnection extends StreamConnection {
+    private final OutputStream out;
+    private final WireFormat format;
+    private volatile int compressAbove = -1;
+
+    FramedStreamConnection(Socket socket, WireFormat format, ServerConfig config, Metrics metrics) throws IOException {
+        super(socket, config, metrics);
+        this.out = socketOutput(socket, config, metrics);
+        this.format = format;
+    }
+
+    @Override
+    public void enableCompression(int threshold) {
+        compressAbove = threshold;
+    }
+
+    @Override
+    protected void write(EncodedMessage message) throws IOException {
+        byte[] frame = message.frame(format, compressAbove, metrics.encodeTimes());
+        out.write(frame);
+        metrics.bytesOut(frame.length);
+    }
+
+    @Override
+    protected void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -1,55 +1,153 @@
 package com.comp1549.groupchat.server;
 
+import com.comp1549.groupchat.journal.Journal;
 import com.comp1549.groupchat.model.Member;
 import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.Compression;
+import com.comp1549.groupchat.protocol.Handshake;
+import com.comp1549.groupchat.protocol.MembershipPayload;
+import com.comp1549.groupchat.protocol.SearchPayload;
+import com.comp1549.groupchat.protocol.WireFormat;
+import com.comp1549.groupchat.search.SearchIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.time.LocalDateTime;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class GroupServer {
     private static final Logger logger = LoggerFactory.getLogger(GroupServer.class);
-    private static final int HEARTBEAT_INTERVAL = 20; // seconds
-    private static final int HEARTBEAT_TIMEOUT = 30; // seconds
+    private static final int HEARTBEAT_TICK = 250; // milliseconds
+    private static final int SEARCH_THREADS = 2;
+    private static final int SEARCH_QUEUE = 64;    // searches waiting for a thread before new ones are refused
+    private static final int MAX_SEARCH_HITS = 100;
+    private static final int MAX_SEARCH_RESULT_LENGTH = 256 * 1024;  // characters, so a reply fits a frame
+    private static final long RECONNECT_WINDOW = 2000;  // milliseconds drained members spread their reconnects over
+    private static final long DRAIN_POLL = 10;         // milliseconds
 
     private final int port;
-    private final ServerSocket serverSocket;
+    private final ServerConfig config;
+    private final ServerConfig.Transport transport;
+    private final ServerSocket serverSocket;      // blocking transports only
+    private final ExecutorService connectionThreads;
+    private final NioTransport nioTransport;      // NIO transport only
     private final Map<String, Member> members;
-    private final Map<String, ObjectOutputStream> clientStreams;
+    private final Map<String, Session> sessions;
+    private final SessionTable sessionTable;       // the same sessions by handle, for fan-out
+    private final ParallelFanOut parallelFanOut;   // null with a single fan-out thread
+    private final Lock membershipLock = new ReentrantLock();
+    private long membershipVersion;                // guarded by membershipLock
+    private EncodedMessage snapshot;               // guarded by membershipLock; the latest version's MEMBER_LIST
+    private final HeartbeatWheel heartbeats;
+    private final Journal journal;                // null unless configured
+    private final History history;
+    private final SearchIndex searchIndex;        // on by default; null when search is turned off
+    private final ExecutorService searches;       // null when search is turned off
+    private final Rooms rooms = new Rooms();
+    private final Cluster cluster;                // null unless clustered
+    private final Metrics metrics = new Metrics();
+    private final RateLimiter rateLimiter;
+    private final Tracer tracer;
+    private final MetricsEndpoint metricsEndpoint; // null unless configured
+    private final Map<String, String> remoteNodes = new ConcurrentHashMap<>();  // member -> node it is on
+    private final ReplayScheduler replays;
     private final ScheduledExecutorService scheduler;
     private volatile boolean running;
+    private final AtomicBoolean draining = new AtomicBoolean();
 
     public GroupServer(int port) throws IOException {
-        this.port = port;
-        this.serverSocket = new ServerSocket(port);
+        this(new ServerConfig(port));
+    }
+
+    public GroupServer(ServerConfig config) throws IOException {
+        this.port = config.getPort();
+        this.config = config;
+        this.tracer = new Tracer(config.getTraceSampleEvery());
+        this.rateLimiter = new RateLimiter(config.getRateLimits());
+        this.parallelFanOut = config.getFanOutThreads() > 1 ? new ParallelFanOut(config.getFanOutThreads()) : null;
+        this.transport = config.getTransport();
+        if (transport == ServerConfig.Transport.NIO) {
+            this.serverSocket = null;
+            this.nioTransport = new NioTransport(this, config);
+            this.connectionThreads = null;
+        } else {
+            this.serverSocket = new ServerSocket(port);
+            this.nioTransport = null;
+            // Thread per connection either way; virtual threads park instead of holding a native thread
+            ThreadFactory factory = transport == ServerConfig.Transport.VIRTUAL
+                ? Thread.ofVirtual().name("client-", 0).factory()
+                : Thread.ofPlatform().name("client-", 0).factory();
+            this.connectionThreads = Executors.newThreadPerTaskExecutor(factory);
+        }
+        this.journal = config.getJournal() != null ? Journal.open(config.getJournal()) : null;
+        this.history = new History(config.getHistoryCapacity(), journal);
+        this.searchIndex = config.getSearch() != null ? SearchIndex.open(config.getSearch()) : null;
+        // Off the connection threads, so a long search never holds up anyone's messages
+        this.searches = searchIndex != null
+            ? new ThreadPoolExecutor(SEARCH_THREADS, SEARCH_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SEARCH_QUEUE), Thread.ofPlatform().name("search-", 0).daemon().factory())
+            : null;
+        this.replays = new ReplayScheduler(history, config, this::isCurrent, this::isAddressedTo);
         this.members = new ConcurrentHashMap<>();
-        this.clientStreams = new ConcurrentHashMap<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.sessionTable = new SessionTable(64);
+        this.heartbeats = new HeartbeatWheel(TimeUnit.MILLISECONDS.toNanos(config.getHeartbeatTimeoutMillis()),
+            TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_TICK), System.nanoTime(), this::expireMember);
         this.scheduler = Executors.newScheduledThreadPool(2);
+        this.cluster = config.getNodeId() != null ? new Cluster(this, config) : null;
+        this.metricsEndpoint = config.getMetricsPort() >= 0
+            ? new MetricsEndpoint(config.getMetricsPort(), this::scrape) : null;
         this.running = true;
     }
 
+    public int getLocalPort() {
+        return nioTransport != null ? nioTransport.getLocalPort() : serverSocket.getLocalPort();
+    }
+
     public void start() {
-        logger.info("Server starting on port {}", port);
-        
         // Start heartbeat checker
-        scheduler.scheduleAtFixedRate(this::checkHeartbeats, 
-            HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(this::checkHeartbeats,
+            HEARTBEAT_TICK, HEARTBEAT_TICK, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::runReplays,
+            ReplayScheduler.TICK_MILLIS, ReplayScheduler.TICK_MILLIS, TimeUnit.MILLISECONDS);
+        if (cluster != null) {
+            cluster.start();
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.start();
+        }
+
+        // Time since launch, so startup regressions show up in the log
+        long sinceLaunch = ManagementFactory.getRuntimeMXBean().getUptime();
+        logger.info("Server accepting on port {} ({} transport), {} ms after launch",
+            getLocalPort(), transport, sinceLaunch);
+
+        if (nioTransport != null) {
+            nioTransport.run();
+            return;
+        }
 
         // Accept client connections
-        while (running) {
+        while (running && !draining.get()) {
             try {
                 Socket clientSocket = serverSocket.accept();
-                new Thread(() -> handleClient(clientSocket)).start();
+                connectionThreads.execute(() -> handleClient(clientSocket));
             } catch (IOException e) {
-                if (running) {
+                if (running && !draining.get()) {
                     logger.error("Error accepting client connection", e);
                 }
             }
@@ -57,54 +155,65 @@ public class GroupServer {
     }
 
     private void handleClient(Socket clientSocket) {
-        ObjectOutputStream out = null;
         String memberId = null;
-        
+        StreamConnection connection = null;
+        metrics.connectionOpened();
+
         try {
-            out = new ObjectOutputStream(clientSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(clientSocket.getInputStream());
+            MessageSource source;
+            Message joinMessage;
 
-            // Read initial join message
-            Message joinMessage = (Message) in.readObject();
-            if (joinMessage.getType() != Message.Type.JOIN) {
-                throw new IllegalStateException("First message must be JOIN");
-            }
+            // Writes are batched by the connection, so Nagle would only add delay
+            clientSocket.setTcpNoDelay(true);
 
-            memberId = joinMessage.getSenderId();
-            
-            // Check for duplicate user ID
-            if (members.containsKey(memberId)) {
-                Message errorMessage = new Message(
-                    "SERVER",
-                    memberId,
-                    Message.Type.ERROR,
-                    "User ID already exists. Please choose a different ID."
-                );
-                out.writeObject(errorMessage);
-                out.flush();
-                clientSocket.close();
-                return;
-            }
+            // Legacy clients open with an object stream header, newer ones with a frame
+            BufferedInputStream input = new BufferedInputStream(clientSocket.getInputStream());
+            input.mark(2);
+            boolean objectStream = Frames.isObjectStream(input.read(), input.read());
+            input.reset();
 
-            Member newMember = new Member(memberId, clientSocket.getInetAddress(), clientSocket.getPort());
-            
-            // Set as host if first member
-            if (members.isEmpty()) {
-                newMember.setHost(true);
-                logger.info("Member {} is now host", memberId);
+            if (objectStream) {
+                connection = new ObjectStreamConnection(clientSocket, config, metrics);
+                ObjectInputStream in = new ObjectInputStream(input);
+                source = () -> (Message) in.readObject();
+                joinMessage = source.read();
+            } else {
+                DataInputStream in = new DataInputStream(input);
+                source = () -> {
+                    byte[] frame = Frames.readFrame(in);
+                    metrics.bytesIn(Frames.HEADER_LENGTH + frame.length);
+                    long start = System.nanoTime();
+                    Message message = WireFormat.decode(frame, 0, frame.length);
+                    metrics.decoded(System.nanoTime() - start);
+                    return message;
+                };
+
+                // The JOIN's encoding decides how we write to this member
+                byte[] joinFrame = Frames.readFrame(in);
+                WireFormat format = WireFormat.of(joinFrame, 0, joinFrame.length);
+                metrics.bytesIn(Frames.HEADER_LENGTH + joinFrame.length);
+                connection = new FramedStreamConnection(clientSocket, format, config, metrics);
+                joinMessage = format.codec().decode(joinFrame, 0, joinFrame.length);
             }
 
-            // Add member
-            members.put(memberId, newMember);
-            clientStreams.put(memberId, out);
+            // This thread reads; the writer thread owns the output stream
+            connectionThreads.execute(connection::writeLoop);
 
-            // Notify all members about the new member
-            broadcastMemberList();
+            // Read initial join message
+            memberId = registerMember(joinMessage, connection);
+            if (memberId == null) {
+                return;
+            }
+            int handle = sessionHandle(memberId, connection);
 
             // Handle messages from client
             while (running) {
-                Message message = (Message) in.readObject();
-                handleMessage(message);
+                Message message = source.read();
+                long pause = handleMessage(handle, message, connection, tracer.now());
+                if (pause > 0) {
+                    // Not reading lets TCP push back on the sender until it is under its limit again
+                    LockSupport.parkNanos(pause);
+                }
             }
 
         } catch (EOFException e) {
@@ -114,37 +223,278 @@ public class GroupServer {
             logger.info("Client {} connection error: {}", memberId, e.getMessage());
         } finally {
             // Clean up resources
+            metrics.connectionClosed();
             if (memberId != null) {
+                memberDisconnected(memberId, connection);
+            }
+            
+            // Replies already queued (e.g. a rejected JOIN's error) go out before the socket closes
+            if (connection != null) {
+                connection.closeWhenDrained();
+            } else {
                 try {
-                    handleMemberLeave(memberId);
-                    logger.info("Cleaned up resources for member {}", memberId);
+                    clientSocket.close();
                 } catch (IOException e) {
-                    logger.error("Error cleaning up member {}: {}", memberId, e.getMessage());
+                    logger.error("Error closing client socket: {}", e.getMessage());
                 }
             }
-            
-            try {
-                clientSocket.close();
-            } catch (IOException e) {
-                logger.error("Error closing client socket: {}", e.getMessage());
+        }
+    }
+
+    // Validates a JOIN and adds the member; returns null if the join was rejected
+    String registerMember(Message joinMessage, ClientConnection connection) throws IOException {
+        if (joinMessage.getType() != Message.Type.JOIN) {
+            throw new IllegalStateException("First message must be JOIN");
+        }
+
+        metrics.messageIn(Message.Type.JOIN);
+        String memberId = joinMessage.getSenderId();
+        Handshake handshake = Handshake.parse(joinMessage.getContent());
+        if (handshake.get(Handshake.NODE) != null) {
+            return acceptLink(handshake.get(Handshake.NODE), handshake.get(Handshake.AUTH), connection);
+        }
+        if (!MembershipPayload.isValidId(memberId)) {
+            refuseJoin(memberId, handshake, connection,
+                "Invalid user ID. IDs must not be blank or contain control characters.");
+            return null;
+        }
+        Member newMember = new Member(memberId, connection.getAddress(), connection.getPort());
+        Session session = new Session(newMember, connection, handshake);
+        if (config.getCompressionThreshold() >= 0 && handshake.has(Handshake.COMPRESS, Compression.DEFLATE)) {
+            connection.enableCompression(config.getCompressionThreshold());
+        }
+
+        membershipLock.lock();
+        try {
+            // Got in just before accepting stopped
+            if (draining.get()) {
+                connection.send(new Message("SERVER", memberId, Message.Type.RECONNECT, reconnectHint()));
+                return null;
+            }
+
+            // A client reconnecting before its old connection timed out takes the id back with its token
+            Session previous = sessions.get(memberId);
+            String token = handshake.get(Handshake.TOKEN);
+            if (previous != null && token != null && token.equals(previous.token())) {
+                logger.info("Member {} reconnected; closing its previous connection", memberId);
+                handleMemberLeave(memberId);
+                previous.connection().close();
+            }
+
+            // Check for duplicate user ID
+            if (members.putIfAbsent(memberId, newMember) != null) {
+                refuseJoin(memberId, handshake, connection, "User ID already exists. Please choose a different ID.");
+                return null;
+            }
+
+            // Set as host if first member on this node
+            if (sessions.isEmpty()) {
+                newMember.setHost(true);
+                logger.info("Member {} is now host", memberId);
+            }
+
+            sessions.put(memberId, session);
+            sessionTable.add(session);
+            heartbeats.add(newMember);
+            membershipVersion++;
+            metrics.joined();
+            rejoinRooms(memberId, session, handshake);
+
+            if (session.replay()) {
+                welcome(memberId, session, handshake);
+            }
+            // The new member gets the whole list, everyone else just the change
+            sendMemberList(session);
+            publishMembershipChange(Message.Type.MEMBER_JOINED,
+                MembershipPayload.joined(membershipVersion, newMember), memberId);
+            broadcastLegacyMemberList(memberId);
+            if (cluster != null) {
+                cluster.broadcast(new Message(cluster.nodeId(), null,
+                    Message.Type.MEMBER_JOINED, MembershipPayload.joined(0, newMember)));
+            }
+        } finally {
+            membershipLock.unlock();
+        }
+        return memberId;
+    }
+
+    private void refuseJoin(String memberId, Handshake handshake, ClientConnection connection, String reason)
+            throws IOException {
+        Message.Type type = handshake.has(Handshake.REJECTS, "true") ? Message.Type.REJECTED : Message.Type.ERROR;
+        connection.send(new Message("SERVER", memberId, type, reason));
+    }
+
+    // Tells a catch-up capable client where the history stands, and replays what it missed if it
+    // was here before. Messages sent while the replay runs arrive live as well; the client drops repeats.
+    private void welcome(String memberId, Session session, Handshake handshake) throws IOException {
+        long latest = history.latestSequence();
+        String content = new Handshake()
+            .set(Handshake.HISTORY, history.id())
+            .set(Handshake.TOKEN, session.token())
+            .set(Handshake.SEQUENCE, Long.toString(latest))
+            .toString();
+        session.connection().send(new Message("SERVER", memberId, Message.Type.WELCOME, content));
+
+        long lastSequence = handshake.getLong(Handshake.LAST_SEQUENCE, -1);
+        if (history.id().equals(handshake.get(Handshake.HISTORY)) && lastSequence >= 0 && lastSequence < latest) {
+            logger.info("Replaying messages {}..{} to {}", lastSequence + 1, latest, memberId);
+            replays.start(memberId, session, lastSequence);
+        }
+    }
+
+    // Ignores a connection that has already been replaced by a reconnect
+    void memberDisconnected(String memberId, ClientConnection connection) {
+        membershipLock.lock();
+        try {
+            String node = cluster != null ? cluster.nodeOf(connection) : null;
+            if (node != null) {
+                linkDown(node, connection);
+                return;
+            }
+            Session session = sessions.get(memberId);
+            if (session == null || session.connection() != connection) {
+                return;
+            }
+            handleMemberLeave(memberId);
+            logger.debug("Cleaned up resources for member {}", memberId);
+        } catch (IOException e) {
+            logger.error("Error cleaning up member {}: {}", memberId, e.getMessage());
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    // False once the member has left or reconnected on another session
+    private boolean isCurrent(String memberId, Session session) {
+        return sessions.get(memberId) == session;
+    }
+
+    private void runReplays() {
+        try {
+            replays.tick();
+        } catch (Exception e) {
+            logger.error("Error replaying history", e);
+        }
+    }
+
+    // The session handle a transport keeps for a connection it registered, so each message finds
+    // its sender by index; -1 for a cluster link or a connection that was not let in
+    int sessionHandle(String memberId, ClientConnection connection) {
+        Session session = memberId != null ? sessions.get(memberId) : null;
+        return session != null && session.connection() == connection ? session.handle() : -1;
+    }
+
+    // Messages read from a member's connection, or from another node's link. receivedNanos comes
+    // from tracer().now() as soon as the bytes were read.
+    // Returns how many nanoseconds to stop reading from the sender for: more than 0 only when it
+    // is over a rate limit and the policy is to pause
+    // handle is the session registered on the connection; the sender a message claims is not trusted
+    long handleMessage(int handle, Message message, ClientConnection from, long receivedNanos) {
+        metrics.messageIn(message.getType());
+        String node = cluster != null ? cluster.nodeOf(from) : null;
+        if (node == null) {
+            Session session = sessionTable.get(handle);
+            if (session == null || session.connection() != from) {
+                // Left, or replaced by a newer connection for the same id
+                return 0;
             }
+            if (!session.member().getId().equals(message.getSenderId())) {
+                rejectForgedSender(session, message);
+                return 0;
+            }
+            long over = rateLimiter.active() ? admit(session, message) : 0;
+            if (over > 0) {
+                metrics.rateLimited(message.getType());
+                if (rateLimiter.policy() == RateLimits.Policy.REJECT) {
+                    rejectOverLimit(session, message, over);
+                    return 0;
+                }
+            }
+            handleMessage(session, message, tracer.start(message, receivedNanos));
+            return over;
+        }
+        try {
+            cluster.receive(node, message);
+        } catch (IOException e) {
+            logger.error("Error handling message from node {}", node, e);
+        }
+        return 0;
+    }
+
+    // Takes effect from the next message; null lifts every limit
+    public void setRateLimits(RateLimits limits) {
+        rateLimiter.update(limits);
+    }
+
+    private long admit(Session session, Message message) {
+        return rateLimiter.admit(session.rateBuckets(), message.getType(), deliveries(message));
+    }
+
+    private void rejectForgedSender(Session session, Message message) {
+        String memberId = session.member().getId();
+        logger.warn("Dropped {} from {} claiming to be sent by {}", message.getType(), memberId, message.getSenderId());
+        try {
+            session.connection().send(new Message("SERVER", memberId, Message.Type.ERROR, String.format(
+                "%s not sent: messages must be sent as %s.", message.getType().name().toLowerCase(), memberId)));
+        } catch (IOException e) {
+            logger.debug("Could not tell {} its message was dropped: {}", memberId, e.getMessage());
         }
     }
 
-    private void handleMessage(Message message) {
+    // What a message costs the fan-out budget
+    private int deliveries(Message message) {
+        switch (message.getType()) {
+            case PRIVATE:
+                return 1;
+            case BROADCAST:
+                if (message.getRecipientId() == null) {
+                    return Math.max(sessionTable.size() - 1, 0);
+                }
+                Rooms.Room room = rooms.get(message.getRecipientId());
+                return room != null ? room.sessions().size() : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private void rejectOverLimit(Session session, Message message, long overNanos) {
         try {
+            session.connection().send(new Message("SERVER", message.getSenderId(), Message.Type.ERROR, String.format(
+                "Rate limit exceeded; %s not sent. Try again in %d ms.",
+                message.getType().name().toLowerCase(), Math.max(1, TimeUnit.NANOSECONDS.toMillis(overNanos)))));
+        } catch (IOException e) {
+            logger.debug("Could not tell {} about its rate limit: {}", message.getSenderId(), e.getMessage());
+        }
+    }
+
+    // The sender's session has been checked against the connection the message came in on
+    private void handleMessage(Session sender, Message message, Trace trace) {
+        try {
+            // Any message shows the member is alive; clients only send heartbeats when idle
+            sender.member().updateHeartbeat();
             switch (message.getType()) {
                 case LEAVE:
                     handleMemberLeave(message.getSenderId());
                     break;
                 case HEARTBEAT:
-                    handleHeartbeat(message.getSenderId());
                     break;
                 case PRIVATE:
-                    forwardPrivateMessage(message);
+                    forwardPrivateMessage(message, trace);
                     break;
                 case BROADCAST:
-                    forwardBroadcastMessage(message);
+                    forwardBroadcastMessage(sender, message, trace);
+                    break;
+                case MEMBER_LIST:
+                    sendMemberList(sender);
+                    break;
+                case ROOM_JOIN:
+                    joinRoom(message.getSenderId(), message.getRecipientId());
+                    break;
+                case ROOM_LEAVE:
+                    leaveRoom(message.getSenderId(), message.getRecipientId());
+                    break;
+                case SEARCH:
+                    search(sender, message);
                     break;
                 default:
                     logger.warn("Unhandled message type: {}", message.getType());
@@ -155,93 +505,702 @@ public class GroupServer {
     }
 
     private void handleMemberLeave(String memberId) throws IOException {
-        Member leavingMember = members.remove(memberId);
-        clientStreams.remove(memberId);
+        membershipLock.lock();
+        try {
+            Member leavingMember = members.remove(memberId);
+            Session leavingSession = sessions.remove(memberId);
+            if (leavingSession != null) {
+                sessionTable.remove(leavingSession);
+            }
+            String remoteNode = remoteNodes.remove(memberId);
+            if (leavingMember == null) {
+                return;
+            }
+            if (remoteNode == null) {
+                metrics.left();
+            }
+            if (cluster != null && remoteNode == null) {
+                cluster.broadcast(new Message(cluster.nodeId(), null,
+                    Message.Type.MEMBER_LEFT, MembershipPayload.event(0, memberId)));
+            }
+            // Everyone here is being sent away; telling each about all the others would be n² messages
+            if (draining.get()) {
+                return;
+            }
+            if (leavingSession != null) {
+                for (String room : leavingSession.rooms()) {
+                    leaveRoom(memberId, leavingSession, room);
+                }
+            }
+
+            membershipVersion++;
+            publishMembershipChange(Message.Type.MEMBER_LEFT,
+                MembershipPayload.event(membershipVersion, memberId), null);
+
+            if (leavingMember.host()) {
+                // Select new host among this node's own members
+                if (!sessions.isEmpty()) {
+                    String newHostId = sessions.keySet().iterator().next();
+                    Member newHost = members.get(newHostId);
+                    newHost.setHost(true);
+
+                    // Notify all members about new host
+                    membershipVersion++;
+                    publishMembershipChange(Message.Type.HOST_CHANGED,
+                        MembershipPayload.event(membershipVersion, newHostId), null);
+                    broadcastLegacyMemberList(null);
+                }
+            }
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    private void checkHeartbeats() {
+        heartbeats.tick(System.nanoTime());
+    }
 
-        if (leavingMember != null && leavingMember.host()) {
-            // Select new host
-            if (!members.isEmpty()) {
-                String newHostId = members.keySet().iterator().next();
-                Member newHost = members.get(newHostId);
-                newHost.setHost(true);
-                
-                // Notify all members about new host
-                broadcastMemberList();
+    private void expireMember(Member member) {
+        membershipLock.lock();
+        try {
+            // Already gone, or the id now belongs to someone who joined since
+            if (members.get(member.getId()) != member) {
+                return;
             }
+            logger.info("Member {} timed out", member.getId());
+            metrics.heartbeatExpired();
+            handleMemberLeave(member.getId());
+        } catch (IOException e) {
+            logger.error("Error removing dead member {}", member.getId(), e);
+        } finally {
+            membershipLock.unlock();
         }
     }
 
-    private void handleHeartbeat(String memberId) {
-        Member member = members.get(memberId);
-        if (member != null) {
-            member.updateHeartbeat();
+    private void forwardPrivateMessage(Message message, Trace trace) throws IOException {
+        EncodedMessage encoded = record(message);
+        encoded.trace(trace);
+        Session recipient = sessions.get(message.getRecipientId());
+        try {
+            if (recipient != null) {
+                recipient.connection().send(encoded);
+            } else {
+                String node = remoteNodes.get(message.getRecipientId());
+                if (node != null) {
+                    cluster.send(node, encoded);
+                }
+            }
+        } finally {
+            encoded.release();
+        }
+        if (trace != null) {
+            trace.fannedOut(System.nanoTime());
         }
     }
 
-    private void checkHeartbeats() {
-        LocalDateTime now = LocalDateTime.now();
-        Set<String> deadMembers = members.entrySet().stream()
-            .filter(e -> now.minusSeconds(HEARTBEAT_TIMEOUT).isAfter(e.getValue().getLastHeartbeat()))
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toSet());
+    private void forwardBroadcastMessage(Session sender, Message message, Trace trace) throws IOException {
+        // A recipient names a room; without one the broadcast goes to everyone, as it always has
+        Rooms.Room room = null;
+        if (message.getRecipientId() != null) {
+            room = rooms.get(message.getRecipientId());
+            if (room == null || !room.contains(message.getSenderId())) {
+                sendError(message.getSenderId(), "You are not in room " + message.getRecipientId() + ".");
+                return;
+            }
+        }
 
-        deadMembers.forEach(memberId -> {
-            try {
+        // Numbered and encoded once, whatever the number of recipients
+        EncodedMessage encoded = record(message);
+        encoded.trace(trace);
+        long start = System.nanoTime();
+        try {
+            if (room != null) {
+                fanOut(encoded, room.sessions(), sender);
+            } else {
+                fanOut(encoded, sender);
+            }
+            if (cluster != null) {
+                cluster.broadcast(encoded);
+            }
+        } finally {
+            encoded.release();
+        }
+        long end = System.nanoTime();
+        metrics.fannedOut(end - start);
+        if (trace != null) {
+            trace.fannedOut(end);
+        }
+    }
+
+    // Everyone on this node but the sender
+    private void fanOut(EncodedMessage encoded, Session excluded) throws IOException {
+        SessionTable table = sessionTable;
+        int limit = table.limit();
+        if (parallelFanOut != null && limit > ParallelFanOut.STRIPE) {
+            parallelFanOut.send(encoded, table::get, limit, excluded);
+            return;
+        }
+        for (int handle = 0; handle < limit; handle++) {
+            Session session = table.get(handle);
+            if (session != null && session != excluded) {
+                session.connection().send(encoded);
+            }
+        }
+    }
+
+    private void fanOut(EncodedMessage encoded, Map<String, Session> recipients, Session excluded) throws IOException {
+        if (parallelFanOut != null && recipients.size() > ParallelFanOut.STRIPE) {
+            Session[] snapshot = recipients.values().toArray(new Session[0]);
+            parallelFanOut.send(encoded, i -> snapshot[i], snapshot.length, excluded);
+            return;
+        }
+        for (Session session : recipients.values()) {
+            if (session != excluded) {
+                session.connection().send(encoded);
+            }
+        }
+    }
+
+    // A chat message forwarded by the node its sender is on: only this node's members get it here
+    void deliverFromPeer(Message message) throws IOException {
+        if (message.getType() == Message.Type.PRIVATE) {
+            Session recipient = sessions.get(message.getRecipientId());
+            if (recipient != null) {
+                EncodedMessage encoded = record(message);
+                try {
+                    recipient.connection().send(encoded);
+                } finally {
+                    encoded.release();
+                }
+            }
+            return;
+        }
+        // The sender is on another node, so no one here is skipped
+        EncodedMessage encoded = record(message);
+        long start = System.nanoTime();
+        try {
+            if (message.getRecipientId() == null) {
+                fanOut(encoded, null);
+            } else {
+                Rooms.Room room = rooms.get(message.getRecipientId());
+                if (room != null) {
+                    fanOut(encoded, room.sessions(), null);
+                }
+            }
+        } finally {
+            encoded.release();
+        }
+        metrics.fannedOut(System.nanoTime() - start);
+    }
+
+    // A node's link is up, whichever end dialed. The peer gets a snapshot of our members under
+    // the membership lock, so every later join or leave reaches it after the snapshot.
+    void linkUp(String node, ClientConnection link) throws IOException {
+        membershipLock.lock();
+        try {
+            cluster.addLink(node, link);
+            List<Member> local = new ArrayList<>();
+            for (String memberId : sessions.keySet()) {
+                Member member = members.get(memberId);
+                if (member != null) {
+                    local.add(member);
+                }
+            }
+            link.send(new Message(cluster.nodeId(), null, Message.Type.MEMBER_LIST,
+                MembershipPayload.snapshot(0, local)));
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    // Members on a node we lost the link to are gone as far as this node can tell
+    void linkDown(String node, ClientConnection link) {
+        membershipLock.lock();
+        try {
+            if (!cluster.removeLink(node, link)) {
+                return;
+            }
+            logger.info("Lost link to node {}", node);
+            for (Map.Entry<String, String> entry : remoteNodes.entrySet()) {
+                if (entry.getValue().equals(node)) {
+                    handleMemberLeave(entry.getKey());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error removing members of node {}", node, e);
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    private String acceptLink(String node, String auth, ClientConnection link) throws IOException {
+        if (cluster == null || !cluster.isPeer(node)) {
+            link.send(new Message("SERVER", node, Message.Type.ERROR, "Unknown node " + node + "."));
+            return null;
+        }
+        // Checked before the link can replace the one the real node has up
+        if (!cluster.authenticates(node, auth)) {
+            logger.warn("Refused unauthenticated link claiming to be node {} from {}", node, link.getAddress());
+            link.send(new Message("SERVER", node, Message.Type.ERROR, "Link from node " + node + " not authenticated."));
+            return null;
+        }
+        logger.info("Accepted link from node {}", node);
+        cluster.accept(node, link);
+        linkUp(node, link);
+        return "node " + node;
+    }
+
+    // Replaces what we know of a node's members, e.g. after its link came back
+    void remoteSnapshot(String node, List<Member> snapshot) throws IOException {
+        membershipLock.lock();
+        try {
+            Set<String> ids = new HashSet<>();
+            for (Member member : snapshot) {
+                ids.add(member.getId());
+            }
+            for (Map.Entry<String, String> entry : remoteNodes.entrySet()) {
+                if (entry.getValue().equals(node) && !ids.contains(entry.getKey())) {
+                    handleMemberLeave(entry.getKey());
+                }
+            }
+            for (Member member : snapshot) {
+                remoteJoined(node, member);
+            }
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    void remoteJoined(String node, Member member) throws IOException {
+        membershipLock.lock();
+        try {
+            // Each node hosts among its own members
+            member.setHost(false);
+            if (members.putIfAbsent(member.getId(), member) != null) {
+                if (!node.equals(remoteNodes.get(member.getId()))) {
+                    logger.warn("Member {} on node {} clashes with a member already here", member.getId(), node);
+                }
+                return;
+            }
+            remoteNodes.put(member.getId(), node);
+            membershipVersion++;
+            publishMembershipChange(Message.Type.MEMBER_JOINED,
+                MembershipPayload.joined(membershipVersion, member), null);
+            broadcastLegacyMemberList(null);
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    void remoteLeft(String node, String memberId) throws IOException {
+        membershipLock.lock();
+        try {
+            if (node.equals(remoteNodes.get(memberId))) {
                 handleMemberLeave(memberId);
-            } catch (IOException e) {
-                logger.error("Error removing dead member {}", memberId, e);
             }
-        });
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    private void joinRoom(String memberId, String name) throws IOException {
+        Session session = sessions.get(memberId);
+        if (session == null) {
+            return;
+        }
+        if (name == null || !Rooms.isValidName(name)) {
+            sendError(memberId, "Invalid room name. Names must not be blank or contain control characters, ',', ';' or '='.");
+            return;
+        }
+        if (!session.rooms().add(name)) {
+            return;
+        }
+        Rooms.Room room = rooms.join(name, memberId, session);
+        if (sessions.get(memberId) != session) {
+            // Left the server while joining: undo, since its leave may not have seen this room
+            leaveRoom(memberId, session, name);
+            return;
+        }
+
+        // The joiner gets who is there, host first; everyone else just the arrival
+        StringBuilder list = new StringBuilder(room.host());
+        for (String id : room.memberIds()) {
+            if (!id.equals(room.host())) {
+                list.append('\n').append(id);
+            }
+        }
+        session.connection().send(new Message(memberId, name, Message.Type.ROOM_JOIN, list.toString()));
+        sendToRoom(room, new Message(memberId, name, Message.Type.ROOM_JOIN, ""), memberId);
+    }
+
+    private void leaveRoom(String memberId, String name) throws IOException {
+        Session session = sessions.get(memberId);
+        if (session != null && name != null && session.rooms().contains(name)) {
+            leaveRoom(memberId, session, name);
+        }
+    }
+
+    private void leaveRoom(String memberId, Session session, String name) throws IOException {
+        session.rooms().remove(name);
+        String newHost = rooms.leave(name, memberId);
+        Rooms.Room room = rooms.get(name);
+        if (room == null) {
+            return;
+        }
+        sendToRoom(room, new Message(memberId, name, Message.Type.ROOM_LEAVE, ""), null);
+        if (newHost != null) {
+            sendToRoom(room, new Message("SERVER", name, Message.Type.ROOM_HOST, newHost), null);
+        }
+    }
+
+    // Rooms a reconnecting client was in, before anything is replayed to it
+    private void rejoinRooms(String memberId, Session session, Handshake handshake) throws IOException {
+        String names = handshake.get(Handshake.ROOMS);
+        if (names == null) {
+            return;
+        }
+        for (String name : names.split(",")) {
+            if (!name.isBlank()) {
+                joinRoom(memberId, name.trim());
+            }
+        }
+    }
+
+    private void sendToRoom(Rooms.Room room, Message message, String excludedId) throws IOException {
+        EncodedMessage encoded = new EncodedMessage(message);
+        try {
+            for (Map.Entry<String, Session> entry : room.sessions().entrySet()) {
+                if (!entry.getKey().equals(excludedId)) {
+                    entry.getValue().connection().send(encoded);
+                }
+            }
+        } finally {
+            encoded.release();
+        }
+    }
+
+    // Numbers the message and queues it for the search index
+    private EncodedMessage record(Message message) {
+        EncodedMessage encoded = history.record(message);
+        if (searchIndex != null) {
+            searchIndex.add(encoded.message());
+        }
+        return encoded;
+    }
+
+    private void search(Session session, Message request) throws IOException {
+        String memberId = request.getSenderId();
+        if (searchIndex == null) {
+            sendError(memberId, "Search is not enabled on this server.");
+            return;
+        }
+        SearchPayload.Query query;
+        try {
+            query = SearchPayload.parseQuery(request.getContent());
+        } catch (IllegalArgumentException e) {
+            sendError(memberId, "Invalid search: " + e.getMessage());
+            return;
+        }
+        try {
+            searches.execute(() -> runSearch(memberId, session, query));
+        } catch (RejectedExecutionException e) {
+            sendError(memberId, "Too many searches at once; try again shortly.");
+        }
+    }
+
+    // A member only finds what was sent to them, or by them
+    private void runSearch(String memberId, Session session, SearchPayload.Query query) {
+        long start = System.nanoTime();
+        List<Message> hits = searchIndex.search(query.words(), query.senderId(), query.afterMillis(),
+            query.beforeMillis(), Math.min(query.limit(), MAX_SEARCH_HITS),
+            message -> memberId.equals(message.getSenderId()) || isAddressedTo(memberId, message));
+        metrics.searched(System.nanoTime() - start);
+        if (!isCurrent(memberId, session)) {
+            return;
+        }
+        try {
+            session.connection().send(new Message("SERVER", memberId, Message.Type.SEARCH,
+                SearchPayload.results(query.id(), hits, MAX_SEARCH_RESULT_LENGTH)));
+        } catch (IOException e) {
+            logger.debug("Could not send search results to {}: {}", memberId, e.getMessage());
+        }
+    }
+
+    private void sendError(String memberId, String error) throws IOException {
+        Session session = sessions.get(memberId);
+        if (session != null) {
+            session.connection().send(new Message("SERVER", memberId, Message.Type.ERROR, error));
+        }
+    }
+
+    // What a member should have received, for replaying it later
+    private boolean isAddressedTo(String memberId, Message message) {
+        if (message.getType() == Message.Type.PRIVATE) {
+            return memberId.equals(message.getRecipientId());
+        }
+        if (memberId.equals(message.getSenderId())) {
+            return false;
+        }
+        if (message.getRecipientId() == null) {
+            return true;
+        }
+        Rooms.Room room = rooms.get(message.getRecipientId());
+        return room != null && room.contains(memberId);
+    }
+
+    // A full snapshot, for a new member or one that noticed a gap in the versions
+    private void sendMemberList(Session session) throws IOException {
+        membershipLock.lock();
+        try {
+            if (!session.deltaMembership()) {
+                String content = new ArrayList<>(members.values()).toString();
+                session.connection().send(new Message("SERVER", null, Message.Type.MEMBER_LIST, content));
+                return;
+            }
+            // Built, and compressed, once per version however many members ask for it
+            if (snapshot == null || MembershipPayload.version(snapshot.message().getContent()) != membershipVersion) {
+                snapshot = new EncodedMessage(new Message("SERVER", null, Message.Type.MEMBER_LIST,
+                    MembershipPayload.snapshot(membershipVersion, members.values())));
+            }
+            session.connection().send(snapshot);
+            // Joins come one at a time, so an off-heap copy is not kept between them
+            snapshot.release();
+        } finally {
+            membershipLock.unlock();
+        }
     }
 
-    private void forwardPrivateMessage(Message message) throws IOException {
-        ObjectOutputStream recipientStream = clientStreams.get(message.getRecipientId());
-        if (recipientStream != null) {
-            recipientStream.writeObject(message);
-            recipientStream.flush();
+    // Sent under the membership lock, so every member sees the versions in order
+    private void publishMembershipChange(Message.Type type, String payload, String excludedId) throws IOException {
+        EncodedMessage encoded = new EncodedMessage(new Message("SERVER", null, type, payload));
+        Session excluded = excludedId != null ? sessions.get(excludedId) : null;
+        try {
+            for (int handle = 0, limit = sessionTable.limit(); handle < limit; handle++) {
+                Session session = sessionTable.get(handle);
+                if (session != null && session.deltaMembership() && session != excluded) {
+                    session.connection().send(encoded);
+                }
+            }
+        } finally {
+            encoded.release();
         }
     }
 
-    private void forwardBroadcastMessage(Message message) throws IOException {
-        for (Map.Entry<String, ObjectOutputStream> entry : clientStreams.entrySet()) {
-            if (!entry.getKey().equals(message.getSenderId())) {
-                entry.getValue().writeObject(message);
-                entry.getValue().flush();
+    // Older clients still get the whole list as text on every join and host change
+    private void broadcastLegacyMemberList(String excludedId) throws IOException {
+        EncodedMessage encoded = null;
+        Session excluded = excludedId != null ? sessions.get(excludedId) : null;
+        for (int handle = 0, limit = sessionTable.limit(); handle < limit; handle++) {
+            Session session = sessionTable.get(handle);
+            if (session == null || session.deltaMembership() || session == excluded) {
+                continue;
+            }
+            if (encoded == null) {
+                encoded = new EncodedMessage(new Message(
+                    "SERVER",
+                    null,
+                    Message.Type.MEMBER_LIST,
+                    new ArrayList<>(members.values()).toString()
+                ));
             }
+            session.connection().send(encoded);
+        }
+        if (encoded != null) {
+            encoded.release();
+        }
+    }
+
+    // Per-member outbound queue depth, for spotting slow consumers
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        sessions.forEach((memberId, session) -> depths.put(memberId, session.connection().queueDepth()));
+        return depths;
+    }
+
+    int memberCount() {
+        return members.size();
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    // NIO transport only
+    BufferPool bufferPool() {
+        return nioTransport != null ? nioTransport.bufferPool() : null;
+    }
+
+    Tracer tracer() {
+        return tracer;
+    }
+
+    int metricsPort() {
+        return metricsEndpoint != null ? metricsEndpoint.getPort() : -1;
+    }
+
+    // Counters and latencies, then gauges read from the live state
+    String scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        metrics.writeTo(out);
+        tracer.writeTo(out);
+        int depth = 0;
+        int maxDepth = 0;
+        long dropped = 0;
+        for (Session session : sessions.values()) {
+            int queued = session.connection().queueDepth();
+            depth += queued;
+            maxDepth = Math.max(maxDepth, queued);
+            dropped += session.connection().droppedMessages();
+        }
+        Metrics.gauge(out, "groupchat_members", "Members in the group, on every node", members.size());
+        Metrics.gauge(out, "groupchat_local_members", "Members connected to this node", sessions.size());
+        Metrics.gauge(out, "groupchat_rooms", "Rooms with at least one member here", rooms.size());
+        Metrics.gauge(out, "groupchat_queue_depth", "Messages queued for all members", depth);
+        Metrics.gauge(out, "groupchat_queue_depth_max", "Most messages queued for one member", maxDepth);
+        Metrics.gauge(out, "groupchat_queue_dropped", "Messages the overflow policy dropped for current members", dropped);
+        Metrics.gauge(out, "groupchat_replays_pending", "Members still catching up", replays.pending());
+        Metrics.gauge(out, "groupchat_history_sequence", "Latest message sequence number", history.latestSequence());
+        if (nioTransport != null) {
+            nioTransport.bufferPool().writeTo(out);
+        }
+        if (cluster != null) {
+            Metrics.gauge(out, "groupchat_cluster_links", "Links up to other nodes", cluster.linkCount());
         }
+        if (journal != null) {
+            Metrics.counter(out, "groupchat_journal_dropped_total", "Messages the journal could not keep", journal.dropped());
+        }
+        if (searchIndex != null) {
+            Metrics.gauge(out, "groupchat_search_messages", "Messages the search index holds", searchIndex.documents());
+            Metrics.gauge(out, "groupchat_search_segments", "Segments in the search index", searchIndex.segmentCount());
+            Metrics.gauge(out, "groupchat_search_bytes", "Estimated memory the search index holds", searchIndex.memoryBytes());
+            Metrics.counter(out, "groupchat_search_dropped_total", "Messages the search index could not keep up with", searchIndex.dropped());
+        }
+        return out.toString();
+    }
+
+    int linkCount() {
+        return cluster != null ? cluster.linkCount() : 0;
+    }
+
+    int roomCount() {
+        return rooms.size();
+    }
+
+    long latestSequence() {
+        return history.latestSequence();
     }
 
-    private void broadcastMemberList() throws IOException {
-        Message memberListMessage = new Message(
-            "SERVER",
-            null,
-            Message.Type.MEMBER_LIST,
-            new ArrayList<>(members.values()).toString()
-        );
+    // Takes the server out of service, e.g. for a restart: stops accepting, tells every member to
+    // reconnect (to config's reconnectTo, if set) and closes each connection once its queue has
+    // drained. Members still connected when the timeout runs out are cut off by stop().
+    // Returns whether every member was let go in time.
+    public boolean drain(long timeoutMillis) {
+        if (!draining.compareAndSet(false, true)) {
+            return false;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (nioTransport != null) {
+            nioTransport.stopAccepting();
+        } else {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                logger.error("Error closing server socket", e);
+            }
+        }
 
-        for (ObjectOutputStream stream : clientStreams.values()) {
-            stream.writeObject(memberListMessage);
-            stream.flush();
+        List<Session> leaving;
+        membershipLock.lock();
+        try {
+            leaving = new ArrayList<>(sessions.values());
+        } finally {
+            membershipLock.unlock();
+        }
+        logger.info("Draining {} members", leaving.size());
+        EncodedMessage notice = new EncodedMessage(new Message("SERVER", null, Message.Type.RECONNECT, reconnectHint()));
+        for (Session session : leaving) {
+            try {
+                session.connection().send(notice);
+            } catch (IOException e) {
+                logger.debug("Could not tell a member to reconnect: {}", e.getMessage());
+            }
+            session.connection().closeWhenDrained();
         }
+        notice.release();
+
+        boolean drained = false;
+        try {
+            while (!(drained = sessions.isEmpty()) && System.nanoTime() < deadline) {
+                Thread.sleep(DRAIN_POLL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!drained) {
+            logger.warn("{} members had not drained in {} ms; closing them", sessions.size(), timeoutMillis);
+        }
+        stop();
+        return drained;
+    }
+
+    private String reconnectHint() {
+        Handshake hint = new Handshake().set(Handshake.WITHIN, Long.toString(RECONNECT_WINDOW));
+        if (config.getReconnectTo() != null) {
+            hint.set(Handshake.SERVER, config.getReconnectTo());
+        }
+        return hint.toString();
     }
 
     public void stop() {
         running = false;
         scheduler.shutdown();
-        try {
-            serverSocket.close();
-        } catch (IOException e) {
-            logger.error("Error closing server socket", e);
+        if (cluster != null) {
+            cluster.stop();
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        if (nioTransport != null) {
+            nioTransport.stop();
+        } else {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                logger.error("Error closing server socket", e);
+            }
+            // Their threads would otherwise hold them open
+            for (Session session : new ArrayList<>(sessions.values())) {
+                session.connection().close();
+            }
+            connectionThreads.shutdown();
+        }
+        if (parallelFanOut != null) {
+            parallelFanOut.shutdown();
+        }
+        if (searches != null) {
+            searches.shutdownNow();
+            searchIndex.close();
+        }
+        if (journal != null) {
+            journal.close();
         }
     }
 
     public static void main(String[] args) {
         try {
             int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
-            GroupServer server = new GroupServer(port);
+            ServerConfig config = ServerConfig.fromSystemProperties(port);
+            GroupServer server = new GroupServer(config);
+            // A SIGTERM, e.g. from a rolling restart, sends members elsewhere instead of dropping them
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> server.drain(config.getDrainTimeoutMillis()), "drain"));
             server.start();
         } catch (IOException e) {
             logger.error("Error starting server", e);
         }
     }
+
+    private interface MessageSource {
+        Message read() throws IOException, ClassNotFoundException;
+    }
 } 
\ No newline at end of file
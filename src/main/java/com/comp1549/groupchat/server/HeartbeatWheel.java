@@ -0,0 +1,92 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Member;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+// Hashed timing wheel for heartbeat expiry. Each member is filed under the tick its deadline falls in
+// and only looked at again when that slot comes round. A heartbeat just moves the deadline in Member,
+// so a member found with a later deadline is refiled rather than expired. A tick therefore touches
+// the members expiring now plus those refiled, at most one visit per member per timeout period.
+final class HeartbeatWheel {
+    private final long timeoutNanos;
+    private final long tickNanos;
+    private final long origin;
+    private final ArrayDeque<Member>[] slots;
+    private final int mask;
+    private final Queue<Member> added = new ConcurrentLinkedQueue<>();
+    private final Consumer<Member> onExpired;
+    private ArrayDeque<Member> scratch = new ArrayDeque<>();
+    private long processedTick;                    // ticker thread only
+
+    @SuppressWarnings("unchecked")
+    HeartbeatWheel(long timeoutNanos, long tickNanos, long now, Consumer<Member> onExpired) {
+        this.timeoutNanos = timeoutNanos;
+        this.tickNanos = tickNanos;
+        this.origin = now;
+        this.onExpired = onExpired;
+
+        // One rotation covers a full timeout, so a live member is normally refiled once per timeout
+        long ticks = timeoutNanos / tickNanos + 1;
+        int size = Integer.highestOneBit((int) Math.min(ticks, 1 << 16) - 1) << 1;
+        this.slots = new ArrayDeque[Math.max(size, 2)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.mask = slots.length - 1;
+    }
+
+    // Any thread; the member is filed on the next tick
+    void add(Member member) {
+        added.add(member);
+    }
+
+    // Ticker thread only. Members that left stay filed until their deadline, then onExpired decides.
+    void tick(long now) {
+        long nowTick = tickOf(now);
+
+        Member member;
+        while ((member = added.poll()) != null) {
+            file(member, nowTick);
+        }
+
+        // After a stall, one rotation visits every slot
+        long last = Math.min(nowTick, processedTick + slots.length);
+        for (long tick = processedTick + 1; tick <= last; tick++) {
+            int slot = (int) (tick & mask);
+            ArrayDeque<Member> due = slots[slot];
+            slots[slot] = scratch;
+            while ((member = due.poll()) != null) {
+                if (member.getLastHeartbeatNanos() + timeoutNanos - now <= 0) {
+                    onExpired.accept(member);
+                } else {
+                    file(member, nowTick);
+                }
+            }
+            scratch = due;
+        }
+        processedTick = nowTick;
+    }
+
+    int size() {
+        int size = added.size();
+        for (ArrayDeque<Member> slot : slots) {
+            size += slot.size();
+        }
+        return size;
+    }
+
+    private void file(Member member, long nowTick) {
+        // Never the current tick, which has been or is being processed
+        long tick = Math.max(tickOf(member.getLastHeartbeatNanos() + timeoutNanos), nowTick + 1);
+        slots[(int) (tick & mask)].add(member);
+    }
+
+    private long tickOf(long nanos) {
+        // Round up, so a member is never looked at before its deadline
+        return Math.floorDiv(nanos - origin + tickNanos - 1, tickNanos);
+    }
+}
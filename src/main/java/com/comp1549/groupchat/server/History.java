@@ -0,0 +1,121 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.journal.Journal;
+import com.comp1549.groupchat.journal.JournalEntry;
+import com.comp1549.groupchat.model.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// Numbers every chat message and keeps the most recent ones in a ring, so members can catch up
+// after a reconnect. Anything the ring has already overwritten is read back from the journal.
+final class History {
+    private final AtomicReferenceArray<Entry> ring;
+    private final int mask;
+    private final Journal journal;                 // null: only the ring
+    private final String id;
+    private final Lock lock = new ReentrantLock();
+    private long nextSequence;                     // guarded by lock
+    private volatile long latestSequence;
+
+    History(int capacity, Journal journal) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.journal = journal;
+        // Without a journal the history dies with the process, so each run is a new history. The id
+        // only has to differ from run to run; seeding a SecureRandom would just slow startup down.
+        this.id = journal != null ? journal.id() : Long.toHexString(ThreadLocalRandom.current().nextLong());
+        this.nextSequence = journal != null ? journal.resumeSequence() : 1;
+        this.latestSequence = nextSequence - 1;
+    }
+
+    // Gives the message the next sequence number; the returned copy is what recipients get
+    EncodedMessage record(Message message) {
+        lock.lock();
+        try {
+            long sequence = nextSequence++;
+            EncodedMessage encoded = new EncodedMessage(message.withSequence(sequence));
+            ring.set((int) (sequence & mask), new Entry(sequence, encoded));
+            if (journal != null) {
+                journal.append(sequence, encoded.message());
+            }
+            latestSequence = sequence;
+            return encoded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String id() {
+        return id;
+    }
+
+    long latestSequence() {
+        return latestSequence;
+    }
+
+    // Messages after the given sequence, up to the limit, that pass the filter. Scans at most
+    // maxScanned sequences, so a member that most messages skip still costs a bounded amount per page.
+    Page read(long afterSequence, long untilSequence, int maxMessages, int maxScanned,
+              Predicate<Message> filter) throws IOException {
+        List<EncodedMessage> messages = new ArrayList<>();
+        long sequence = afterSequence + 1;
+        long scanLimit = Math.min(untilSequence, afterSequence + maxScanned);
+
+        while (sequence <= scanLimit && messages.size() < maxMessages) {
+            Entry entry = ring.get((int) (sequence & mask));
+            if (entry != null && entry.sequence == sequence) {
+                if (filter.test(entry.message.message())) {
+                    messages.add(entry.message);
+                }
+                sequence++;
+                continue;
+            }
+
+            // Overwritten in the ring: read a run from the journal, or skip to what the ring still has
+            long oldest = entry != null && entry.sequence > sequence ? entry.sequence - mask : sequence + 1;
+            if (journal != null) {
+                List<JournalEntry> entries = journal.read(sequence, (int) (scanLimit - sequence + 1));
+                long next = sequence;
+                // Stop at a gap: the ring may still hold what the journal dropped
+                for (JournalEntry journaled : entries) {
+                    if (journaled.sequence() != next || messages.size() >= maxMessages) {
+                        break;
+                    }
+                    if (filter.test(journaled.message())) {
+                        messages.add(new EncodedMessage(journaled.message().withSequence(next)));
+                    }
+                    next++;
+                }
+                if (entries.isEmpty() && sequence > journal.writtenSequence()) {
+                    // Still queued for the journal's writer: end the page and retry from here next time
+                    break;
+                }
+                if (next == sequence && !entries.isEmpty()) {
+                    // Deleted by retention; carry on from the oldest entry the journal has left
+                    next = Math.min(entries.get(0).sequence(), scanLimit + 1);
+                }
+                if (next > sequence) {
+                    sequence = next;
+                    continue;
+                }
+            }
+            sequence = Math.max(sequence + 1, oldest);
+        }
+        return new Page(messages, sequence - 1);
+    }
+
+    // What a page delivered, and the last sequence it got through
+    record Page(List<EncodedMessage> messages, long lastSequence) {
+    }
+
+    private record Entry(long sequence, EncodedMessage message) {
+    }
+}
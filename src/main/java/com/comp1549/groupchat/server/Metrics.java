@@ -0,0 +1,159 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.metrics.LatencyHistogram;
+import com.comp1549.groupchat.model.Message;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Server counters and latencies. Everything is a striped LongAdder, so the connection threads
+// that record never contend on one cache line, and recording allocates nothing; the cost of
+// summing the stripes is paid by whoever scrapes.
+final class Metrics {
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder leaves = new LongAdder();
+    private final LongAdder heartbeatExpiries = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder socketWrites = new LongAdder();
+    private final LongAdder[] messagesIn = adders(TYPES.length);
+    private final LongAdder[] messagesOut = adders(TYPES.length);
+    private final LongAdder[] messagesLimited = adders(TYPES.length);
+    private final LatencyHistogram fanOut = new LatencyHistogram();
+    private final LatencyHistogram encode = new LatencyHistogram();
+    private final LatencyHistogram decode = new LatencyHistogram();
+    private final LatencyHistogram search = new LatencyHistogram();
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    void joined() {
+        joins.increment();
+    }
+
+    void left() {
+        leaves.increment();
+    }
+
+    void heartbeatExpired() {
+        heartbeatExpiries.increment();
+    }
+
+    void messageIn(Message.Type type) {
+        messagesIn[type.ordinal()].increment();
+    }
+
+    void messageOut(Message.Type type) {
+        messagesOut[type.ordinal()].increment();
+    }
+
+    void rateLimited(Message.Type type) {
+        messagesLimited[type.ordinal()].increment();
+    }
+
+    void bytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    void bytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    // One write call on a member's socket, however many messages it carries
+    void socketWrite() {
+        socketWrites.increment();
+    }
+
+    long socketWrites() {
+        return socketWrites.sum();
+    }
+
+    // Time to hand one broadcast to every recipient's queue
+    void fannedOut(long nanos) {
+        fanOut.record(nanos);
+    }
+
+    LatencyHistogram encodeTimes() {
+        return encode;
+    }
+
+    void decoded(long nanos) {
+        decode.record(nanos);
+    }
+
+    // Time to run one member's search over the index
+    void searched(long nanos) {
+        search.record(nanos);
+    }
+
+    long messagesIn(Message.Type type) {
+        return messagesIn[type.ordinal()].sum();
+    }
+
+    long messagesOut(Message.Type type) {
+        return messagesOut[type.ordinal()].sum();
+    }
+
+    void writeTo(StringBuilder out) {
+        counter(out, "groupchat_connections_opened_total", "Connections accepted, cluster links included",
+            connectionsOpened.sum());
+        counter(out, "groupchat_connections_closed_total", "Connections closed", connectionsClosed.sum());
+        gauge(out, "groupchat_connections_open", "Connections currently open",
+            connectionsOpened.sum() - connectionsClosed.sum());
+        counter(out, "groupchat_joins_total", "Members that joined this node", joins.sum());
+        counter(out, "groupchat_leaves_total", "Members that left this node, timeouts included", leaves.sum());
+        counter(out, "groupchat_heartbeat_expiries_total", "Members removed for missing heartbeats",
+            heartbeatExpiries.sum());
+        counter(out, "groupchat_bytes_in_total", "Bytes read from framed connections", bytesIn.sum());
+        counter(out, "groupchat_bytes_out_total", "Bytes written to connections", bytesOut.sum());
+        counter(out, "groupchat_socket_writes_total", "Writes to connection sockets, each carrying one or more messages",
+            socketWrites.sum());
+        byType(out, "groupchat_messages_in_total", "Messages received, by type", messagesIn);
+        byType(out, "groupchat_messages_out_total", "Messages queued for sending, by type", messagesOut);
+        byType(out, "groupchat_messages_limited_total", "Messages over a rate limit, rejected or paused for, by type",
+            messagesLimited);
+        fanOut.writeTo(out, "groupchat_broadcast_fanout_seconds", "Time to queue one broadcast for every recipient");
+        encode.writeTo(out, "groupchat_encode_seconds", "Time to encode a message, once per wire format");
+        decode.writeTo(out, "groupchat_decode_seconds", "Time to decode a received frame");
+        search.writeTo(out, "groupchat_search_seconds", "Time to run one search over the index");
+    }
+
+    static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void byType(StringBuilder out, String name, String help, LongAdder[] adders) {
+        header(out, name, help, "counter");
+        for (Message.Type type : TYPES) {
+            out.append(name).append("{type=\"").append(type).append("\"} ")
+                .append(adders[type.ordinal()].sum()).append('\n');
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
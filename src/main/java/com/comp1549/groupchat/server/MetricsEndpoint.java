@@ -0,0 +1,54 @@
+package com.comp1549.groupchat.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+// GET /metrics in the Prometheus text format, on the loopback interface only
+final class MetricsEndpoint {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsEndpoint.class);
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer http;
+
+    MetricsEndpoint(int port, Supplier<String> scrape) throws IOException {
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", exchange -> respond(exchange, scrape));
+    }
+
+    void start() {
+        http.start();
+        logger.info("Metrics on http://{}:{}/metrics", InetAddress.getLoopbackAddress().getHostAddress(), getPort());
+    }
+
+    int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    void stop() {
+        http.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, Supplier<String> scrape) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
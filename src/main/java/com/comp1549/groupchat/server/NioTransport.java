@@ -0,0 +1,572 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Non-blocking transport: a fixed set of selector loops, each owning its connections' reads and writes
+class NioTransport {
+    private static final Logger logger = LoggerFactory.getLogger(NioTransport.class);
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_GATHER = 64;
+    private static final long STALE_TRACE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final GroupServer server;
+    private final ServerConfig config;
+    private final Metrics metrics;
+    private final BufferPool pool;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private volatile boolean running;
+    private volatile boolean accepting = true;
+
+    NioTransport(GroupServer server, ServerConfig config) throws IOException {
+        this.server = server;
+        this.config = config;
+        this.metrics = server.metrics();
+        this.pool = new BufferPool(config.getBufferPoolBytes());
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(config.getPort()));
+        this.loops = new EventLoop[config.getIoThreads()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        this.running = true;
+    }
+
+    BufferPool bufferPool() {
+        return pool;
+    }
+
+    int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // Accepts on the calling thread and hands channels to the loops round-robin
+    void run() {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+
+        int next = 0;
+        while (running && accepting) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (IOException e) {
+                if (running && accepting) {
+                    logger.error("Error accepting client connection", e);
+                }
+            }
+        }
+    }
+
+    // Connections already open carry on
+    void stopAccepting() {
+        accepting = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.error("Error closing server channel", e);
+        }
+    }
+
+    void stop() {
+        running = false;
+        stopAccepting();
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Thread thread;
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<NioConnection> pendingFlushes = new ConcurrentLinkedQueue<>();
+        // Connections not read from until their sender is back under its rate limit; loop thread only
+        private final PriorityQueue<NioConnection> paused =
+            new PriorityQueue<>(Comparator.comparingLong(connection -> connection.resumeAt));
+        // Frame bodies are copied out of the off-heap read buffers here to be decoded; loop thread only
+        private byte[] decodeBuffer = new byte[READ_BUFFER_SIZE];
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-loop-" + index);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void register(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        // Flushes run once per loop iteration, so everything queued for a member
+        // during one tick leaves in a single gathering write
+        void requestFlush(NioConnection connection) {
+            pendingFlushes.add(connection);
+            if (!inLoop()) {
+                selector.wakeup();
+            }
+        }
+
+        void pause(NioConnection connection, long nanos) {
+            connection.resumeAt = System.nanoTime() + nanos;
+            paused.add(connection);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(selectTimeout());
+                    registerPending();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+
+                    resumeDue();
+                    flushPending();
+                } catch (IOException e) {
+                    logger.error("Error in event loop {}", thread.getName(), e);
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                ((NioConnection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.error("Error closing selector", e);
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new NioConnection(channel, key, this));
+                    metrics.connectionOpened();
+                } catch (IOException e) {
+                    logger.error("Error registering client channel", e);
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // Nothing left to release
+                    }
+                }
+            }
+        }
+
+        // Milliseconds until the next paused connection is due, or 0 to wait for I/O alone
+        private long selectTimeout() {
+            NioConnection next = paused.peek();
+            if (next == null) {
+                return 0;
+            }
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.resumeAt - System.nanoTime() + 999_999));
+        }
+
+        private void resumeDue() {
+            long now = System.nanoTime();
+            while (!paused.isEmpty() && paused.peek().resumeAt - now <= 0) {
+                paused.poll().resume();
+            }
+        }
+
+        byte[] decodeBuffer(int length) {
+            if (decodeBuffer.length < length) {
+                decodeBuffer = new byte[Math.max(length, 2 * decodeBuffer.length)];
+            }
+            return decodeBuffer;
+        }
+
+        private void flushPending() {
+            NioConnection connection;
+            while ((connection = pendingFlushes.poll()) != null) {
+                connection.flush();
+            }
+        }
+    }
+
+    private final class NioConnection implements ClientConnection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final EventLoop loop;
+        private final InetSocketAddress remote;
+        // Each queued frame holds a reference to its pooled buffer until it is written or dropped
+        private final OutboundQueue<PooledBuffer> outbound =
+            new OutboundQueue<>(config.getQueueCapacity(), config.getOverflowPolicy(), PooledBuffer::release);
+        // Frames taken from the queue for the current gathering write; a partly written frame is never dropped
+        private final ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+        private final PooledBuffer[] batchBuffers = new PooledBuffer[MAX_GATHER];
+        private int batchStart;
+        private int batchEnd;
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // At most one sampled frame is followed per connection; the loop takes it when it leaves the queue
+        private final AtomicReference<TracedFrame> tracedFrame = new AtomicReference<>();
+        private TracedFrame writing;    // loop thread only
+        private long writingSince;
+        private PooledBuffer readBuffer;        // loop thread only; held only while part of a frame is in it
+        private boolean reading;
+        private WireFormat format;      // negotiated by the JOIN frame
+        private volatile int compressAbove = -1;
+        private String memberId;
+        private int handle = -1;        // the member's session, once registered
+        private volatile boolean closing;
+        private boolean paused;         // loop thread only, as is resumeAt
+        private long resumeAt;
+
+        NioConnection(SocketChannel channel, SelectionKey key, EventLoop loop) throws IOException {
+            this.channel = channel;
+            this.key = key;
+            this.loop = loop;
+            this.remote = (InetSocketAddress) channel.getRemoteAddress();
+        }
+
+        @Override
+        public void send(EncodedMessage message) throws IOException {
+            if (closed.get()) {
+                return;
+            }
+            // A private view of the shared frame: no copy per recipient
+            metrics.messageOut(message.message().getType());
+            PooledBuffer frame = message.directFrame(pool, format, compressAbove, metrics.encodeTimes());
+            TracedFrame traced = follow(message.trace(), frame);
+            if (!outbound.offer(frame)) {
+                frame.release();
+                if (traced != null && tracedFrame.compareAndSet(traced, null)) {
+                    traced.trace().skip();
+                }
+                logger.warn("Disconnecting slow consumer {} with {} queued messages", memberId, outbound.size());
+                close();
+                return;
+            }
+            if (closed.get()) {
+                // Closed while the frame went in: nothing will write it
+                releaseQueued();
+                return;
+            }
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.requestFlush(this);
+            }
+        }
+
+        // Claims the slot for a sampled frame. A frame the overflow policy dropped never leaves the
+        // queue, so a claim that old is given up.
+        private TracedFrame follow(Trace trace, PooledBuffer frame) {
+            if (trace == null || !trace.expect()) {
+                return null;
+            }
+            TracedFrame current = tracedFrame.get();
+            TracedFrame next = new TracedFrame(frame, trace, System.nanoTime());
+            if ((current == null || next.created() - current.created() > STALE_TRACE_NANOS)
+                    && tracedFrame.compareAndSet(current, next)) {
+                if (current != null) {
+                    current.trace().skip();
+                }
+                return next;
+            }
+            trace.skip();
+            return null;
+        }
+
+        @Override
+        public void enableCompression(int threshold) {
+            compressAbove = threshold;
+        }
+
+        @Override
+        public void closeWhenDrained() {
+            closing = true;
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.requestFlush(this);
+            }
+        }
+
+        @Override
+        public int queueDepth() {
+            return outbound.size() + (batchEnd - batchStart);
+        }
+
+        @Override
+        public long droppedMessages() {
+            return outbound.dropped();
+        }
+
+        @Override
+        public InetAddress getAddress() {
+            return remote.getAddress();
+        }
+
+        @Override
+        public int getPort() {
+            return remote.getPort();
+        }
+
+        // Loop thread only
+        void flush() {
+            flushScheduled.set(false);
+            if (closed.get()) {
+                releaseBuffers();
+                return;
+            }
+            try {
+                while (batchStart < batchEnd || fillBatch()) {
+                    metrics.socketWrite();
+                    metrics.bytesOut(channel.write(batch, batchStart, batchEnd - batchStart));
+                    while (batchStart < batchEnd && !batch[batchStart].hasRemaining()) {
+                        batch[batchStart] = null;
+                        batchBuffers[batchStart].release();
+                        batchBuffers[batchStart++] = null;
+                    }
+                    if (writing != null && batchStart == batchEnd) {
+                        writing.trace().written(writingSince, System.nanoTime());
+                        writing = null;
+                    }
+                    if (batchStart < batchEnd) {
+                        // Socket buffer is full, resume when writable
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (closing) {
+                    close();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                logger.info("Client {} write error: {}", memberId, e.getMessage());
+                close();
+            }
+        }
+
+        // Takes queued frames up to the byte budget
+        private boolean fillBatch() {
+            batchStart = 0;
+            batchEnd = 0;
+            long bytes = 0;
+            PooledBuffer frame;
+            while (batchEnd < MAX_GATHER && bytes < config.getFlushBytes() && (frame = outbound.poll()) != null) {
+                batchBuffers[batchEnd] = frame;
+                batch[batchEnd] = frame.view();
+                bytes += batch[batchEnd++].remaining();
+                TracedFrame traced = tracedFrame.get();
+                if (traced != null && traced.frame() == frame && tracedFrame.compareAndSet(traced, null)) {
+                    writing = traced;
+                    writingSince = System.nanoTime();
+                }
+            }
+            return batchEnd > 0;
+        }
+
+        // Loop thread only
+        void onReadable() {
+            try {
+                if (readBuffer == null) {
+                    readBuffer = pool.acquire(READ_BUFFER_SIZE);
+                }
+                int read = channel.read(readBuffer.buffer());
+                long received = server.tracer().now();
+                if (read < 0) {
+                    logger.info("Client {} disconnected", memberId);
+                    close();
+                    return;
+                }
+                metrics.bytesIn(read);
+                readBuffered(received);
+            } catch (IOException | IllegalStateException e) {
+                logger.info("Client {} connection error: {}", memberId, e.getMessage());
+                close();
+            }
+        }
+
+        // The sender was over a rate limit: nothing more is read, so TCP pushes back on it
+        private void pauseReading(long nanos) {
+            paused = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            loop.pause(this, nanos);
+        }
+
+        // Frames already read in go before anything new
+        void resume() {
+            paused = false;
+            if (closed.get()) {
+                return;
+            }
+            try {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                if (readBuffer != null) {
+                    readBuffered(server.tracer().now());
+                }
+            } catch (IOException | IllegalStateException e) {
+                logger.info("Client {} connection error: {}", memberId, e.getMessage());
+                close();
+            }
+        }
+
+        private void readBuffered(long received) throws IOException {
+            int required;
+            ByteBuffer buffer = readBuffer.buffer();
+            buffer.flip();
+            reading = true;
+            try {
+                required = readFrames(buffer, received);
+            } finally {
+                buffer.compact();
+                reading = false;
+            }
+
+            if (closed.get() || (buffer.position() == 0 && !paused)) {
+                // Nothing partly read: an idle member holds no buffer
+                readBuffer.release();
+                readBuffer = null;
+            } else if (required > buffer.capacity()) {
+                PooledBuffer larger = pool.acquire(required);
+                larger.buffer().put(buffer.flip());
+                readBuffer.release();
+                readBuffer = larger;
+            }
+        }
+
+        // Dispatches every complete frame until paused; returns the size of a trailing partial frame, if any
+        private int readFrames(ByteBuffer buffer, long received) throws IOException {
+            while (!closing && !paused && !closed.get() && buffer.remaining() >= Frames.HEADER_LENGTH) {
+                int start = buffer.position();
+                if (memberId == null && Frames.isObjectStream(buffer.get(start) & 0xFF, buffer.get(start + 1) & 0xFF)) {
+                    throw new StreamCorruptedException("Object stream clients require the blocking transport");
+                }
+
+                int length = buffer.getInt(start);
+                if (!Frames.isValidLength(length)) {
+                    throw new StreamCorruptedException("Invalid frame length: " + length);
+                }
+                if (buffer.remaining() < Frames.HEADER_LENGTH + length) {
+                    return Frames.HEADER_LENGTH + length;
+                }
+
+                byte[] body = loop.decodeBuffer(length);
+                buffer.get(start + Frames.HEADER_LENGTH, body, 0, length);
+                WireFormat frameFormat = WireFormat.of(body, 0, length);
+                if (format == null) {
+                    format = frameFormat;
+                }
+                long decodeStart = System.nanoTime();
+                Message message = frameFormat.codec().decode(body, 0, length);
+                metrics.decoded(System.nanoTime() - decodeStart);
+                buffer.position(start + Frames.HEADER_LENGTH + length);
+                long pause = dispatch(message, received);
+                if (pause > 0) {
+                    pauseReading(pause);
+                }
+            }
+            return 0;
+        }
+
+        // How long to stop reading for, if the member is over a rate limit
+        private long dispatch(Message message, long received) throws IOException {
+            if (memberId != null) {
+                return server.handleMessage(handle, message, this, received);
+            }
+
+            memberId = server.registerMember(message, this);
+            handle = server.sessionHandle(memberId, this);
+            if (memberId == null) {
+                // Rejected: let the error reply drain, then drop the connection
+                closing = true;
+                flush();
+            }
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            key.cancel();
+            metrics.connectionClosed();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Error closing client channel: {}", e.getMessage());
+            }
+            if (memberId != null) {
+                server.memberDisconnected(memberId, this);
+            }
+            // The batch and read buffer are the loop's to give back
+            if (loop.inLoop()) {
+                releaseBuffers();
+            } else {
+                releaseQueued();
+                loop.requestFlush(this);
+            }
+        }
+
+        // Loop thread only, once closed. A read buffer still being read from is given back by the read.
+        private void releaseBuffers() {
+            releaseQueued();
+            for (int i = batchStart; i < batchEnd; i++) {
+                batch[i] = null;
+                batchBuffers[i].release();
+                batchBuffers[i] = null;
+            }
+            batchStart = 0;
+            batchEnd = 0;
+            if (readBuffer != null && !reading) {
+                readBuffer.release();
+                readBuffer = null;
+            }
+        }
+
+        private void releaseQueued() {
+            PooledBuffer frame;
+            while ((frame = outbound.poll()) != null) {
+                frame.release();
+            }
+        }
+    }
+
+    private record TracedFrame(PooledBuffer frame, Trace trace, long created) {
+    }
+}
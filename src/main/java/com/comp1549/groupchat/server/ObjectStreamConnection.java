@@ -0,0 +1,67 @@
+package com.comp1549.groupchat.server;
+
+import java.io.*;
+import java.net.Socket;
+
+// Legacy clients that speak a raw Java object stream
+class ObjectStreamConnection extends StreamConnection {
+    // An object stream keeps a handle to every object it has written. Between resets repeated
+    // objects (sender ids, "SERVER") are sent as back-references; a reset bounds what is retained.
+    static final int RESET_MESSAGES = 512;
+    static final long RESET_BYTES = 1 << 20;
+
+    private final CountingOutputStream counter;
+    private final ObjectOutputStream out;
+    private int messagesSinceReset;
+    private long bytesAtReset;
+
+    ObjectStreamConnection(Socket socket, ServerConfig config, Metrics metrics) throws IOException {
+        this(socket, socketOutput(socket, config, metrics), config, metrics);
+    }
+
+    ObjectStreamConnection(Socket socket, OutputStream output, ServerConfig config, Metrics metrics) throws IOException {
+        super(socket, config, metrics);
+        this.counter = new CountingOutputStream(output);
+        this.out = new ObjectOutputStream(counter);
+        // The client's ObjectInputStream waits for our stream header
+        out.flush();
+    }
+
+    @Override
+    protected void write(EncodedMessage message) throws IOException {
+        // Object streams carry per-connection state, so these bytes cannot be shared with other members
+        long before = counter.count;
+        out.writeObject(message.message());
+        metrics.bytesOut(counter.count - before);
+        if (++messagesSinceReset >= RESET_MESSAGES || counter.count - bytesAtReset >= RESET_BYTES) {
+            out.reset();
+            messagesSinceReset = 0;
+            bytesAtReset = counter.count;
+        }
+    }
+
+    @Override
+    protected void flush() throws IOException {
+        out.flush();
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
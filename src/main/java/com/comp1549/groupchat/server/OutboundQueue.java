@@ -0,0 +1,72 @@
+package com.comp1549.groupchat.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Bounded per-member queue between the threads that route messages and the member's single writer
+class OutboundQueue<T> {
+    private final ArrayBlockingQueue<T> queue;
+    private final ServerConfig.OverflowPolicy policy;
+    private final Consumer<? super T> discard;
+    private final LongAdder dropped = new LongAdder();
+
+    OutboundQueue(int capacity, ServerConfig.OverflowPolicy policy) {
+        this(capacity, policy, item -> { });
+    }
+
+    // discard is given every item the policy drops
+    OutboundQueue(int capacity, ServerConfig.OverflowPolicy policy, Consumer<? super T> discard) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.discard = discard;
+    }
+
+    // Returns false when the policy says the consumer should be disconnected
+    boolean offer(T item) {
+        while (!queue.offer(item)) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    dropped.increment();
+                    discard.accept(item);
+                    return true;
+                case DROP_OLDEST:
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        dropped.increment();
+                        discard.accept(oldest);
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // Outside the overflow policy: adds the item only if there is room, and never drops another for it
+    boolean offerIfRoom(T item) {
+        return queue.offer(item);
+    }
+
+    T poll() {
+        return queue.poll();
+    }
+
+    T poll(long timeoutNanos) throws InterruptedException {
+        return queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    T take() throws InterruptedException {
+        return queue.take();
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,87 @@
+package com.comp1549.groupchat.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+// Queues one message for a large group by splitting the recipients into stripes, which the
+// workers of a ForkJoinPool take on a core each, and waiting until every stripe is done.
+// Waiting keeps each sender's messages in order at every recipient: the sender's next message
+// is not routed until this one is queued for everyone. The calling thread does the first stripe
+// itself, which encodes (and compresses) the message for the formats in use before the workers
+// start sharing it.
+final class ParallelFanOut {
+    static final int STRIPE = 1024;            // recipients per task
+
+    private final ForkJoinPool pool;
+
+    ParallelFanOut(int threads) {
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("fan-out-" + worker.getPoolIndex());
+            return worker;
+        }, null, false);
+    }
+
+    // Sends to recipients.apply(i) for every i below count, skipping nulls and excluded
+    void send(EncodedMessage encoded, IntFunction<Session> recipients, int count, Session excluded) throws IOException {
+        int first = Math.min(count, STRIPE);
+        send(encoded, recipients, excluded, 0, first);
+        if (first == count) {
+            return;
+        }
+        try {
+            pool.invoke(new Stripe(encoded, recipients, excluded, first, count));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static void send(EncodedMessage encoded, IntFunction<Session> recipients, Session excluded,
+                             int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            Session session = recipients.apply(i);
+            if (session != null && session != excluded) {
+                session.connection().send(encoded);
+            }
+        }
+    }
+
+    private static final class Stripe extends RecursiveAction {
+        private final EncodedMessage encoded;
+        private final IntFunction<Session> recipients;
+        private final Session excluded;
+        private final int from;
+        private final int to;
+
+        Stripe(EncodedMessage encoded, IntFunction<Session> recipients, Session excluded, int from, int to) {
+            this.encoded = encoded;
+            this.recipients = recipients;
+            this.excluded = excluded;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= STRIPE) {
+                try {
+                    send(encoded, recipients, excluded, from, to);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Stripe(encoded, recipients, excluded, from, middle),
+                new Stripe(encoded, recipients, excluded, middle, to));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.comp1549.groupchat.server;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A buffer from the pool, shared by reference count. Every holder releases its reference once, and
+// the last release hands the memory back to the pool: nothing may touch the buffer after that.
+final class PooledBuffer {
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final int sizeClass;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private Cleaner.Cleanable watch;    // set before the buffer is handed out, with leak detection only
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+    }
+
+    // The buffer itself, for whoever fills or reads it while the others only hold views
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    // A read-only view with its own position over what is between the buffer's position and limit
+    ByteBuffer view() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    // False if the last reference has already gone, when the buffer must not be used
+    boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    void release() {
+        int count = references.decrementAndGet();
+        if (count > 0) {
+            return;
+        }
+        if (count < 0) {
+            throw new IllegalStateException("Pooled buffer released more often than it was retained");
+        }
+        if (watch != null) {
+            watch.clean();
+        }
+        pool.recycle(buffer, sizeClass);
+    }
+
+    AtomicInteger references() {
+        return references;
+    }
+
+    void watch(Cleaner.Cleanable watch) {
+        this.watch = watch;
+    }
+}
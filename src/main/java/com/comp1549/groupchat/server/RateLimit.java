@@ -0,0 +1,35 @@
+package com.comp1549.groupchat.server;
+
+// The shape of a token bucket: perSecond tokens a second, and up to burst of them saved up
+public record RateLimit(long perSecond, long burst) {
+    private static final long MAX = 1_000_000_000L;
+
+    public RateLimit {
+        if (perSecond < 1 || perSecond > MAX) {
+            throw new IllegalArgumentException("perSecond must be between 1 and " + MAX);
+        }
+        if (burst < 1 || burst > MAX) {
+            throw new IllegalArgumentException("burst must be between 1 and " + MAX);
+        }
+    }
+
+    // "rate/burst", or just "rate" for a second's worth of burst
+    public static RateLimit parse(String text) {
+        int slash = text.indexOf('/');
+        try {
+            long perSecond = Long.parseLong((slash < 0 ? text : text.substring(0, slash)).trim());
+            return new RateLimit(perSecond, slash < 0 ? perSecond : Long.parseLong(text.substring(slash + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Rate limits look like rate/burst, not " + text, e);
+        }
+    }
+
+    long intervalNanos() {
+        return MAX / perSecond;
+    }
+
+    @Override
+    public String toString() {
+        return perSecond + "/" + burst;
+    }
+}
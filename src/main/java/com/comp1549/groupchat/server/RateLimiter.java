@@ -0,0 +1,93 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Checks what members send against the current RateLimits. Each bucket is a single long: the
+// time it will be full again (the generic cell rate algorithm), so taking tokens is one read and
+// one CAS, and an idle bucket needs no refilling. A member's buckets, one per message type and
+// one for everything, share an AtomicLongArray on its Session; the server has one for fan-out.
+// Times count from the limiter's start, so a fresh zeroed bucket reads as full.
+final class RateLimiter {
+    private static final Message.Type[] TYPES = Message.Type.values();
+    private static final int MEMBER = TYPES.length;
+    static final int SLOTS = TYPES.length + 1;
+
+    private final long origin = System.nanoTime();
+    private final AtomicLongArray fanOut = new AtomicLongArray(1);
+    private volatile Limits limits;             // null: nothing is limited
+
+    private record Limits(RateLimit member, RateLimit[] byType, RateLimit fanOut, RateLimits.Policy policy) {
+    }
+
+    RateLimiter(RateLimits limits) {
+        update(limits);
+    }
+
+    // A copy is taken, so later changes to limits need another update
+    void update(RateLimits limits) {
+        if (limits == null || !limits.limitsAnything()) {
+            this.limits = null;
+            return;
+        }
+        RateLimit[] byType = new RateLimit[TYPES.length];
+        for (Message.Type type : TYPES) {
+            byType[type.ordinal()] = limits.getTypeLimit(type);
+        }
+        this.limits = new Limits(limits.getMemberLimit(), byType, limits.getFanOutLimit(), limits.getPolicy());
+    }
+
+    boolean active() {
+        return limits != null;
+    }
+
+    RateLimits.Policy policy() {
+        Limits current = limits;
+        return current != null ? current.policy() : RateLimits.Policy.REJECT;
+    }
+
+    // Charges a message to its sender's buckets, and its deliveries to the fan-out budget.
+    // Returns 0 if it is within every limit, else how many nanoseconds it is over by. Under
+    // REJECT a bucket that is short is left as it was, though buckets checked before it have
+    // been charged; under PAUSE every bucket is charged, going into debt if need be.
+    long admit(AtomicLongArray buckets, Message.Type type, int deliveries) {
+        Limits current = limits;
+        // Heartbeats keep the member alive and LEAVE lets it go, so neither is ever held back
+        if (current == null || type == Message.Type.HEARTBEAT || type == Message.Type.LEAVE) {
+            return 0;
+        }
+        boolean debt = current.policy() == RateLimits.Policy.PAUSE;
+        long now = System.nanoTime() - origin;
+        long over = 0;
+        RateLimit typeLimit = current.byType()[type.ordinal()];
+        if (typeLimit != null) {
+            over = take(buckets, type.ordinal(), typeLimit, 1, now, debt);
+        }
+        if (current.member() != null && (over == 0 || debt)) {
+            over = Math.max(over, take(buckets, MEMBER, current.member(), 1, now, debt));
+        }
+        if (current.fanOut() != null && deliveries > 0 && (over == 0 || debt)) {
+            over = Math.max(over, take(fanOut, 0, current.fanOut(), deliveries, now, debt));
+        }
+        return over;
+    }
+
+    private static long take(AtomicLongArray buckets, int slot, RateLimit limit, long tokens, long now, boolean debt) {
+        long interval = limit.intervalNanos();
+        // A message bigger than the whole burst would never fit otherwise; it empties the bucket instead
+        long cost = Math.min(tokens, limit.burst()) * interval;
+        long capacity = limit.burst() * interval;
+        while (true) {
+            long full = buckets.get(slot);
+            long next = Math.max(full, now) + cost;
+            long over = next - now - capacity;
+            if (over > 0 && !debt) {
+                return over;
+            }
+            if (buckets.compareAndSet(slot, full, next)) {
+                return Math.max(over, 0);
+            }
+        }
+    }
+}
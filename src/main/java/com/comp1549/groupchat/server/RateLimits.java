@@ -0,0 +1,70 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Token bucket limits on what members send; nothing is limited unless a limit is set.
+// GroupServer.setRateLimits changes them while the server runs.
+public class RateLimits {
+    // What happens to a message over a limit
+    public enum Policy {
+        REJECT,     // Drop it and tell the sender with an ERROR
+        PAUSE       // Deliver it, then stop reading from the sender until it is back under the limit
+    }
+
+    private RateLimit memberLimit;             // null: no limit on everything a member sends
+    private final Map<Message.Type, RateLimit> typeLimits = new EnumMap<>(Message.Type.class);
+    private RateLimit fanOutLimit;             // null: no limit on deliveries across the server
+    private Policy policy = Policy.REJECT;
+
+    // On all a member sends, heartbeats and leaving aside
+    public RateLimit getMemberLimit() {
+        return memberLimit;
+    }
+
+    public void setMemberLimit(RateLimit memberLimit) {
+        this.memberLimit = memberLimit;
+    }
+
+    // On one type of message from each member, on top of the member limit
+    public RateLimit getTypeLimit(Message.Type type) {
+        return typeLimits.get(type);
+    }
+
+    public void setTypeLimit(Message.Type type, RateLimit limit) {
+        if (type == Message.Type.HEARTBEAT || type == Message.Type.LEAVE) {
+            throw new IllegalArgumentException(type + " messages cannot be limited");
+        }
+        if (limit != null) {
+            typeLimits.put(type, limit);
+        } else {
+            typeLimits.remove(type);
+        }
+    }
+
+    // On the messages the whole server delivers: a broadcast costs one token per recipient
+    public RateLimit getFanOutLimit() {
+        return fanOutLimit;
+    }
+
+    public void setFanOutLimit(RateLimit fanOutLimit) {
+        this.fanOutLimit = fanOutLimit;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(Policy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        this.policy = policy;
+    }
+
+    boolean limitsAnything() {
+        return memberLimit != null || fanOutLimit != null || !typeLimits.isEmpty();
+    }
+}
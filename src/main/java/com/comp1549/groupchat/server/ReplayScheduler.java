@@ -0,0 +1,112 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Handshake;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiPredicate;
+
+// Paces catch-up replays. Each tick shares one global message budget round-robin between the
+// members still catching up, a page at a time, and skips anyone whose outbound queue is already
+// half full. A mass reconnect therefore adds a bounded, steady load instead of crowding out live traffic.
+final class ReplayScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayScheduler.class);
+    static final int TICK_MILLIS = 10;
+    private static final int SCAN_FACTOR = 8;
+
+    private final History history;
+    private final BiPredicate<String, Session> connected;
+    private final BiPredicate<String, Message> addressedTo;
+    private final int pageSize;
+    private final int budgetPerTick;
+    private final int queueCapacity;
+    private final Queue<Replay> replays = new ConcurrentLinkedQueue<>();
+
+    ReplayScheduler(History history, ServerConfig config, BiPredicate<String, Session> connected,
+                    BiPredicate<String, Message> addressedTo) {
+        this.history = history;
+        this.connected = connected;
+        this.addressedTo = addressedTo;
+        this.pageSize = config.getReplayPageSize();
+        this.budgetPerTick = Math.max(1, (int) (config.getReplayMessagesPerSecond() * TICK_MILLIS / 1000));
+        this.queueCapacity = config.getQueueCapacity();
+    }
+
+    // Replays what the member missed after the given sequence, up to the latest one at the time of the call
+    void start(String memberId, Session session, long afterSequence) {
+        replays.add(new Replay(memberId, session, afterSequence, history.latestSequence()));
+    }
+
+    int pending() {
+        return replays.size();
+    }
+
+    // Scheduler thread only
+    void tick() {
+        int budget = budgetPerTick;
+        for (int visits = replays.size(); visits > 0 && budget > 0; visits--) {
+            Replay replay = replays.poll();
+            if (replay == null) {
+                return;
+            }
+            if (!connected.test(replay.memberId, replay.session)) {
+                continue;
+            }
+            try {
+                if (replay.session.connection().queueDepth() < queueCapacity / 2) {
+                    budget -= replay.sendPage(Math.min(pageSize, budget));
+                }
+                if (replay.done()) {
+                    replay.finish();
+                    continue;
+                }
+            } catch (IOException e) {
+                logger.warn("Replay for {} failed: {}", replay.memberId, e.getMessage());
+                continue;
+            }
+            replays.add(replay);
+        }
+    }
+
+    private final class Replay {
+        private final String memberId;
+        private final Session session;
+        private final long untilSequence;
+        private long cursor;
+
+        Replay(String memberId, Session session, long afterSequence, long untilSequence) {
+            this.memberId = memberId;
+            this.session = session;
+            this.cursor = afterSequence;
+            this.untilSequence = untilSequence;
+        }
+
+        int sendPage(int maxMessages) throws IOException {
+            History.Page page = history.read(cursor, untilSequence, maxMessages, maxMessages * SCAN_FACTOR,
+                message -> addressedTo.test(memberId, message));
+            for (EncodedMessage message : page.messages()) {
+                // Releasing only stops later sends sharing the off-heap frame, so a live fan-out is unaffected
+                try {
+                    session.connection().send(message);
+                } finally {
+                    message.release();
+                }
+            }
+            cursor = page.lastSequence();
+            return page.messages().size();
+        }
+
+        boolean done() {
+            return cursor >= untilSequence;
+        }
+
+        void finish() throws IOException {
+            String content = new Handshake().set(Handshake.SEQUENCE, Long.toString(untilSequence)).toString();
+            session.connection().send(new Message("SERVER", memberId, Message.Type.REPLAY_END, content));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.protocol.MembershipPayload;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Named rooms, each with its own members and host. Joins and leaves update one room atomically
+// through the map's per-key compute, so rooms never wait on each other or on the server-wide
+// membership lock, and fan-outs read a room's members without locking at all.
+final class Rooms {
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+
+    // Room names also travel in handshakes, so they may not contain the handshake's separators
+    static boolean isValidName(String name) {
+        return MembershipPayload.isValidId(name)
+            && name.indexOf(',') < 0 && name.indexOf(';') < 0 && name.indexOf('=') < 0;
+    }
+
+    // Adds the member, creating the room if needed; the first member in becomes its host
+    Room join(String name, String memberId, Session session) {
+        return rooms.compute(name, (key, room) -> {
+            Room joined = room != null ? room : new Room(key);
+            joined.members.put(memberId, session);
+            if (joined.host == null) {
+                joined.host = memberId;
+            }
+            return joined;
+        });
+    }
+
+    // Removes the member and drops the room once it is empty. Returns the room's new host if the
+    // member was its host and someone is left to take over, otherwise null.
+    String leave(String name, String memberId) {
+        String[] newHost = new String[1];
+        rooms.computeIfPresent(name, (key, room) -> {
+            if (room.members.remove(memberId) == null) {
+                return room;
+            }
+            if (room.members.isEmpty()) {
+                return null;
+            }
+            if (memberId.equals(room.host)) {
+                Iterator<String> remaining = room.members.keySet().iterator();
+                room.host = remaining.next();
+                newHost[0] = room.host;
+            }
+            return room;
+        });
+        return newHost[0];
+    }
+
+    Room get(String name) {
+        return rooms.get(name);
+    }
+
+    int size() {
+        return rooms.size();
+    }
+
+    static final class Room {
+        private final String name;
+        private final Map<String, Session> members = new ConcurrentHashMap<>();
+        private volatile String host;       // written inside the owning map's compute
+
+        private Room(String name) {
+            this.name = name;
+        }
+
+        String name() {
+            return name;
+        }
+
+        String host() {
+            return host;
+        }
+
+        boolean contains(String memberId) {
+            return members.containsKey(memberId);
+        }
+
+        Collection<String> memberIds() {
+            return members.keySet();
+        }
+
+        Map<String, Session> sessions() {
+            return members;
+        }
+    }
+}
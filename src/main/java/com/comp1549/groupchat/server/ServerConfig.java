@@ -0,0 +1,413 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.journal.JournalConfig;
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.search.SearchConfig;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Startup options, read from -Dgroupchat.* system properties by main
+public class ServerConfig {
+    public enum Transport {
+        BLOCKING,       // One platform thread per connection
+        VIRTUAL,        // One virtual thread per connection
+        NIO             // Selector event loops, one per core
+    }
+
+    // What a member's outbound queue does when that member cannot keep up
+    public enum OverflowPolicy {
+        DROP_OLDEST,    // Discard the oldest queued message
+        DROP_NEWEST,    // Discard the message being queued
+        DISCONNECT      // Drop the slow member
+    }
+
+    private static final Pattern PEER = Pattern.compile("[A-Za-z0-9_.-]+@[^:@\\s]+:\\d{1,5}");
+    private static final Pattern HOST_PORT = Pattern.compile("[^:@\\s]+:\\d{1,5}");
+
+    private int port;
+    private Transport transport;
+    private int ioThreads;
+    private int fanOutThreads;
+    private int queueCapacity;
+    private OverflowPolicy overflowPolicy;
+    private int flushBytes;
+    private long bufferPoolBytes;
+    private long maxFlushDelayMicros;
+    private long heartbeatTimeoutMillis;
+    private long drainTimeoutMillis;
+    private String reconnectTo;                // null: members reconnect to this server
+    private int historyCapacity;
+    private int replayPageSize;
+    private long replayMessagesPerSecond;
+    private JournalConfig journal;             // null: keep no history
+    private SearchConfig search;               // null: no search index
+    private RateLimits rateLimits;
+    private String nodeId;                     // null: not part of a cluster
+    private int metricsPort;                   // -1: no metrics endpoint
+    private int traceSampleEvery;              // 0: no tracing
+    private int compressionThreshold;          // -1: never compress
+    private List<String> peers;                // "nodeId@host:port"
+    private String clusterSecret;              // required for a cluster
+
+    public ServerConfig(int port) {
+        this.port = port;
+        this.transport = Transport.BLOCKING;
+        this.ioThreads = Runtime.getRuntime().availableProcessors();
+        this.fanOutThreads = Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = 1024;
+        this.overflowPolicy = OverflowPolicy.DISCONNECT;
+        this.flushBytes = 64 * 1024;
+        this.bufferPoolBytes = 64L << 20;
+        this.maxFlushDelayMicros = 500;
+        this.heartbeatTimeoutMillis = 30_000;
+        this.drainTimeoutMillis = 10_000;
+        this.historyCapacity = 8192;
+        this.replayPageSize = 256;
+        this.replayMessagesPerSecond = 20_000;
+        this.peers = List.of();
+        this.metricsPort = -1;
+        this.compressionThreshold = 1024;
+        this.search = new SearchConfig();
+        this.rateLimits = new RateLimits();
+    }
+
+    public static ServerConfig fromSystemProperties(int port) {
+        ServerConfig config = new ServerConfig(port);
+        config.setTransport(Transport.valueOf(
+            System.getProperty("groupchat.transport", config.getTransport().name()).toUpperCase()));
+        config.setIoThreads(Integer.getInteger("groupchat.ioThreads", config.getIoThreads()));
+        config.setFanOutThreads(Integer.getInteger("groupchat.fanOutThreads", config.getFanOutThreads()));
+        config.setQueueCapacity(Integer.getInteger("groupchat.queueCapacity", config.getQueueCapacity()));
+        config.setOverflowPolicy(OverflowPolicy.valueOf(
+            System.getProperty("groupchat.overflowPolicy", config.getOverflowPolicy().name()).toUpperCase()));
+        config.setFlushBytes(Integer.getInteger("groupchat.flushBytes", config.getFlushBytes()));
+        config.setBufferPoolBytes(Long.getLong("groupchat.bufferPoolBytes", config.getBufferPoolBytes()));
+        config.setMaxFlushDelayMicros(Long.getLong("groupchat.maxFlushDelayMicros", config.getMaxFlushDelayMicros()));
+        config.setHeartbeatTimeoutMillis(Long.getLong("groupchat.heartbeatTimeoutMillis", config.getHeartbeatTimeoutMillis()));
+        config.setDrainTimeoutMillis(Long.getLong("groupchat.drainTimeoutMillis", config.getDrainTimeoutMillis()));
+        config.setReconnectTo(System.getProperty("groupchat.reconnectTo"));
+        config.setHistoryCapacity(Integer.getInteger("groupchat.historyCapacity", config.getHistoryCapacity()));
+        config.setReplayPageSize(Integer.getInteger("groupchat.replayPageSize", config.getReplayPageSize()));
+        config.setReplayMessagesPerSecond(Long.getLong("groupchat.replayMessagesPerSecond", config.getReplayMessagesPerSecond()));
+
+        config.setMetricsPort(Integer.getInteger("groupchat.metricsPort", config.getMetricsPort()));
+        config.setTraceSampleEvery(Integer.getInteger("groupchat.traceSampleEvery", config.getTraceSampleEvery()));
+        config.setCompressionThreshold(Integer.getInteger("groupchat.compressionThreshold", config.getCompressionThreshold()));
+        config.setNodeId(System.getProperty("groupchat.nodeId"));
+        config.setClusterSecret(System.getProperty("groupchat.clusterSecret"));
+        String peers = System.getProperty("groupchat.peers");
+        if (peers != null && !peers.isBlank()) {
+            config.setPeers(Arrays.stream(peers.split(",")).map(String::trim).toList());
+        }
+
+        if (Boolean.parseBoolean(System.getProperty("groupchat.search", "true"))) {
+            SearchConfig search = config.getSearch();
+            search.setMemoryBytes(Long.getLong("groupchat.searchMemoryBytes", search.getMemoryBytes()));
+            search.setSegmentMessages(Integer.getInteger("groupchat.searchSegmentMessages", search.getSegmentMessages()));
+            search.setRefreshMillis(Long.getLong("groupchat.searchRefreshMillis", search.getRefreshMillis()));
+        } else {
+            config.setSearch(null);
+        }
+
+        RateLimits limits = config.getRateLimits();
+        String memberRate = System.getProperty("groupchat.memberRate");
+        if (memberRate != null) {
+            limits.setMemberLimit(RateLimit.parse(memberRate));
+        }
+        String typeRates = System.getProperty("groupchat.typeRates");
+        if (typeRates != null && !typeRates.isBlank()) {
+            for (String typeRate : typeRates.split(",")) {
+                int colon = typeRate.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Type rates look like type:rate/burst, not " + typeRate);
+                }
+                limits.setTypeLimit(Message.Type.valueOf(typeRate.substring(0, colon).trim().toUpperCase()),
+                    RateLimit.parse(typeRate.substring(colon + 1)));
+            }
+        }
+        String fanOutRate = System.getProperty("groupchat.fanOutRate");
+        if (fanOutRate != null) {
+            limits.setFanOutLimit(RateLimit.parse(fanOutRate));
+        }
+        limits.setPolicy(RateLimits.Policy.valueOf(
+            System.getProperty("groupchat.ratePolicy", limits.getPolicy().name()).toUpperCase()));
+
+        String journalDir = System.getProperty("groupchat.journalDir");
+        if (journalDir != null) {
+            JournalConfig journal = new JournalConfig(Path.of(journalDir));
+            journal.setSegmentBytes(Integer.getInteger("groupchat.journalSegmentBytes", journal.getSegmentBytes()));
+            journal.setRetentionBytes(Long.getLong("groupchat.journalRetentionBytes", journal.getRetentionBytes()));
+            journal.setRetentionMillis(Long.getLong("groupchat.journalRetentionMillis", journal.getRetentionMillis()));
+            journal.setFsyncIntervalMillis(Long.getLong("groupchat.journalFsyncMillis", journal.getFsyncIntervalMillis()));
+            config.setJournal(journal);
+        }
+        return config;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("ioThreads must be at least 1");
+        }
+        this.ioThreads = ioThreads;
+    }
+
+    // Cores a broadcast to a large group is split across; 1 queues it on the sender's thread alone
+    public int getFanOutThreads() {
+        return fanOutThreads;
+    }
+
+    public void setFanOutThreads(int fanOutThreads) {
+        if (fanOutThreads < 1) {
+            throw new IllegalArgumentException("fanOutThreads must be at least 1");
+        }
+        this.fanOutThreads = fanOutThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getFlushBytes() {
+        return flushBytes;
+    }
+
+    public void setFlushBytes(int flushBytes) {
+        if (flushBytes < 1) {
+            throw new IllegalArgumentException("flushBytes must be at least 1");
+        }
+        this.flushBytes = flushBytes;
+    }
+
+    // Off-heap memory the NIO transport keeps in idle buffers for reuse; 0 frees every buffer after use
+    public long getBufferPoolBytes() {
+        return bufferPoolBytes;
+    }
+
+    public void setBufferPoolBytes(long bufferPoolBytes) {
+        if (bufferPoolBytes < 0) {
+            throw new IllegalArgumentException("bufferPoolBytes must not be negative");
+        }
+        this.bufferPoolBytes = bufferPoolBytes;
+    }
+
+    public long getMaxFlushDelayMicros() {
+        return maxFlushDelayMicros;
+    }
+
+    public void setMaxFlushDelayMicros(long maxFlushDelayMicros) {
+        if (maxFlushDelayMicros < 0) {
+            throw new IllegalArgumentException("maxFlushDelayMicros must not be negative");
+        }
+        this.maxFlushDelayMicros = maxFlushDelayMicros;
+    }
+
+    public long getHeartbeatTimeoutMillis() {
+        return heartbeatTimeoutMillis;
+    }
+
+    public void setHeartbeatTimeoutMillis(long heartbeatTimeoutMillis) {
+        if (heartbeatTimeoutMillis < 1) {
+            throw new IllegalArgumentException("heartbeatTimeoutMillis must be at least 1");
+        }
+        this.heartbeatTimeoutMillis = heartbeatTimeoutMillis;
+    }
+
+    // How long a shutdown waits for members' queues to drain before cutting them off
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        if (drainTimeoutMillis < 0) {
+            throw new IllegalArgumentException("drainTimeoutMillis must not be negative");
+        }
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    // host:port a draining server sends its members to
+    public String getReconnectTo() {
+        return reconnectTo;
+    }
+
+    public void setReconnectTo(String reconnectTo) {
+        if (reconnectTo != null && !HOST_PORT.matcher(reconnectTo).matches()) {
+            throw new IllegalArgumentException("reconnectTo must look like host:port, not " + reconnectTo);
+        }
+        this.reconnectTo = reconnectTo;
+    }
+
+    // Recent messages kept in memory for catch-up; older ones come from the journal, if any
+    public int getHistoryCapacity() {
+        return historyCapacity;
+    }
+
+    public void setHistoryCapacity(int historyCapacity) {
+        if (historyCapacity < 1 || historyCapacity > 1 << 24) {
+            throw new IllegalArgumentException("historyCapacity must be between 1 and " + (1 << 24));
+        }
+        this.historyCapacity = historyCapacity;
+    }
+
+    public int getReplayPageSize() {
+        return replayPageSize;
+    }
+
+    public void setReplayPageSize(int replayPageSize) {
+        if (replayPageSize < 1) {
+            throw new IllegalArgumentException("replayPageSize must be at least 1");
+        }
+        this.replayPageSize = replayPageSize;
+    }
+
+    // Shared by every member catching up at once
+    public long getReplayMessagesPerSecond() {
+        return replayMessagesPerSecond;
+    }
+
+    public void setReplayMessagesPerSecond(long replayMessagesPerSecond) {
+        if (replayMessagesPerSecond < 1) {
+            throw new IllegalArgumentException("replayMessagesPerSecond must be at least 1");
+        }
+        this.replayMessagesPerSecond = replayMessagesPerSecond;
+    }
+
+    public JournalConfig getJournal() {
+        return journal;
+    }
+
+    public void setJournal(JournalConfig journal) {
+        this.journal = journal;
+    }
+
+    // Indexes routed chat messages for SEARCH requests
+    public SearchConfig getSearch() {
+        return search;
+    }
+
+    public void setSearch(SearchConfig search) {
+        this.search = search;
+    }
+
+    // The limits the server starts with; GroupServer.setRateLimits changes them later
+    public RateLimits getRateLimits() {
+        return rateLimits;
+    }
+
+    public void setRateLimits(RateLimits rateLimits) {
+        if (rateLimits == null) {
+            throw new IllegalArgumentException("rateLimits must not be null");
+        }
+        this.rateLimits = rateLimits;
+    }
+
+    // Serves /metrics on the loopback interface; 0 picks a free port
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        if (metricsPort < -1 || metricsPort > 65535) {
+            throw new IllegalArgumentException("metricsPort must be -1 (off) or a port number");
+        }
+        this.metricsPort = metricsPort;
+    }
+
+    // Smallest frame body, in bytes, compressed for clients that ask for compression
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < -1) {
+            throw new IllegalArgumentException("compressionThreshold must be -1 (off) or a size in bytes");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    // Traces about one in this many chat messages through the server
+    public int getTraceSampleEvery() {
+        return traceSampleEvery;
+    }
+
+    public void setTraceSampleEvery(int traceSampleEvery) {
+        if (traceSampleEvery < 0) {
+            throw new IllegalArgumentException("traceSampleEvery must be 0 (off) or positive");
+        }
+        this.traceSampleEvery = traceSampleEvery;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        if (nodeId != null && !PEER.matcher(nodeId + "@host:1").matches()) {
+            throw new IllegalArgumentException("Invalid nodeId: " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    // The other nodes of the cluster; of each pair, the node with the lower id dials the other
+    public List<String> getPeers() {
+        return peers;
+    }
+
+    public void setPeers(List<String> peers) {
+        for (String peer : peers) {
+            if (!PEER.matcher(peer).matches()) {
+                throw new IllegalArgumentException("Peers must look like nodeId@host:port, not " + peer);
+            }
+        }
+        this.peers = List.copyOf(peers);
+    }
+
+    // Shared by every node; a link is only accepted from a node that proves it knows the secret
+    public String getClusterSecret() {
+        return clusterSecret;
+    }
+
+    public void setClusterSecret(String clusterSecret) {
+        if (clusterSecret != null && clusterSecret.length() < 16) {
+            throw new IllegalArgumentException("clusterSecret must be at least 16 characters");
+        }
+        this.clusterSecret = clusterSecret;
+    }
+}
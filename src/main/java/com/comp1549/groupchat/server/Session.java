@@ -0,0 +1,76 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Member;
+import com.comp1549.groupchat.protocol.Handshake;
+
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A joined member's connection plus what it negotiated in its JOIN
+final class Session {
+    private static final SecureRandom tokens = new SecureRandom();
+
+    private final Member member;
+    private final ClientConnection connection;
+    private final boolean deltaMembership;
+    private final boolean replay;
+    private final String token;
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+    private volatile int handle = -1;              // this node's SessionTable slot; -1 once gone
+    private final AtomicLongArray rateBuckets = new AtomicLongArray(RateLimiter.SLOTS);
+
+    Session(Member member, ClientConnection connection, Handshake handshake) {
+        this.member = member;
+        this.connection = connection;
+        this.deltaMembership = handshake.has(Handshake.MEMBERSHIP, Handshake.DELTA);
+        this.replay = handshake.has(Handshake.REPLAY, "true");
+        byte[] bytes = new byte[16];
+        tokens.nextBytes(bytes);
+        this.token = HexFormat.of().formatHex(bytes);
+    }
+
+    // The member as the whole cluster sees it, heartbeat included
+    Member member() {
+        return member;
+    }
+
+    ClientConnection connection() {
+        return connection;
+    }
+
+    // Older clients only understand the MEMBER_LIST text
+    boolean deltaMembership() {
+        return deltaMembership;
+    }
+
+    // Whether the client understands WELCOME and catch-up replays
+    boolean replay() {
+        return replay;
+    }
+
+    // Proves a reconnecting client owns the id, so it can take over a session that has not timed out yet
+    String token() {
+        return token;
+    }
+
+    int handle() {
+        return handle;
+    }
+
+    void handle(int handle) {
+        this.handle = handle;
+    }
+
+    // This member's token buckets, for the RateLimiter
+    AtomicLongArray rateBuckets() {
+        return rateBuckets;
+    }
+
+    // The rooms this member is in, so leaving the server leaves just those
+    Set<String> rooms() {
+        return rooms;
+    }
+}
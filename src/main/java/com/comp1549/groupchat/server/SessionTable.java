@@ -0,0 +1,114 @@
+package com.comp1549.groupchat.server;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// This node's sessions by a small int handle given out at JOIN. Sending to the whole group is a
+// scan of an array rather than a walk over a hash map's entries, and skipping the sender is an
+// identity check rather than a string compare. Handles of members that left are reused, lowest
+// first, so the array stays about as long as the most members there have been at once.
+// Changed only under the server's membership lock; read from any thread.
+final class SessionTable {
+    private volatile AtomicReferenceArray<Session> slots;
+    private volatile int limit;                    // one past the highest handle in use
+    private int[] free = new int[16];              // handles given back, lowest last
+    private int freeCount;
+    private int size;
+
+    SessionTable(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initialCapacity must be at least 1");
+        }
+        this.slots = new AtomicReferenceArray<>(initialCapacity);
+    }
+
+    // Gives the session a handle and returns it
+    int add(Session session) {
+        if (session.handle() >= 0) {
+            throw new IllegalStateException("Session already has handle " + session.handle());
+        }
+        int handle = freeCount > 0 ? free[--freeCount] : limit;
+        AtomicReferenceArray<Session> current = slots;
+        if (handle == current.length()) {
+            current = grow(current);
+        }
+        session.handle(handle);
+        current.set(handle, session);
+        if (handle == limit) {
+            limit = handle + 1;
+        }
+        size++;
+        return handle;
+    }
+
+    // False if the session is not in the table, or has been replaced
+    boolean remove(Session session) {
+        int handle = session.handle();
+        if (handle < 0 || handle >= limit || !slots.compareAndSet(handle, session, null)) {
+            return false;
+        }
+        session.handle(-1);
+        size--;
+        if (handle == limit - 1) {
+            // Trim trailing gaps so scans stop at the last live session
+            int last = handle;
+            while (last > 0 && slots.get(last - 1) == null) {
+                last--;
+            }
+            dropFree(last);
+            limit = last;
+        } else {
+            release(handle);
+        }
+        return true;
+    }
+
+    Session get(int handle) {
+        AtomicReferenceArray<Session> current = slots;
+        return handle >= 0 && handle < current.length() ? current.get(handle) : null;
+    }
+
+    // Scans run from 0 up to here, skipping empty slots
+    int limit() {
+        return limit;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private AtomicReferenceArray<Session> grow(AtomicReferenceArray<Session> current) {
+        AtomicReferenceArray<Session> grown = new AtomicReferenceArray<>(current.length() * 2);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        slots = grown;
+        return grown;
+    }
+
+    // Kept sorted high to low, so the lowest free handle is taken first
+    private void release(int handle) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        int i = freeCount;
+        while (i > 0 && free[i - 1] < handle) {
+            free[i] = free[i - 1];
+            i--;
+        }
+        free[i] = handle;
+        freeCount++;
+    }
+
+    // Forgets free handles at or above the new limit; those are handed out from the limit again
+    private void dropFree(int newLimit) {
+        int removed = 0;
+        while (removed < freeCount && free[removed] >= newLimit) {
+            removed++;
+        }
+        if (removed > 0) {
+            System.arraycopy(free, removed, free, 0, freeCount - removed);
+            freeCount -= removed;
+        }
+    }
+}
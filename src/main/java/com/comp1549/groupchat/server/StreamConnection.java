@@ -0,0 +1,192 @@
+package com.comp1549.groupchat.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Blocking socket whose output is owned by one writer thread draining a bounded queue,
+// so a slow member never stalls the thread that is forwarding to it
+abstract class StreamConnection implements ClientConnection {
+    private static final Logger logger = LoggerFactory.getLogger(StreamConnection.class);
+    // Only wakes a writer waiting on an empty queue; closing is what tells it to stop
+    private static final EncodedMessage WAKE = new EncodedMessage(null);
+
+    protected final Socket socket;
+    protected final Metrics metrics;
+    private final OutboundQueue<EncodedMessage> queue;
+    private final long maxFlushDelayNanos;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean closing;           // close once what is queued has been written
+    private volatile Thread writer;
+    private Trace flushing;                     // writer thread only: a sampled message in this batch
+    private long dequeuedAt;
+
+    StreamConnection(Socket socket, ServerConfig config, Metrics metrics) {
+        this.socket = socket;
+        this.metrics = metrics;
+        this.queue = new OutboundQueue<>(config.getQueueCapacity(), config.getOverflowPolicy());
+        this.maxFlushDelayNanos = TimeUnit.MICROSECONDS.toNanos(config.getMaxFlushDelayMicros());
+    }
+
+    // The socket's output behind a buffer of flushBytes, counting each write that reaches the socket
+    static OutputStream socketOutput(Socket socket, ServerConfig config, Metrics metrics) throws IOException {
+        return new BufferedOutputStream(new CountedWrites(socket.getOutputStream(), metrics), config.getFlushBytes());
+    }
+
+    // Writes into a buffer of flushBytes, which goes out by itself when full
+    protected abstract void write(EncodedMessage message) throws IOException;
+
+    protected abstract void flush() throws IOException;
+
+    @Override
+    public void send(EncodedMessage message) {
+        if (closed.get() || closing) {
+            return;
+        }
+        metrics.messageOut(message.message().getType());
+        Trace trace = message.trace();
+        boolean traced = trace != null && trace.expect();
+        if (!queue.offer(message)) {
+            if (traced) {
+                trace.skip();
+            }
+            logger.warn("Disconnecting slow consumer {}:{} with {} queued messages",
+                getAddress().getHostAddress(), getPort(), queue.size());
+            close();
+        }
+    }
+
+    // Runs on the connection's writer thread until the connection closes.
+    // Everything already queued is written as one batch with a single flush. After a batch of
+    // several messages we are in a burst, and linger up to maxFlushDelay for more before flushing;
+    // a lone message is flushed at once.
+    void writeLoop() {
+        writer = Thread.currentThread();
+        boolean burst = false;
+        try {
+            while (!closed.get()) {
+                EncodedMessage message = closing ? queue.poll() : queue.take();
+                if (message == null) {
+                    // Closing, and everything queued has gone out
+                    flush();
+                    close();
+                    return;
+                }
+                long deadline = System.nanoTime() + maxFlushDelayNanos;
+                int batched = 0;
+                while (message != null) {
+                    if (message == WAKE) {
+                        message = queue.poll();
+                        continue;
+                    }
+                    if (message.trace() != null) {
+                        dequeued(message.trace());
+                    }
+                    write(message);
+                    batched++;
+
+                    message = queue.poll();
+                    long remaining = deadline - System.nanoTime();
+                    if (message == null && burst && remaining > 0) {
+                        message = queue.poll(remaining);
+                    }
+                }
+                flush();
+                if (flushing != null) {
+                    flushing.written(dequeuedAt, System.nanoTime());
+                    flushing = null;
+                }
+                burst = batched > 1;
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting for messages
+        } catch (IOException e) {
+            logger.debug("Write to {}:{} failed: {}", getAddress().getHostAddress(), getPort(), e.getMessage());
+            close();
+        }
+    }
+
+    // One sampled message is followed per batch; any other in the same batch is skipped
+    private void dequeued(Trace trace) {
+        if (flushing == null) {
+            flushing = trace;
+            dequeuedAt = System.nanoTime();
+        } else {
+            trace.skip();
+        }
+    }
+
+    // Lets the writer deliver what is already queued, then closes the socket. Nothing sent after
+    // this is queued, and the overflow policy cannot drop the request to close.
+    @Override
+    public void closeWhenDrained() {
+        closing = true;
+        // A full queue means the writer is busy and sees the flag when it has drained
+        queue.offerIfRoom(WAKE);
+    }
+
+    @Override
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public long droppedMessages() {
+        return queue.dropped();
+    }
+
+    @Override
+    public InetAddress getAddress() {
+        return socket.getInetAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return socket.getPort();
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        Thread thread = writer;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private static class CountedWrites extends FilterOutputStream {
+        private final Metrics metrics;
+
+        CountedWrites(OutputStream out, Metrics metrics) {
+            super(out);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            metrics.socketWrite();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            metrics.socketWrite();
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+
+// Monotonic timestamps of one sampled message on its way through the server. The reader stamps
+// receipt and dispatch, the fan-out its end, and each recipient's writer when it took the message
+// off the queue and when the bytes were written. Once the last recipient is done the tracer
+// reports the breakdown.
+final class Trace {
+    private final Tracer tracer;
+    private final Message message;
+    private final long received;
+    private final long dispatched;
+    private volatile long fannedOut;
+    private volatile long serializeNanos;
+    private final AtomicInteger pending = new AtomicInteger(1);    // the fan-out holds one
+    private final LongAccumulator slowestQueued = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator slowestWrite = new LongAccumulator(Math::max, 0);
+    private final AtomicInteger recipients = new AtomicInteger();
+
+    Trace(Tracer tracer, Message message, long received, long dispatched) {
+        this.tracer = tracer;
+        this.message = message;
+        this.received = received;
+        this.dispatched = dispatched;
+        this.fannedOut = dispatched;
+    }
+
+    // A recipient's connection is taking the message; false if the trace is already finished,
+    // e.g. when a catch-up replay sends the message again later
+    boolean expect() {
+        if (pending.getAndUpdate(count -> count == 0 ? 0 : count + 1) == 0) {
+            return false;
+        }
+        recipients.incrementAndGet();
+        return true;
+    }
+
+    // Every recipient has the message queued
+    void fannedOut(long nanos) {
+        fannedOut = nanos;
+        release();
+    }
+
+    void serialized(long nanos) {
+        serializeNanos = nanos;
+    }
+
+    // A recipient's writer took the message at dequeued and finished writing it at written
+    void written(long dequeued, long written) {
+        long queued = Math.max(0, dequeued - fannedOut);
+        slowestQueued.accumulate(queued);
+        slowestWrite.accumulate(written - dequeued);
+        if (release()) {
+            tracer.recipientDone(queued, written - dequeued);
+        }
+    }
+
+    // A recipient whose timing could not be followed, e.g. the message was dropped for it
+    void skip() {
+        release();
+    }
+
+    // False for a copy sent after the trace finished
+    private boolean release() {
+        int before = pending.getAndUpdate(count -> count == 0 ? 0 : count - 1);
+        if (before == 1) {
+            tracer.finish(this);
+        }
+        return before > 0;
+    }
+
+    Message message() {
+        return message;
+    }
+
+    int recipients() {
+        return recipients.get();
+    }
+
+    long readNanos() {
+        return dispatched - received;
+    }
+
+    long fanOutNanos() {
+        return fannedOut - dispatched;
+    }
+
+    long serializeNanos() {
+        return serializeNanos;
+    }
+
+    long slowestQueuedNanos() {
+        return slowestQueued.get();
+    }
+
+    long slowestWriteNanos() {
+        return slowestWrite.get();
+    }
+}
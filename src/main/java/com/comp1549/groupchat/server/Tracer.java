@@ -0,0 +1,90 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.metrics.LatencyHistogram;
+import com.comp1549.groupchat.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Follows one in every sampleEvery chat messages through the server and breaks its delivery time
+// into stages: read (receipt to dispatch, i.e. the reader thread or event loop), fan-out (queueing
+// it for every recipient), serialize, queued (waiting for a recipient's writer) and write (the
+// socket). Stages go into histograms; each finished trace is also logged as one line.
+final class Tracer {
+    private static final Logger logger = LoggerFactory.getLogger(Tracer.class);
+
+    private final int sampleEvery;                  // 0: off
+    private final LatencyHistogram read = new LatencyHistogram();
+    private final LatencyHistogram fanOut = new LatencyHistogram();
+    private final LatencyHistogram serialize = new LatencyHistogram();
+    private final LatencyHistogram queued = new LatencyHistogram();
+    private final LatencyHistogram write = new LatencyHistogram();
+
+    Tracer(int sampleEvery) {
+        this.sampleEvery = sampleEvery;
+    }
+
+    boolean enabled() {
+        return sampleEvery > 0;
+    }
+
+    // A trace for the chat message if it is sampled, otherwise null. Random rather than counted,
+    // so reader threads share nothing to decide. receivedNanos is 0 when tracing was off at receipt.
+    Trace start(Message message, long receivedNanos) {
+        if (receivedNanos == 0 || !isChat(message.getType())
+                || ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            return null;
+        }
+        return new Trace(this, message, receivedNanos, System.nanoTime());
+    }
+
+    // What a transport passes as the receipt time
+    long now() {
+        return sampleEvery > 0 ? System.nanoTime() : 0;
+    }
+
+    void recipientDone(long queuedNanos, long writeNanos) {
+        queued.record(queuedNanos);
+        write.record(writeNanos);
+    }
+
+    void finish(Trace trace) {
+        read.record(trace.readNanos());
+        fanOut.record(trace.fanOutNanos());
+        if (trace.serializeNanos() > 0) {
+            serialize.record(trace.serializeNanos());
+        }
+        if (logger.isInfoEnabled()) {
+            Message message = trace.message();
+            // Only as good as the sender's clock
+            long sentMillis = Duration.between(message.getTimestamp(), LocalDateTime.now()).toMillis();
+            logger.info("Trace {} #{} from {} to {} recipients: read {}us, fan-out {}us, serialize {}us, "
+                    + "slowest queue wait {}us, slowest write {}us; sent {}ms before, by the sender's clock",
+                message.getType(), message.getSequence(), message.getSenderId(), trace.recipients(),
+                micros(trace.readNanos()), micros(trace.fanOutNanos()), micros(trace.serializeNanos()),
+                micros(trace.slowestQueuedNanos()), micros(trace.slowestWriteNanos()), sentMillis);
+        }
+    }
+
+    void writeTo(StringBuilder out) {
+        if (!enabled()) {
+            return;
+        }
+        read.writeTo(out, "groupchat_trace_read_seconds", "Sampled messages: receipt to dispatch");
+        fanOut.writeTo(out, "groupchat_trace_fanout_seconds", "Sampled messages: dispatch to queued for every recipient");
+        serialize.writeTo(out, "groupchat_trace_serialize_seconds", "Sampled messages: encoding");
+        queued.writeTo(out, "groupchat_trace_queued_seconds", "Sampled messages: waiting for a recipient's writer");
+        write.writeTo(out, "groupchat_trace_write_seconds", "Sampled messages: a recipient's writer to the socket");
+    }
+
+    private static boolean isChat(Message.Type type) {
+        return type == Message.Type.PRIVATE || type == Message.Type.BROADCAST;
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+}
@@ -0,0 +1,176 @@
+package com.comp1549.groupchat.client;
+
+import com.comp1549.groupchat.model.Member;
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.server.GroupServer;
+import com.comp1549.groupchat.server.ServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatClientTest {
+    private GroupServer server;
+    private int port;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new GroupServer(new ServerConfig(0));
+        Thread thread = new Thread(server::start);
+        thread.setDaemon(true);
+        thread.start();
+        port = server.getLocalPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    void testExchangesMessagesWithoutConsole() throws Exception {
+        Recorder aliceEvents = new Recorder();
+        Recorder bobEvents = new Recorder();
+        try (ChatClient alice = new ChatClient("alice", new ClientConfig("localhost", port), aliceEvents);
+             ChatClient bob = new ChatClient("bob", new ClientConfig("localhost", port), bobEvents)) {
+            alice.start();
+            assertEquals(List.of("alice"), aliceEvents.members.poll(5, TimeUnit.SECONDS));
+            bob.start();
+            assertEquals("bob", aliceEvents.joined.poll(5, TimeUnit.SECONDS));
+            assertEquals(Set.of("alice", "bob"), Set.copyOf(bobEvents.members.poll(5, TimeUnit.SECONDS)));
+
+            alice.broadcast("Hello everyone!");
+            Message broadcast = bobEvents.chat.poll(5, TimeUnit.SECONDS);
+            assertNotNull(broadcast);
+            assertEquals("Hello everyone!", broadcast.getContent());
+
+            bob.sendPrivate("alice", "Hi alice");
+            Message reply = aliceEvents.chat.poll(5, TimeUnit.SECONDS);
+            assertNotNull(reply);
+            assertEquals(Message.Type.PRIVATE, reply.getType());
+            assertEquals("bob", reply.getSenderId());
+            assertEquals(2, bob.members().size());
+        }
+    }
+
+    @Test
+    void testConcurrentSendsAllArriveInOrder() throws Exception {
+        Recorder bobEvents = new Recorder();
+        try (ChatClient alice = new ChatClient("alice", new ClientConfig("localhost", port), new Recorder());
+             ChatClient bob = new ChatClient("bob", new ClientConfig("localhost", port), bobEvents)) {
+            alice.start();
+            bob.start();
+            assertNotNull(bobEvents.members.poll(5, TimeUnit.SECONDS));
+
+            int threads = 4;
+            int perThread = 500;
+            Thread[] senders = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                senders[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        try {
+                            alice.sendPrivate("bob", thread + ":" + i);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+                senders[t].start();
+            }
+            for (Thread sender : senders) {
+                sender.join();
+            }
+
+            int[] next = new int[threads];
+            for (int received = 0; received < threads * perThread; received++) {
+                Message message = bobEvents.chat.poll(5, TimeUnit.SECONDS);
+                assertNotNull(message, "only " + received + " arrived");
+                String[] parts = message.getContent().split(":");
+                int thread = Integer.parseInt(parts[0]);
+                assertEquals(next[thread]++, Integer.parseInt(parts[1]));
+            }
+        }
+    }
+
+    @Test
+    void testDuplicateIdIsRejected() throws Exception {
+        Recorder events = new Recorder();
+        Recorder duplicateEvents = new Recorder();
+        try (ChatClient first = new ChatClient("alice", new ClientConfig("localhost", port), events);
+             ChatClient duplicate = new ChatClient("alice", new ClientConfig("localhost", port), duplicateEvents)) {
+            first.start();
+            assertNotNull(events.members.poll(5, TimeUnit.SECONDS));
+            duplicate.start();
+            String reason = duplicateEvents.rejected.poll(5, TimeUnit.SECONDS);
+            assertNotNull(reason);
+            assertTrue(reason.contains("User ID already exists"));
+        }
+    }
+
+    @Test
+    void testFollowsDrainingServerToAnother() throws Exception {
+        GroupServer standby = new GroupServer(new ServerConfig(0));
+        Thread.ofPlatform().daemon().start(standby::start);
+        ServerConfig config = new ServerConfig(0);
+        config.setReconnectTo("localhost:" + standby.getLocalPort());
+        GroupServer draining = new GroupServer(config);
+        Thread.ofPlatform().daemon().start(draining::start);
+
+        Recorder events = new Recorder();
+        try (ChatClient alice = new ChatClient("alice", new ClientConfig("localhost", draining.getLocalPort()), events)) {
+            alice.start();
+            assertNotNull(events.members.poll(5, TimeUnit.SECONDS));
+            assertTrue(draining.drain(5000));
+
+            assertEquals("localhost:" + standby.getLocalPort(), events.draining.poll(5, TimeUnit.SECONDS));
+            assertEquals(List.of("alice"), events.members.poll(5, TimeUnit.SECONDS));
+        } finally {
+            draining.stop();
+            standby.stop();
+        }
+    }
+
+    private static final class Recorder implements ChatListener {
+        final BlockingQueue<List<String>> members = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> joined = new LinkedBlockingQueue<>();
+        final BlockingQueue<Message> chat = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> rejected = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> draining = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onMembers(Collection<Member> snapshot) {
+            members.add(snapshot.stream().map(Member::getId).toList());
+        }
+
+        @Override
+        public void onMemberJoined(Member member) {
+            joined.add(member.getId());
+        }
+
+        @Override
+        public void onChat(Message message, boolean missed) {
+            chat.add(message);
+        }
+
+        @Override
+        public void onRejected(String reason) {
+            rejected.add(reason);
+        }
+
+        @Override
+        public void onServerDraining(String server) {
+            draining.add(server);
+        }
+    }
+}
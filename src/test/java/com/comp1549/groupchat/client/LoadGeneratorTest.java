@@ -0,0 +1,35 @@
+package com.comp1549.groupchat.client;
+
+import com.comp1549.groupchat.server.GroupServer;
+import com.comp1549.groupchat.server.ServerConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @Test
+    void testReportsDeliveries() throws Exception {
+        GroupServer server = new GroupServer(new ServerConfig(0));
+        Thread thread = new Thread(server::start);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            LoadGenerator generator = new LoadGenerator("localhost", server.getLocalPort());
+            generator.setMembers(20);
+            generator.setJoinsPerSecond(1000);
+            generator.setMessagesPerSecond(200);
+            generator.setPrivatePercent(50);
+            generator.setDurationSeconds(1);
+            LoadGenerator.Report report = generator.run();
+
+            assertEquals(20, report.members());
+            assertTrue(report.sent() > 100, report.toString());
+            assertEquals(report.expected(), report.delivered(), report.toString());
+            assertTrue(report.p50Nanos() > 0 && report.p50Nanos() <= report.p999Nanos(), report.toString());
+            assertEquals(0, report.disconnected());
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.comp1549.groupchat.journal;
+
+import com.comp1549.groupchat.model.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+    @TempDir
+    Path directory;
+
+    private JournalConfig smallSegments() {
+        JournalConfig config = new JournalConfig(directory);
+        config.setSegmentBytes(4096);
+        config.setIndexIntervalBytes(256);
+        return config;
+    }
+
+    private static void appendMessages(Journal journal, int count) {
+        long first = journal.writtenSequence() + 1;
+        for (int i = 0; i < count; i++) {
+            assertTrue(journal.append(first + i, Message.createBroadcast("user1", "message " + i)));
+        }
+    }
+
+    private static void awaitWritten(Journal journal, long sequence) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.writtenSequence() < sequence) {
+            assertTrue(System.currentTimeMillis() < deadline, "Journal did not reach " + sequence);
+            Thread.sleep(5);
+        }
+    }
+
+    private List<Path> segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Segment::isSegment).sorted().toList();
+        }
+    }
+
+    @Test
+    void testAppendAndRead() throws Exception {
+        try (Journal journal = Journal.open(new JournalConfig(directory))) {
+            appendMessages(journal, 100);
+            awaitWritten(journal, 100);
+
+            List<JournalEntry> all = journal.read(1, 1000);
+            List<JournalEntry> page = journal.read(50, 10);
+
+            assertAll(
+                () -> assertEquals(100, all.size()),
+                () -> assertEquals(1, all.get(0).sequence()),
+                () -> assertEquals("message 99", all.get(99).message().getContent()),
+                () -> assertEquals(10, page.size()),
+                () -> assertEquals(50, page.get(0).sequence()),
+                () -> assertEquals("message 49", page.get(0).message().getContent())
+            );
+        }
+    }
+
+    @Test
+    void testRollsSegmentsAndRecoversOnReopen() throws Exception {
+        try (Journal journal = Journal.open(smallSegments())) {
+            appendMessages(journal, 200);
+        }
+        assertTrue(segmentFiles().size() > 1);
+
+        try (Journal journal = Journal.open(smallSegments())) {
+            assertEquals(200, journal.writtenSequence());
+            List<JournalEntry> entries = journal.read(1, 1000);
+            assertEquals(200, entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(i + 1, entries.get(i).sequence());
+            }
+            assertEquals(201, journal.resumeSequence());
+        }
+    }
+
+    @Test
+    void testDropsMessageLargerThanASegmentWithoutRolling() throws Exception {
+        try (Journal journal = Journal.open(smallSegments())) {
+            appendMessages(journal, 3);
+            assertTrue(journal.append(4, Message.createBroadcast("user1", "x".repeat(8192))));
+            assertTrue(journal.append(5, Message.createBroadcast("user1", "after")));
+            awaitWritten(journal, 5);
+
+            List<JournalEntry> entries = journal.read(1, 100);
+            assertAll(
+                () -> assertEquals(1, journal.dropped()),
+                () -> assertEquals(1, segmentFiles().size()),
+                () -> assertEquals(List.of(1L, 2L, 3L, 5L), entries.stream().map(JournalEntry::sequence).toList()),
+                () -> assertEquals("after", entries.get(3).message().getContent())
+            );
+        }
+    }
+
+    @Test
+    void testTornRecordIsDiscardedOnReopen() throws Exception {
+        try (Journal journal = Journal.open(new JournalConfig(directory))) {
+            appendMessages(journal, 10);
+        }
+
+        // Damage the last record's body, as a crash part-way through writing it would
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            long position = 0;
+            for (int i = 0; i < 9; i++) {
+                channel.read(length.clear(), position);
+                position += Segment.HEADER_LENGTH + length.flip().getInt();
+            }
+            channel.write(ByteBuffer.wrap(new byte[] {0x55}), position + Segment.HEADER_LENGTH + 2);
+        }
+
+        try (Journal journal = Journal.open(new JournalConfig(directory))) {
+            assertEquals(9, journal.writtenSequence());
+            assertEquals(9, journal.read(1, 100).size());
+            assertEquals(10, journal.resumeSequence());
+        }
+    }
+
+    @Test
+    void testKeepsItsIdAcrossRestarts() throws Exception {
+        String id;
+        try (Journal journal = Journal.open(new JournalConfig(directory))) {
+            id = journal.id();
+        }
+        try (Journal journal = Journal.open(new JournalConfig(directory))) {
+            assertEquals(id, journal.id());
+        }
+    }
+
+    @Test
+    void testRetentionBySize() throws Exception {
+        JournalConfig config = smallSegments();
+        config.setRetentionBytes(3 * 4096);
+        try (Journal journal = Journal.open(config)) {
+            appendMessages(journal, 1000);
+            awaitWritten(journal, 1000);
+
+            List<JournalEntry> retained = journal.read(1, 2000);
+            assertTrue(segmentFiles().size() <= 3);
+            assertTrue(retained.get(0).sequence() > 1);
+            assertEquals(1000, retained.get(retained.size() - 1).sequence());
+        }
+    }
+
+    @Test
+    void testSequenceAtTime() throws Exception {
+        try (Journal journal = Journal.open(smallSegments())) {
+            appendMessages(journal, 100);
+            awaitWritten(journal, 100);
+            Thread.sleep(20);
+            long time = System.currentTimeMillis();
+            appendMessages(journal, 100);
+            awaitWritten(journal, 200);
+
+            assertAll(
+                () -> assertEquals(101, journal.sequenceAt(time)),
+                () -> assertEquals(1, journal.sequenceAt(0)),
+                () -> assertEquals(201, journal.sequenceAt(Long.MAX_VALUE))
+            );
+        }
+    }
+}
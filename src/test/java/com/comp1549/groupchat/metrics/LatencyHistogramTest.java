@@ -0,0 +1,78 @@
+package com.comp1549.groupchat.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketsAreLogLinear() {
+        assertEquals(0, LatencyHistogram.bucket(-5));
+        assertEquals(31, LatencyHistogram.bucket(31));
+        assertEquals(32, LatencyHistogram.bucket(32));
+        assertEquals(32, LatencyHistogram.bucket(33));
+        assertEquals(33, LatencyHistogram.bucket(34));
+        assertEquals(1024, LatencyHistogram.lowest(LatencyHistogram.bucket(1024)));
+        assertEquals(1024, LatencyHistogram.lowest(LatencyHistogram.bucket(1087)));
+        assertEquals(1088, LatencyHistogram.lowest(LatencyHistogram.bucket(1088)));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            assertEquals(bucket, LatencyHistogram.bucket(LatencyHistogram.lowest(bucket)));
+        }
+    }
+
+    @Test
+    void testPercentilesFallInTheRightBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(1000, histogram.count());
+        // Within the 1/16 bucket width of the exact values
+        assertEquals(500_000, histogram.percentile(0.5), 500_000 / 16.0);
+        assertEquals(990_000, histogram.percentile(0.99), 990_000 / 16.0);
+        assertEquals(0, new LatencyHistogram().percentile(0.5));
+    }
+
+    @Test
+    void testPrometheusBucketsAreCumulative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(1000);
+        histogram.record(1_000_000);
+
+        StringBuilder out = new StringBuilder();
+        histogram.writeTo(out, "test_seconds", "Test");
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE test_seconds histogram"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"2.56E-7\"} 1\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"1.024E-6\"} 2\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_seconds_count 3\n"));
+    }
+
+    @Test
+    void testRecordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LatencyHistogram histogram = new LatencyHistogram();
+        Runnable record = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                histogram.record(i);
+            }
+        };
+        record.run();
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        record.run();
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // Allow for the measurement itself, far below one object per call
+        assertTrue(allocated < 1024, "Recording allocated " + allocated + " bytes");
+        assertEquals(200_000, histogram.count());
+    }
+}
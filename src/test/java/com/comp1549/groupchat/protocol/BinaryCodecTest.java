@@ -0,0 +1,101 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+    private final BinaryCodec codec = new BinaryCodec();
+
+    @Test
+    void testRoundTrip() throws Exception {
+        Message message = Message.createPrivate("user1", "user2", "Héllo ünïcode ✓");
+
+        byte[] encoded = codec.encode(message);
+        Message decoded = codec.decode(encoded, 0, encoded.length);
+
+        assertAll(
+            () -> assertEquals(message.getSenderId(), decoded.getSenderId()),
+            () -> assertEquals(message.getRecipientId(), decoded.getRecipientId()),
+            () -> assertEquals(message.getType(), decoded.getType()),
+            () -> assertEquals(message.getContent(), decoded.getContent()),
+            () -> assertEquals(message.getTimestamp().truncatedTo(ChronoUnit.MILLIS), decoded.getTimestamp())
+        );
+    }
+
+    @Test
+    void testNullFields() throws Exception {
+        Message message = new Message("SERVER", null, Message.Type.MEMBER_LIST, null);
+
+        byte[] encoded = codec.encode(message);
+        Message decoded = codec.decode(encoded, 0, encoded.length);
+
+        assertNull(decoded.getRecipientId());
+        assertNull(decoded.getContent());
+        byte[] heartbeat = codec.encode(Message.createHeartbeat("user1"));
+        assertEquals("", codec.decode(heartbeat, 0, heartbeat.length).getContent());
+    }
+
+    @Test
+    void testSequenceIsOptional() throws Exception {
+        Message numbered = Message.createBroadcast("user1", "Hello").withSequence(300_000_000_000L);
+        byte[] plain = codec.encode(Message.createBroadcast("user1", "Hello"));
+        byte[] encoded = codec.encode(numbered);
+
+        assertEquals(300_000_000_000L, codec.decode(encoded, 0, encoded.length).getSequence());
+        assertEquals(0, codec.decode(plain, 0, plain.length).getSequence());
+        assertTrue(encoded.length > plain.length);
+    }
+
+    @Test
+    void testIdsAreInterned() throws Exception {
+        byte[] first = codec.encode(Message.createBroadcast("user1", "one"));
+        byte[] second = codec.encode(Message.createBroadcast("user1", "two"));
+
+        assertSame(codec.decode(first, 0, first.length).getSenderId(),
+            codec.decode(second, 0, second.length).getSenderId());
+    }
+
+    @Test
+    void testDecodesAtOffset() throws Exception {
+        byte[] encoded = codec.encode(Message.createBroadcast("user1", "Hello"));
+        byte[] padded = new byte[encoded.length + 8];
+        System.arraycopy(encoded, 0, padded, 5, encoded.length);
+
+        assertEquals("Hello", codec.decode(padded, 5, encoded.length).getContent());
+    }
+
+    @Test
+    void testRejectsTruncatedMessage() {
+        byte[] encoded = codec.encode(Message.createBroadcast("user1", "Hello everyone!"));
+
+        assertThrows(IOException.class,
+            () -> codec.decode(Arrays.copyOf(encoded, encoded.length - 3), 0, encoded.length - 3));
+    }
+
+    @Test
+    void testSmallerThanSerialization() throws Exception {
+        Message message = Message.createBroadcast("user1", "Hello everyone!");
+
+        int binary = codec.encode(message).length;
+        int serialized = new SerializationCodec().encode(message).length;
+
+        assertTrue(binary * 4 < serialized, binary + " vs " + serialized + " bytes");
+    }
+
+    @Test
+    void testWireFormatDetection() throws Exception {
+        Message message = Message.createBroadcast("user1", "Hello");
+        byte[] binary = codec.encode(message);
+        byte[] serialized = new SerializationCodec().encode(message);
+
+        assertEquals(WireFormat.BINARY, WireFormat.of(binary, 0, binary.length));
+        assertEquals(WireFormat.SERIALIZED, WireFormat.of(serialized, 0, serialized.length));
+        assertEquals("Hello", WireFormat.decode(serialized, 0, serialized.length).getContent());
+    }
+}
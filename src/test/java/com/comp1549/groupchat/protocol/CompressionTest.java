@@ -0,0 +1,63 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Member;
+import com.comp1549.groupchat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionTest {
+
+    @Test
+    void testRoundTripThroughDecode() throws Exception {
+        Message message = Message.createBroadcast("user1", "the same words over and over ".repeat(100));
+        byte[] body = WireFormat.BINARY.codec().encode(message);
+
+        byte[] compressed = Compression.compress(body, 0, body.length, message.getType());
+        assertNotNull(compressed);
+        assertTrue(compressed.length < body.length / 4);
+        assertTrue(Compression.isCompressed(compressed, 0, compressed.length));
+        assertFalse(Compression.isCompressed(body, 0, body.length));
+
+        assertEquals(message.getContent(), WireFormat.decode(compressed, 0, compressed.length).getContent());
+    }
+
+    @Test
+    void testMemberListUsesDictionary() throws Exception {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            members.add(new Member("member" + i, InetAddress.getLoopbackAddress(), 40000 + i));
+        }
+        Message list = new Message("SERVER", null, Message.Type.MEMBER_LIST, MembershipPayload.snapshot(7, members));
+        byte[] body = WireFormat.BINARY.codec().encode(list);
+
+        byte[] compressed = Compression.compress(body, 0, body.length, list.getType());
+        byte[] decompressed = Compression.decompress(compressed, 0, compressed.length);
+
+        assertArrayEquals(body, decompressed);
+        assertEquals(2000, MembershipPayload.members(WireFormat.decode(compressed, 0, compressed.length).getContent()).size());
+    }
+
+    @Test
+    void testIncompressibleBodyIsLeftAlone() {
+        byte[] body = new byte[256];
+        new Random(1).nextBytes(body);
+        assertNull(Compression.compress(body, 0, body.length, Message.Type.BROADCAST));
+    }
+
+    @Test
+    void testCorruptFrameRejected() throws Exception {
+        byte[] body = WireFormat.BINARY.codec().encode(Message.createBroadcast("user1", "x".repeat(1000)));
+        byte[] compressed = Compression.compress(body, 0, body.length, Message.Type.BROADCAST);
+        compressed[compressed.length - 1] ^= 0x55;
+        compressed[Compression.HEADER_LENGTH] ^= 0x55;
+
+        assertThrows(StreamCorruptedException.class, () -> Compression.decompress(compressed, 0, compressed.length));
+    }
+}
@@ -0,0 +1,59 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FramesTest {
+
+    @Test
+    void testFrameRoundTrip() throws Exception {
+        MessageCodec codec = new SerializationCodec();
+        Message message = Message.createPrivate("user1", "user2", "Hello user2!");
+
+        byte[] frame = Frames.frame(codec.encode(message));
+        byte[] body = Frames.readFrame(new DataInputStream(new ByteArrayInputStream(frame)));
+        Message decoded = codec.decode(body, 0, body.length);
+
+        assertAll(
+            () -> assertEquals(frame.length - Frames.HEADER_LENGTH, body.length),
+            () -> assertEquals(message.getSenderId(), decoded.getSenderId()),
+            () -> assertEquals(message.getRecipientId(), decoded.getRecipientId()),
+            () -> assertEquals(message.getType(), decoded.getType()),
+            () -> assertEquals(message.getContent(), decoded.getContent()),
+            () -> assertEquals(message.getTimestamp(), decoded.getTimestamp())
+        );
+    }
+
+    @Test
+    void testRejectsOversizedFrame() {
+        byte[] header = {0x7f, 0, 0, 0};
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+
+        assertThrows(StreamCorruptedException.class, () -> Frames.readFrame(in));
+    }
+
+    @Test
+    void testDetectsObjectStream() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ObjectOutputStream(bytes).flush();
+        byte[] header = bytes.toByteArray();
+
+        assertTrue(Frames.isObjectStream(header[0] & 0xFF, header[1] & 0xFF));
+        assertFalse(Frames.isObjectStream(0, 0));
+    }
+
+    @Test
+    void testRejectsNonMessagePayload() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new java.util.ArrayList<>());
+        }
+
+        assertThrows(IOException.class,
+            () -> new SerializationCodec().decode(bytes.toByteArray(), 0, bytes.size()));
+    }
+}
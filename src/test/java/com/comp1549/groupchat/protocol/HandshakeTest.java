@@ -0,0 +1,26 @@
+package com.comp1549.groupchat.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandshakeTest {
+
+    @Test
+    void testRoundTrip() {
+        String content = new Handshake().set(Handshake.MEMBERSHIP, Handshake.DELTA).set("from", "127.0.0.1:5000").toString();
+        Handshake parsed = Handshake.parse(content);
+
+        assertAll(
+            () -> assertEquals("membership=delta;from=127.0.0.1:5000", content),
+            () -> assertTrue(parsed.has(Handshake.MEMBERSHIP, Handshake.DELTA)),
+            () -> assertEquals("127.0.0.1:5000", parsed.get("from"))
+        );
+    }
+
+    @Test
+    void testLegacyJoinContentHasNoOptions() {
+        assertNull(Handshake.parse("Joining from 127.0.0.1:5000").get(Handshake.MEMBERSHIP));
+        assertNull(Handshake.parse(null).get(Handshake.MEMBERSHIP));
+    }
+}
@@ -0,0 +1,59 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Member;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MembershipPayloadTest {
+
+    @Test
+    void testSnapshotRoundTrip() throws Exception {
+        Member host = new Member("user1", InetAddress.getByName("127.0.0.1"), 8080);
+        host.setHost(true);
+        Member other = new Member("user two", InetAddress.getByName("::1"), 9090);
+
+        String payload = MembershipPayload.snapshot(42, List.of(host, other));
+        List<Member> members = MembershipPayload.members(payload);
+
+        assertAll(
+            () -> assertEquals(42, MembershipPayload.version(payload)),
+            () -> assertEquals(List.of(host, other), members),
+            () -> assertTrue(members.get(0).host()),
+            () -> assertFalse(members.get(1).host())
+        );
+    }
+
+    @Test
+    void testEmptySnapshot() {
+        String payload = MembershipPayload.snapshot(7, List.of());
+        assertEquals(7, MembershipPayload.version(payload));
+        assertTrue(MembershipPayload.members(payload).isEmpty());
+    }
+
+    @Test
+    void testEvents() throws Exception {
+        Member member = new Member("user1", InetAddress.getByName("127.0.0.1"), 8080);
+        String joined = MembershipPayload.joined(3, member);
+        String left = MembershipPayload.event(4, "user1");
+
+        assertAll(
+            () -> assertEquals(3, MembershipPayload.version(joined)),
+            () -> assertEquals(List.of(member), MembershipPayload.members(joined)),
+            () -> assertEquals(4, MembershipPayload.version(left)),
+            () -> assertEquals("user1", MembershipPayload.memberId(left))
+        );
+    }
+
+    @Test
+    void testIdValidation() {
+        assertTrue(MembershipPayload.isValidId("user 1"));
+        assertFalse(MembershipPayload.isValidId(null));
+        assertFalse(MembershipPayload.isValidId(" "));
+        assertFalse(MembershipPayload.isValidId("user\t1"));
+        assertFalse(MembershipPayload.isValidId("user\n1"));
+    }
+}
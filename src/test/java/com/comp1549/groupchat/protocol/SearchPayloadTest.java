@@ -0,0 +1,60 @@
+package com.comp1549.groupchat.protocol;
+
+import com.comp1549.groupchat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchPayloadTest {
+
+    @Test
+    void testQueryRoundTrip() {
+        SearchPayload.Query query = new SearchPayload.Query(7, "tabs\tand\nnewlines \\ too", "alice", 1000, 2000, 25);
+        assertEquals(query, SearchPayload.parseQuery(SearchPayload.query(query)));
+
+        SearchPayload.Query open = SearchPayload.parseQuery(SearchPayload.query(new SearchPayload.Query(8, "", 10)));
+        assertNull(open.senderId());
+        assertEquals("", open.words());
+        assertEquals(0, open.beforeMillis());
+    }
+
+    @Test
+    void testMalformedQueriesRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SearchPayload.parseQuery("free text"));
+        assertThrows(IllegalArgumentException.class, () -> SearchPayload.parseQuery("1\t10\t\t0\nwords"));
+        assertThrows(IllegalArgumentException.class, () -> SearchPayload.parseQuery("1\tten\t\t0\t0\nwords"));
+        assertThrows(IllegalArgumentException.class, () -> SearchPayload.parseQuery("1\t0\t\t0\t0\nwords"));
+    }
+
+    @Test
+    void testResultsRoundTrip() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_000_000);
+        Message broadcast = new Message("alice", null, Message.Type.BROADCAST, "line one\nline\ttwo\\", timestamp, 41);
+        Message room = new Message("bob", "general", Message.Type.BROADCAST, "", timestamp, 42);
+
+        String payload = SearchPayload.results(99, List.of(room, broadcast), 1 << 20);
+        List<Message> hits = SearchPayload.hits(payload);
+
+        assertEquals(99, SearchPayload.queryId(payload));
+        assertEquals(2, hits.size());
+        assertEquals("general", hits.get(0).getRecipientId());
+        assertEquals("", hits.get(0).getContent());
+        assertNull(hits.get(1).getRecipientId());
+        assertEquals("line one\nline\ttwo\\", hits.get(1).getContent());
+        assertEquals(41, hits.get(1).getSequence());
+        assertEquals(timestamp, hits.get(1).getTimestamp());
+    }
+
+    @Test
+    void testResultsStopAtMaxLength() {
+        Message hit = Message.createBroadcast("alice", "x".repeat(100));
+        String payload = SearchPayload.results(1, List.of(hit, hit, hit), 250);
+
+        assertTrue(payload.length() <= 250);
+        assertEquals(1, SearchPayload.hits(payload).size());
+        assertTrue(SearchPayload.hits(SearchPayload.results(1, List.of(hit), 10)).isEmpty());
+    }
+}
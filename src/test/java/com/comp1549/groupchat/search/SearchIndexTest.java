@@ -0,0 +1,120 @@
+package com.comp1549.groupchat.search;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.SearchPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    private SearchIndex index;
+
+    @AfterEach
+    void close() {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    private SearchIndex open(SearchConfig config) {
+        index = SearchIndex.open(config);
+        return index;
+    }
+
+    private static Message message(long sequence, String senderId, String content) {
+        return new Message(senderId, null, Message.Type.BROADCAST, content, START.plusMinutes(sequence), sequence);
+    }
+
+    private static List<Long> sequences(List<Message> hits) {
+        return hits.stream().map(Message::getSequence).toList();
+    }
+
+    // Waits for everything added to be sealed into searchable segments
+    private SearchIndex indexed(SearchConfig config, int count) throws InterruptedException {
+        SearchIndex index = open(config);
+        for (int i = 1; i <= count; i++) {
+            String sender = i % 2 == 0 ? "alice" : "bob";
+            assertTrue(index.add(message(i, sender, "message " + i + (i % 10 == 0 ? " Deploy finished" : " chatter"))));
+        }
+        awaitCondition(() -> index.search("", null, 0, 0, 1, message -> true).stream()
+            .anyMatch(message -> message.getSequence() == count));
+        return index;
+    }
+
+    private static void awaitCondition(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met within 5s");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testMatchesEveryWordNewestFirst() throws Exception {
+        SearchIndex index = indexed(new SearchConfig(), 100);
+
+        List<Message> hits = index.search("deploy FINISHED", null, 0, 0, 3, message -> true);
+        assertEquals(List.of(100L, 90L, 80L), sequences(hits));
+        assertTrue(index.search("deploy nothing", null, 0, 0, 10, message -> true).isEmpty());
+        assertTrue(index.search("deplo", null, 0, 0, 10, message -> true).isEmpty());
+        assertEquals(List.of(37L), sequences(index.search("message, 37!", null, 0, 0, 10, message -> true)));
+    }
+
+    @Test
+    void testFiltersBySenderTimeAndPredicate() throws Exception {
+        SearchIndex index = indexed(new SearchConfig(), 100);
+        long minute = 60_000;
+        long start = SearchPayload.toEpochMillis(START);
+
+        assertEquals(List.of(99L, 97L), sequences(index.search("chatter", "bob", 0, 0, 2, message -> true)));
+        assertEquals(List.of(50L, 40L, 30L),
+            sequences(index.search("deploy", null, start + 25 * minute, start + 55 * minute, 10, message -> true)));
+        assertEquals(List.of(90L, 70L, 50L), sequences(index.search("deploy", "alice", 0, 0, 3,
+            message -> message.getSequence() % 4 == 2)));
+        assertEquals(List.of(100L, 99L), sequences(index.search("", null, 0, 0, 2, message -> true)));
+    }
+
+    @Test
+    void testMergesSegmentsWithoutLosingMessages() throws Exception {
+        SearchConfig config = new SearchConfig();
+        config.setSegmentMessages(10);
+        config.setMergeFactor(4);
+        SearchIndex index = indexed(config, 1000);
+
+        assertEquals(1000, index.documents());
+        awaitCondition(() -> index.segmentCount() < 10);
+        List<Message> hits = index.search("deploy", null, 0, 0, 1000, message -> true);
+        assertEquals(100, hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            assertEquals(1000 - 10L * i, hits.get(i).getSequence());
+        }
+    }
+
+    @Test
+    void testDropsOldestSegmentsOverMemoryLimit() throws Exception {
+        SearchConfig config = new SearchConfig();
+        config.setMemoryBytes(1 << 20);
+        config.setSegmentMessages(100);
+        SearchIndex index = indexed(config, 20_000);
+
+        assertTrue(index.memoryBytes() <= 1 << 20, "bytes: " + index.memoryBytes());
+        assertTrue(index.documents() < 20_000);
+        List<Message> hits = index.search("deploy", null, 0, 0, 1, message -> true);
+        assertEquals(List.of(20_000L), sequences(hits));
+        assertTrue(index.search("message 1", null, 0, 0, 1, message -> true).isEmpty());
+    }
+
+    @Test
+    void testOnlyChatMessagesAreIndexed() {
+        SearchIndex index = open(new SearchConfig());
+        assertFalse(index.add(new Message("alice", null, Message.Type.JOIN, "hello")));
+        assertFalse(index.add(Message.createHeartbeat("alice")));
+        assertTrue(index.add(Message.createPrivate("alice", "bob", "hello")));
+    }
+}
@@ -0,0 +1,90 @@
+package com.comp1549.groupchat.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    @Test
+    void testRoundsUpToSizeClasses() {
+        assertAll(
+            () -> assertEquals(0, BufferPool.sizeClass(1)),
+            () -> assertEquals(0, BufferPool.sizeClass(BufferPool.MIN_SIZE)),
+            () -> assertEquals(1, BufferPool.sizeClass(BufferPool.MIN_SIZE + 1)),
+            () -> assertEquals(BufferPool.MAX_SIZE, BufferPool.sizeOf(BufferPool.sizeClass(BufferPool.MAX_SIZE))),
+            () -> assertEquals(-1, BufferPool.sizeClass(BufferPool.MAX_SIZE + 1))
+        );
+    }
+
+    @Test
+    void testReusesReleasedBuffersOfTheSameSize() {
+        BufferPool pool = new BufferPool(1 << 20, false);
+        PooledBuffer first = pool.acquire(100);
+        ByteBuffer memory = first.buffer();
+        memory.put((byte) 1);
+        assertTrue(memory.isDirect());
+        assertEquals(BufferPool.MIN_SIZE, memory.capacity());
+        first.release();
+        assertEquals(0, pool.buffersInUse());
+
+        PooledBuffer second = pool.acquire(300);
+        assertSame(memory, second.buffer());
+        assertEquals(0, second.buffer().position());
+        assertNotSame(memory, pool.acquire(1000).buffer());
+        assertEquals(2, pool.buffersInUse());
+    }
+
+    @Test
+    void testKeepsNothingOutsideTheSizeClassesOrWithoutAnyBytes() {
+        BufferPool pool = new BufferPool(1 << 20, false);
+        PooledBuffer large = pool.acquire(BufferPool.MAX_SIZE + 1);
+        ByteBuffer memory = large.buffer();
+        assertEquals(BufferPool.MAX_SIZE + 1, memory.capacity());
+        large.release();
+        assertNotSame(memory, pool.acquire(BufferPool.MAX_SIZE + 1).buffer());
+
+        BufferPool empty = new BufferPool(0, false);
+        PooledBuffer small = empty.acquire(100);
+        memory = small.buffer();
+        small.release();
+        assertNotSame(memory, empty.acquire(100).buffer());
+    }
+
+    @Test
+    void testReturnsToThePoolOnlyOnTheLastRelease() {
+        BufferPool pool = new BufferPool(1 << 20, false);
+        PooledBuffer shared = pool.copyOf(new byte[]{1, 2, 3});
+        assertTrue(shared.retain());
+        ByteBuffer view = shared.view();
+        assertTrue(view.isReadOnly());
+        assertEquals(3, view.remaining());
+
+        shared.release();
+        assertEquals(1, pool.buffersInUse());
+        shared.release();
+        assertEquals(0, pool.buffersInUse());
+        assertFalse(shared.retain());
+        assertThrows(IllegalStateException.class, shared::release);
+    }
+
+    @Test
+    void testDetectsBufferLostWithoutRelease() throws InterruptedException {
+        BufferPool pool = new BufferPool(1 << 20, true);
+        pool.acquire(100);
+        pool.acquire(100).release();
+
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (pool.leaks() == 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, pool.leaks());
+        assertEquals(0, pool.buffersInUse());
+        StringBuilder metrics = new StringBuilder();
+        pool.writeTo(metrics);
+        assertTrue(metrics.toString().contains("groupchat_buffers_leaked_total 1"), metrics.toString());
+    }
+}
@@ -0,0 +1,156 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Handshake;
+import com.comp1549.groupchat.protocol.MembershipPayload;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.comp1549.groupchat.server.GroupServerTest.awaitCondition;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterTest {
+    private static final String SECRET = "a secret for the test cluster";
+    private final List<GroupServer> nodes = new ArrayList<>();
+
+    // Nodes dial peers with higher ids, so start from the highest: the ones it dials are already up
+    private GroupServer startNode(String nodeId, ServerConfig.Transport transport, String... peers) throws IOException {
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        config.setIoThreads(2);
+        config.setNodeId(nodeId);
+        config.setPeers(List.of(peers));
+        config.setClusterSecret(SECRET);
+        GroupServer server = new GroupServer(config);
+        Thread thread = new Thread(server::start);
+        thread.setDaemon(true);
+        thread.start();
+        nodes.add(server);
+        return server;
+    }
+
+    private static String peer(String nodeId, GroupServer server) {
+        return nodeId + "@localhost:" + server.getLocalPort();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(GroupServer::stop);
+    }
+
+    private static TestClient join(String id, GroupServer server) throws IOException {
+        String deltas = new Handshake().set(Handshake.MEMBERSHIP, Handshake.DELTA).toString();
+        return new TestClient(id, server.getLocalPort(), WireFormat.BINARY.codec()).join(deltas);
+    }
+
+    @Test
+    void testMessagesCrossNodes() throws Exception {
+        GroupServer c = startNode("c", ServerConfig.Transport.NIO, "a@localhost:1", "b@localhost:1");
+        GroupServer b = startNode("b", ServerConfig.Transport.BLOCKING, "a@localhost:1", peer("c", c));
+        GroupServer a = startNode("a", ServerConfig.Transport.VIRTUAL, peer("b", b), peer("c", c));
+        awaitCondition(() -> a.linkCount() == 2 && b.linkCount() == 2 && c.linkCount() == 2);
+
+        try (TestClient alice = join("alice", a);
+             TestClient bob = join("bob", b);
+             TestClient carol = join("carol", c)) {
+            awaitCondition(() -> a.memberCount() == 3 && b.memberCount() == 3 && c.memberCount() == 3);
+
+            // Every node shares the membership view, and keeps its own host
+            carol.send(new Message("carol", null, Message.Type.MEMBER_LIST, ""));
+            String snapshot;
+            do {
+                snapshot = carol.receive(Message.Type.MEMBER_LIST).getContent();
+            } while (MembershipPayload.members(snapshot).size() < 3);
+            assertEquals(1, MembershipPayload.members(snapshot).stream().filter(m -> m.host()).count());
+
+            alice.send(Message.createBroadcast("alice", "hello cluster"));
+            assertEquals("hello cluster", bob.receive(Message.Type.BROADCAST).getContent());
+            assertEquals("hello cluster", carol.receive(Message.Type.BROADCAST).getContent());
+
+            alice.send(Message.createPrivate("alice", "carol", "just you"));
+            Message received = carol.receive(Message.Type.PRIVATE);
+            assertEquals("alice", received.getSenderId());
+            assertEquals("just you", received.getContent());
+            assertTrue(bob.receivesNothing(Message.Type.PRIVATE, 200));
+
+            // Ids are unique across the cluster
+            try (TestClient impostor = join("alice", c)) {
+                assertTrue(impostor.receive(Message.Type.ERROR).getContent().contains("already exists"));
+            }
+
+            bob.send(new Message("bob", null, Message.Type.LEAVE, "Leaving group"));
+            String left = carol.receive(Message.Type.MEMBER_LEFT).getContent();
+            assertEquals("bob", MembershipPayload.memberId(left));
+            awaitCondition(() -> a.memberCount() == 2 && c.memberCount() == 2);
+        }
+    }
+
+    @Test
+    void testLostNodeTakesItsMembers() throws Exception {
+        GroupServer b = startNode("b", ServerConfig.Transport.BLOCKING, "a@localhost:1");
+        GroupServer a = startNode("a", ServerConfig.Transport.BLOCKING, peer("b", b));
+        awaitCondition(() -> a.linkCount() == 1 && b.linkCount() == 1);
+
+        try (TestClient alice = join("alice", a);
+             TestClient bob = join("bob", b)) {
+            awaitCondition(() -> a.memberCount() == 2);
+
+            b.stop();
+            String left = alice.receive(Message.Type.MEMBER_LEFT).getContent();
+            assertEquals("bob", MembershipPayload.memberId(left));
+            assertEquals(1, a.memberCount());
+        }
+    }
+
+    @Test
+    void testUnknownNodeRejected() throws Exception {
+        GroupServer a = startNode("a", ServerConfig.Transport.BLOCKING, "b@localhost:1");
+        try (TestClient rogue = new TestClient("x", a.getLocalPort(), WireFormat.BINARY.codec())
+                .join(new Handshake().set(Handshake.NODE, "x").toString())) {
+            assertTrue(rogue.receive(Message.Type.ERROR).getContent().contains("Unknown node"));
+            assertEquals(0, a.linkCount());
+        }
+    }
+
+    @Test
+    void testUnauthenticatedNodeRejected() throws Exception {
+        GroupServer b = startNode("b", ServerConfig.Transport.BLOCKING, "a@localhost:1");
+        GroupServer a = startNode("a", ServerConfig.Transport.BLOCKING, peer("b", b));
+        awaitCondition(() -> a.linkCount() == 1 && b.linkCount() == 1);
+
+        try (TestClient alice = join("alice", a)) {
+            awaitCondition(() -> b.memberCount() == 1);
+            for (String auth : new String[]{null, System.currentTimeMillis() + ".00ff"}) {
+                Handshake hello = new Handshake().set(Handshake.NODE, "a");
+                if (auth != null) {
+                    hello.set(Handshake.AUTH, auth);
+                }
+                try (TestClient impostor = new TestClient("a", b.getLocalPort(), WireFormat.BINARY.codec())
+                        .join(hello.toString())) {
+                    assertTrue(impostor.receive(Message.Type.ERROR).getContent().contains("not authenticated"));
+                }
+            }
+            // The real link is still up and still carries a's members
+            assertEquals(1, b.linkCount());
+            assertEquals(1, b.memberCount());
+            try (TestClient bob = join("bob", b)) {
+                awaitCondition(() -> a.memberCount() == 2);
+                alice.send(Message.createBroadcast("alice", "still linked"));
+                assertEquals("still linked", bob.receive(Message.Type.BROADCAST).getContent());
+            }
+        }
+    }
+
+    @Test
+    void testClusterNeedsSecret() {
+        ServerConfig config = new ServerConfig(0);
+        config.setNodeId("a");
+        assertThrows(IllegalArgumentException.class, () -> new GroupServer(config));
+        assertThrows(IllegalArgumentException.class, () -> config.setClusterSecret("short"));
+    }
+}
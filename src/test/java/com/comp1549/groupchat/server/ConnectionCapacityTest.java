@@ -0,0 +1,168 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.SerializationCodec;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Holds N members (10% of them broadcasting) against each transport and reports the cost per member.
+// Run with: mvn test -Pload -Dgroupchat.load.members=500
+@Tag("load")
+class ConnectionCapacityTest {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionCapacityTest.class);
+    private static final int MEMBERS = Integer.getInteger("groupchat.load.members", 500);
+    private static final int ACTIVE_PERCENT = 10;
+    private static final long ACTIVE_MILLIS = 3000;
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testHoldsMembers(ServerConfig.Transport transport) throws Exception {
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heapBefore = usedHeap();
+
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        GroupServer server = new GroupServer(config);
+        Thread serverThread = new Thread(server::start);
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        SerializationCodec codec = new SerializationCodec();
+        List<SocketChannel> channels = new ArrayList<>();
+        try (Drainer drainer = new Drainer()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < MEMBERS; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()));
+                write(channel, Frames.frame(codec.encode(new Message("member" + i, null, Message.Type.JOIN, "load"))));
+                channels.add(channel);
+                drainer.add(channel);
+            }
+            while (server.memberCount() < MEMBERS) {
+                Thread.sleep(10);
+            }
+            long joinMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // Active members broadcast while the rest stay idle
+            long sent = 0;
+            long activeUntil = System.currentTimeMillis() + ACTIVE_MILLIS;
+            while (System.currentTimeMillis() < activeUntil) {
+                for (int i = 0; i < MEMBERS * ACTIVE_PERCENT / 100; i++) {
+                    String sender = "member" + i;
+                    byte[] frame = Frames.frame(codec.encode(Message.createBroadcast(sender, "load test message")));
+                    write(channels.get(i), frame);
+                    sent++;
+                }
+                Thread.sleep(100);
+            }
+
+            int serverThreads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+            long heapPerMember = (usedHeap() - heapBefore) / MEMBERS;
+            logger.info("{} members={} join={}ms platformThreads={} heapPerMember={}B broadcasts={} bytesReceived={}",
+                transport, MEMBERS, joinMillis, serverThreads, heapPerMember, sent, drainer.bytes.get());
+
+            assertEquals(MEMBERS, server.memberCount());
+            assertTrue(drainer.bytes.get() > sent, "Broadcasts were not delivered");
+            if (transport != ServerConfig.Transport.BLOCKING) {
+                assertTrue(serverThreads < MEMBERS, "Expected far fewer platform threads than members");
+            }
+        } finally {
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+            server.stop();
+
+            // Let connection threads exit so the next transport starts from the same baseline
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (ManagementFactory.getThreadMXBean().getThreadCount() > threadsBefore
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static void write(SocketChannel channel, byte[] frame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        System.gc();
+        Thread.sleep(100);
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Reads and discards everything the server sends, so server writes never stall on full socket buffers
+    private static class Drainer implements Runnable, AutoCloseable {
+        private final Selector selector = Selector.open();
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicLong bytes = new AtomicLong();
+        private final Thread thread = new Thread(this, "drainer");
+        private volatile boolean running = true;
+
+        Drainer() throws IOException {
+            thread.start();
+        }
+
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        channel.configureBlocking(false);
+                        channel.register(selector, SelectionKey.OP_READ);
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        buffer.clear();
+                        int read = ((SocketChannel) key.channel()).read(buffer);
+                        if (read < 0) {
+                            key.cancel();
+                        } else {
+                            bytes.addAndGet(read);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                // Channels closed at the end of the test
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            running = false;
+            selector.wakeup();
+            selector.close();
+        }
+    }
+}
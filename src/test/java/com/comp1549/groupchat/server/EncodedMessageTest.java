@@ -0,0 +1,86 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Compression;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedMessageTest {
+
+    @Test
+    void testEncodesOncePerFormat() throws Exception {
+        EncodedMessage encoded = new EncodedMessage(Message.createBroadcast("user1", "Hello everyone!"));
+
+        assertSame(encoded.frame(WireFormat.BINARY), encoded.frame(WireFormat.BINARY));
+        assertNotSame(encoded.frame(WireFormat.BINARY), encoded.frame(WireFormat.SERIALIZED));
+    }
+
+    @Test
+    void testDirectFramesShareContent() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20);
+        EncodedMessage encoded = new EncodedMessage(Message.createBroadcast("user1", "Hello everyone!"));
+        byte[] frame = encoded.frame(WireFormat.BINARY);
+
+        PooledBuffer first = encoded.directFrame(pool, WireFormat.BINARY, -1, null);
+        PooledBuffer second = encoded.directFrame(pool, WireFormat.BINARY, -1, null);
+        ByteBuffer firstView = first.view();
+        ByteBuffer secondView = second.view();
+        firstView.position(firstView.limit());
+
+        assertAll(
+            () -> assertSame(first, second),
+            () -> assertTrue(secondView.isDirect()),
+            () -> assertTrue(secondView.isReadOnly()),
+            () -> assertEquals(frame.length, secondView.remaining()),
+            () -> assertEquals(frame.length - Frames.HEADER_LENGTH, secondView.getInt(0)),
+            () -> assertEquals(ByteBuffer.wrap(frame), secondView)
+        );
+        encoded.release();
+        first.release();
+        second.release();
+    }
+
+    @Test
+    void testSharedFrameReturnsToPoolAfterLastRecipient() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20);
+        EncodedMessage encoded = new EncodedMessage(Message.createBroadcast("user1", "Hello everyone!"));
+
+        PooledBuffer first = encoded.directFrame(pool, WireFormat.BINARY, -1, null);
+        PooledBuffer second = encoded.directFrame(pool, WireFormat.BINARY, -1, null);
+        encoded.release();
+        first.release();
+        assertEquals(1, pool.buffersInUse());
+        second.release();
+        assertEquals(0, pool.buffersInUse());
+
+        // A late send, such as a replay, gets a copy of its own
+        PooledBuffer late = encoded.directFrame(pool, WireFormat.BINARY, -1, null);
+        assertEquals(ByteBuffer.wrap(encoded.frame(WireFormat.BINARY)), late.view());
+        late.release();
+        assertEquals(0, pool.buffersInUse());
+    }
+
+    @Test
+    void testCompressesOnceAboveThreshold() throws Exception {
+        EncodedMessage large = new EncodedMessage(Message.createBroadcast("user1", "Hello everyone! ".repeat(200)));
+        EncodedMessage small = new EncodedMessage(Message.createBroadcast("user1", "Hello everyone!"));
+        BufferPool pool = new BufferPool(1 << 20);
+
+        byte[] compressed = large.frame(WireFormat.BINARY, 1024, null);
+        PooledBuffer direct = large.directFrame(pool, WireFormat.BINARY, 1024, null);
+        assertAll(
+            () -> assertSame(compressed, large.frame(WireFormat.BINARY, 1024, null)),
+            () -> assertTrue(compressed.length < large.frame(WireFormat.BINARY).length),
+            () -> assertTrue(Compression.isCompressed(compressed, Frames.HEADER_LENGTH, compressed.length - Frames.HEADER_LENGTH)),
+            () -> assertSame(small.frame(WireFormat.BINARY), small.frame(WireFormat.BINARY, 1024, null)),
+            () -> assertEquals(ByteBuffer.wrap(compressed), direct.view())
+        );
+        direct.release();
+        large.release();
+    }
+}
@@ -0,0 +1,764 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Compression;
+import com.comp1549.groupchat.protocol.Handshake;
+import com.comp1549.groupchat.protocol.MembershipPayload;
+import com.comp1549.groupchat.protocol.SearchPayload;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.comp1549.groupchat.journal.JournalConfig;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupServerTest {
+    private GroupServer server;
+
+    private int startServer(ServerConfig.Transport transport) throws IOException {
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        return startServer(config);
+    }
+
+    private int startServer(ServerConfig config) throws IOException {
+        config.setIoThreads(2);
+        server = new GroupServer(config);
+        Thread thread = new Thread(server::start);
+        thread.setDaemon(true);
+        thread.start();
+        return server.getLocalPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    // Removal after a disconnect happens on the member's reader thread
+    static void awaitCondition(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met within 5s");
+            Thread.sleep(10);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testBroadcastReachesOtherMembers(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+
+            alice.send(Message.createBroadcast("alice", "Hello everyone!"));
+            Message received = bob.receive(Message.Type.BROADCAST);
+
+            assertAll(
+                () -> assertEquals("alice", received.getSenderId()),
+                () -> assertEquals("Hello everyone!", received.getContent()),
+                () -> assertTrue(alice.receivesNothing(Message.Type.BROADCAST, 300))
+            );
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testPrivateMessage(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join();
+             TestClient carol = new TestClient("carol", port).join()) {
+            bob.awaitMembers("alice", "bob", "carol");
+            carol.awaitMembers("alice", "bob", "carol");
+
+            alice.send(Message.createPrivate("alice", "bob", "Hi bob"));
+
+            assertEquals("Hi bob", bob.receive(Message.Type.PRIVATE).getContent());
+            assertTrue(carol.receivesNothing(Message.Type.PRIVATE, 300));
+        }
+    }
+
+    @Test
+    void testNioGathersQueuedFramesIntoOneWrite() throws Exception {
+        // One event loop, so the frames for bob are queued on the thread that then flushes them
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(ServerConfig.Transport.NIO);
+        config.setIoThreads(1);
+        server = new GroupServer(config);
+        Thread.ofPlatform().daemon().start(server::start);
+        int port = server.getLocalPort();
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            alice.awaitMembers("alice", "bob");
+            awaitCondition(() -> server.metrics().socketWrites() > 0);
+            long before = server.metrics().socketWrites();
+
+            // Read in one go, so all ten are queued for bob before the loop flushes him once
+            List<Message> burst = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                burst.add(Message.createBroadcast("alice", "burst " + i));
+            }
+            alice.sendTogether(burst);
+            for (int i = 0; i < 10; i++) {
+                assertEquals("burst " + i, bob.receive(Message.Type.BROADCAST).getContent());
+            }
+            assertEquals(1, server.metrics().socketWrites() - before);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testDuplicateIdRejected(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        try (TestClient first = new TestClient("alice", port).join()) {
+            first.receive(Message.Type.MEMBER_LIST);
+            TestClient second = new TestClient("alice", port).join();
+
+            Message error = second.receive(Message.Type.ERROR);
+            assertTrue(error.getContent().contains("User ID already exists"));
+            second.close();
+
+            // A client that asks for it is told with its own message type
+            try (TestClient third = new TestClient("alice", port).join(Handshake.REJECTS + "=true")) {
+                Message rejected = third.receive();
+                assertEquals(Message.Type.REJECTED, rejected.getType());
+                assertTrue(rejected.getContent().contains("User ID already exists"));
+            }
+
+            // The original member must survive the rejected join
+            try (TestClient bob = new TestClient("bob", port).join()) {
+                first.awaitMembers("alice", "bob");
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testRepliesInCodecOfJoin(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        try (TestClient alice = new TestClient("alice", port, WireFormat.BINARY.codec()).join();
+             TestClient bob = new TestClient("bob", port, WireFormat.SERIALIZED.codec()).join()) {
+            alice.awaitMembers("alice", "bob");
+            bob.awaitMembers("alice", "bob");
+
+            alice.send(Message.createBroadcast("alice", "from binary"));
+            bob.send(Message.createBroadcast("bob", "from serialized"));
+
+            assertEquals("from binary", bob.receive(Message.Type.BROADCAST).getContent());
+            assertEquals(WireFormat.SERIALIZED, bob.lastFormat());
+            assertEquals("from serialized", alice.receive(Message.Type.BROADCAST).getContent());
+            assertEquals(WireFormat.BINARY, alice.lastFormat());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testCompressesLargeMessagesForClientsThatAsk(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        String compress = new Handshake().set(Handshake.COMPRESS, Compression.DEFLATE).toString();
+        String large = "pasted log line with some text in it\n".repeat(200);
+        try (TestClient alice = new TestClient("alice", port, WireFormat.BINARY.codec()).join();
+             TestClient bob = new TestClient("bob", port, WireFormat.BINARY.codec()).join(compress);
+             TestClient carol = new TestClient("carol", port, WireFormat.BINARY.codec()).join()) {
+            bob.awaitMembers("alice", "bob", "carol");
+            carol.awaitMembers("alice", "bob", "carol");
+
+            alice.send(Message.createBroadcast("alice", large));
+            assertEquals(large, bob.receive(Message.Type.BROADCAST).getContent());
+            assertTrue(bob.lastCompressed());
+            assertEquals(large, carol.receive(Message.Type.BROADCAST).getContent());
+            assertFalse(carol.lastCompressed());
+
+            // Below the threshold nothing is compressed
+            alice.send(Message.createBroadcast("alice", "short"));
+            assertEquals("short", bob.receive(Message.Type.BROADCAST).getContent());
+            assertFalse(bob.lastCompressed());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testSlowConsumerDisconnected(ServerConfig.Transport transport) throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        config.setQueueCapacity(4);
+        int port = startServer(config);
+        String content = "x".repeat(64 * 1024);
+        int broadcasts = 300;
+
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join();
+             TestClient stalled = new TestClient("stalled", port).join()) {
+            alice.awaitMembers("alice", "bob", "stalled");
+            bob.awaitMembers("alice", "bob", "stalled");
+
+            // stalled never reads, so its queue fills once the socket buffers do; bob keeps pace
+            for (int i = 0; i < broadcasts; i++) {
+                alice.send(Message.createBroadcast("alice", content));
+                assertEquals(content, bob.receive(Message.Type.BROADCAST).getContent());
+            }
+
+            awaitCondition(() -> !server.getQueueDepths().containsKey("stalled"));
+            assertTrue(server.getQueueDepths().containsKey("bob"));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testMembershipDeltas(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        String deltas = new Handshake().set(Handshake.MEMBERSHIP, Handshake.DELTA).toString();
+        try (TestClient alice = new TestClient("alice", port, WireFormat.BINARY.codec()).join(deltas);
+             TestClient bob = new TestClient("bob", port);
+             TestClient carol = new TestClient("carol", port, WireFormat.BINARY.codec())) {
+            String snapshot = alice.receive(Message.Type.MEMBER_LIST).getContent();
+            long version = MembershipPayload.version(snapshot);
+            assertEquals(1, MembershipPayload.members(snapshot).size());
+            assertTrue(MembershipPayload.members(snapshot).get(0).host());
+
+            // Legacy members still get the text list, delta members only the change
+            bob.join().awaitMembers("alice", "bob");
+            String joined = alice.receive(Message.Type.MEMBER_JOINED).getContent();
+            assertEquals(version + 1, MembershipPayload.version(joined));
+            assertEquals("bob", MembershipPayload.members(joined).get(0).getId());
+
+            carol.join(deltas);
+            snapshot = carol.receive(Message.Type.MEMBER_LIST).getContent();
+            assertEquals(version + 2, MembershipPayload.version(snapshot));
+            assertEquals(3, MembershipPayload.members(snapshot).size());
+
+            alice.send(new Message("alice", null, Message.Type.LEAVE, "Leaving group"));
+            String left = carol.receive(Message.Type.MEMBER_LEFT).getContent();
+            String hostChanged = carol.receive(Message.Type.HOST_CHANGED).getContent();
+            assertAll(
+                () -> assertEquals(version + 3, MembershipPayload.version(left)),
+                () -> assertEquals("alice", MembershipPayload.memberId(left)),
+                () -> assertEquals(version + 4, MembershipPayload.version(hostChanged)),
+                () -> assertTrue(bob.receive(Message.Type.MEMBER_LIST).getContent().contains("host=true")),
+                () -> assertTrue(bob.receivesNothing(Message.Type.MEMBER_LEFT, 200))
+            );
+
+            // A client that notices a gap asks for a fresh snapshot
+            carol.send(new Message("carol", null, Message.Type.MEMBER_LIST, ""));
+            snapshot = carol.receive(Message.Type.MEMBER_LIST).getContent();
+            assertEquals(version + 4, MembershipPayload.version(snapshot));
+            assertEquals(2, MembershipPayload.members(snapshot).size());
+        }
+    }
+
+    private static String catchUp() {
+        return new Handshake().set(Handshake.REPLAY, "true").toString();
+    }
+
+    private static String rejoin(Handshake welcome, long lastSequence) {
+        return new Handshake()
+            .set(Handshake.REPLAY, "true")
+            .set(Handshake.HISTORY, welcome.get(Handshake.HISTORY))
+            .set(Handshake.TOKEN, welcome.get(Handshake.TOKEN))
+            .set(Handshake.LAST_SEQUENCE, Long.toString(lastSequence))
+            .toString();
+    }
+
+    // Chat messages replayed before REPLAY_END, which must name the given sequence
+    private static List<Message> replayed(TestClient client, long until) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        while (true) {
+            Message message = client.receive();
+            switch (message.getType()) {
+                case BROADCAST, PRIVATE -> messages.add(message);
+                case REPLAY_END -> {
+                    assertEquals(until, Handshake.parse(message.getContent()).getLong(Handshake.SEQUENCE, 0));
+                    return messages;
+                }
+                default -> { }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testReplayAfterReconnect(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        try (TestClient bob = new TestClient("bob", port, WireFormat.BINARY.codec()).join()) {
+            Handshake welcome;
+            try (TestClient alice = new TestClient("alice", port, WireFormat.BINARY.codec()).join(catchUp())) {
+                welcome = Handshake.parse(alice.receive(Message.Type.WELCOME).getContent());
+                bob.awaitMembers("alice", "bob");
+                bob.send(Message.createBroadcast("bob", "seen"));
+                assertEquals("seen", alice.receive(Message.Type.BROADCAST).getContent());
+            }
+            awaitCondition(() -> server.memberCount() == 1);
+
+            bob.send(Message.createBroadcast("bob", "missed 1"));
+            bob.send(Message.createPrivate("bob", "alice", "missed 2"));
+            bob.send(Message.createPrivate("bob", "carol", "not for alice"));
+            bob.send(Message.createBroadcast("bob", "missed 3"));
+            long seen = welcome.getLong(Handshake.SEQUENCE, -1) + 1;
+            awaitCondition(() -> server.latestSequence() == seen + 4);
+
+            try (TestClient alice = new TestClient("alice", port, WireFormat.BINARY.codec())
+                    .join(rejoin(welcome, seen))) {
+                Handshake again = Handshake.parse(alice.receive(Message.Type.WELCOME).getContent());
+                assertEquals(welcome.get(Handshake.HISTORY), again.get(Handshake.HISTORY));
+                assertNotEquals(welcome.get(Handshake.TOKEN), again.get(Handshake.TOKEN));
+
+                List<Message> missed = replayed(alice, seen + 4);
+                assertEquals(List.of("missed 1", "missed 2", "missed 3"),
+                    missed.stream().map(Message::getContent).toList());
+                assertEquals(List.of(seen + 1, seen + 2, seen + 4),
+                    missed.stream().map(Message::getSequence).toList());
+            }
+        }
+    }
+
+    @Test
+    void testReplayFallsBackToJournal(@TempDir Path directory) throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setHistoryCapacity(4);
+        config.setReplayPageSize(3);
+        JournalConfig journal = new JournalConfig(directory);
+        journal.setFsyncIntervalMillis(1);
+        config.setJournal(journal);
+        int port = startServer(config);
+
+        try (TestClient bob = new TestClient("bob", port).join()) {
+            Handshake welcome;
+            try (TestClient alice = new TestClient("alice", port).join(catchUp())) {
+                welcome = Handshake.parse(alice.receive(Message.Type.WELCOME).getContent());
+            }
+            awaitCondition(() -> server.memberCount() == 1);
+
+            // Far more than the ring holds
+            for (int i = 0; i < 20; i++) {
+                bob.send(Message.createBroadcast("bob", "missed " + i));
+            }
+            long seen = welcome.getLong(Handshake.SEQUENCE, -1);
+            awaitCondition(() -> server.latestSequence() == seen + 20);
+            try (TestClient alice = new TestClient("alice", port).join(rejoin(welcome, seen))) {
+                List<Message> missed = replayed(alice, seen + 20);
+                assertEquals(20, missed.size());
+                for (int i = 0; i < 20; i++) {
+                    assertEquals("missed " + i, missed.get(i).getContent());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testReconnectTakesOverWithToken() throws Exception {
+        int port = startServer(ServerConfig.Transport.BLOCKING);
+        try (TestClient alice = new TestClient("alice", port).join(catchUp())) {
+            Handshake welcome = Handshake.parse(alice.receive(Message.Type.WELCOME).getContent());
+
+            // Without the token the id is still taken
+            try (TestClient impostor = new TestClient("alice", port).join(catchUp())) {
+                assertEquals(Message.Type.ERROR, impostor.receive().getType());
+            }
+
+            // With it, the new connection replaces the one the server still thinks is alive
+            try (TestClient again = new TestClient("alice", port).join(rejoin(welcome, 0))) {
+                again.receive(Message.Type.WELCOME);
+                assertThrows(IOException.class, () -> alice.receive(Message.Type.BROADCAST));
+
+                try (TestClient bob = new TestClient("bob", port).join()) {
+                    bob.awaitMembers("alice", "bob");
+                    bob.send(Message.createBroadcast("bob", "still here?"));
+                    assertEquals("still here?", again.receive(Message.Type.BROADCAST).getContent());
+                    assertEquals(2, server.memberCount());
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testRoomBroadcastStaysInRoom(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        try (TestClient alice = new TestClient("alice", port, WireFormat.BINARY.codec()).join();
+             TestClient bob = new TestClient("bob", port, WireFormat.BINARY.codec()).join();
+             TestClient carol = new TestClient("carol", port, WireFormat.BINARY.codec()).join()) {
+            alice.send(new Message("alice", "general", Message.Type.ROOM_JOIN, ""));
+            assertEquals("alice", alice.receive(Message.Type.ROOM_JOIN).getContent());
+            bob.send(new Message("bob", "general", Message.Type.ROOM_JOIN, ""));
+            assertEquals("alice\nbob", bob.receive(Message.Type.ROOM_JOIN).getContent());
+            assertEquals("bob", alice.receive(Message.Type.ROOM_JOIN).getSenderId());
+
+            alice.send(new Message("alice", "general", Message.Type.BROADCAST, "in the room"));
+            Message received = bob.receive(Message.Type.BROADCAST);
+            assertEquals("general", received.getRecipientId());
+            assertEquals("in the room", received.getContent());
+            assertTrue(carol.receivesNothing(Message.Type.BROADCAST, 200));
+
+            // Only members may speak in a room
+            carol.send(new Message("carol", "general", Message.Type.BROADCAST, "let me in"));
+            assertTrue(carol.receive(Message.Type.ERROR).getContent().contains("not in room"));
+
+            // The room's host leaving hands the room over, independently of the server-wide host
+            alice.send(new Message("alice", "general", Message.Type.ROOM_LEAVE, ""));
+            assertEquals("alice", bob.receive(Message.Type.ROOM_LEAVE).getSenderId());
+            assertEquals("bob", bob.receive(Message.Type.ROOM_HOST).getContent());
+
+            bob.send(new Message("bob", "general", Message.Type.ROOM_LEAVE, ""));
+            awaitCondition(() -> server.roomCount() == 0);
+        }
+    }
+
+    // Messages become searchable within the index's refresh interval, so ask until they are
+    private static List<Message> search(TestClient client, SearchPayload.Query query, int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            client.send(new Message(client.getId(), null, Message.Type.SEARCH, SearchPayload.query(query)));
+            String results = client.receive(Message.Type.SEARCH).getContent();
+            assertEquals(query.id(), SearchPayload.queryId(results));
+            List<Message> hits = SearchPayload.hits(results);
+            if (hits.size() >= expected || System.currentTimeMillis() > deadline) {
+                return hits;
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testSearchFindsOnlyWhatTheMemberCouldSee(ServerConfig.Transport transport) throws Exception {
+        int port = startServer(transport);
+        try (TestClient alice = new TestClient("alice", port, WireFormat.BINARY.codec()).join();
+             TestClient bob = new TestClient("bob", port, WireFormat.BINARY.codec()).join();
+             TestClient carol = new TestClient("carol", port, WireFormat.BINARY.codec()).join()) {
+            bob.awaitMembers("alice", "bob", "carol");
+            carol.awaitMembers("alice", "bob", "carol");
+            alice.send(Message.createBroadcast("alice", "The quarterly report is ready"));
+            bob.receive(Message.Type.BROADCAST);
+            alice.send(Message.createPrivate("alice", "bob", "Report password:\tswordfish"));
+            bob.receive(Message.Type.PRIVATE);
+            bob.send(Message.createBroadcast("bob", "Lunch at noon?"));
+            alice.receive(Message.Type.BROADCAST);
+
+            List<Message> hits = search(bob, new SearchPayload.Query(1, "REPORT", 10), 2);
+            assertEquals(2, hits.size());
+            assertEquals("Report password:\tswordfish", hits.get(0).getContent());
+            assertEquals(Message.Type.PRIVATE, hits.get(0).getType());
+            assertEquals("The quarterly report is ready", hits.get(1).getContent());
+            assertTrue(hits.get(0).getSequence() > hits.get(1).getSequence());
+
+            // Someone else's private message stays private
+            hits = search(carol, new SearchPayload.Query(2, "report", 10), 1);
+            assertEquals(List.of("The quarterly report is ready"), hits.stream().map(Message::getContent).toList());
+
+            hits = search(carol, new SearchPayload.Query(3, "", "bob", 0, 0, 10), 1);
+            assertEquals(List.of("Lunch at noon?"), hits.stream().map(Message::getContent).toList());
+            assertTrue(search(carol, new SearchPayload.Query(4, "dinner", 10), 0).isEmpty());
+        }
+    }
+
+    @Test
+    void testSearchRefusedWithoutIndex() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setSearch(null);
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join()) {
+            alice.send(new Message("alice", null, Message.Type.SEARCH,
+                SearchPayload.query(new SearchPayload.Query(1, "anything", 10))));
+            assertTrue(alice.receive(Message.Type.ERROR).getContent().contains("not enabled"));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testRateLimitRejectsFloodUntilLifted(ServerConfig.Transport transport) throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        config.getRateLimits().setMemberLimit(new RateLimit(1, 3));
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            for (int i = 0; i < 5; i++) {
+                alice.send(Message.createBroadcast("alice", "spam " + i));
+            }
+            assertTrue(alice.receive(Message.Type.ERROR).getContent().startsWith("Rate limit exceeded"));
+            alice.receive(Message.Type.ERROR);
+            for (int i = 0; i < 3; i++) {
+                assertEquals("spam " + i, bob.receive(Message.Type.BROADCAST).getContent());
+            }
+            assertTrue(bob.receivesNothing(Message.Type.BROADCAST, 200));
+            assertTrue(server.scrape().contains("groupchat_messages_limited_total{type=\"BROADCAST\"} 2\n"));
+
+            server.setRateLimits(null);
+            alice.send(Message.createBroadcast("alice", "let through"));
+            assertEquals("let through", bob.receive(Message.Type.BROADCAST).getContent());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testForgedSenderCannotDodgeRateLimit(ServerConfig.Transport transport) throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        config.getRateLimits().setMemberLimit(new RateLimit(1, 2));
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            alice.send(Message.createBroadcast("alice", "first"));
+            alice.send(Message.createBroadcast("alice", "second"));
+            alice.send(Message.createBroadcast("bob", "as bob"));
+            alice.send(Message.createBroadcast("nobody", "as nobody"));
+            alice.send(Message.createBroadcast("alice", "third"));
+
+            assertTrue(alice.receive(Message.Type.ERROR).getContent().contains("must be sent as alice"));
+            assertTrue(alice.receive(Message.Type.ERROR).getContent().contains("must be sent as alice"));
+            assertTrue(alice.receive(Message.Type.ERROR).getContent().startsWith("Rate limit exceeded"));
+            assertEquals("first", bob.receive(Message.Type.BROADCAST).getContent());
+            assertEquals("second", bob.receive(Message.Type.BROADCAST).getContent());
+            assertTrue(bob.receivesNothing(Message.Type.BROADCAST, 200));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testRateLimitPausesReadingFromSender(ServerConfig.Transport transport) throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        config.getRateLimits().setTypeLimit(Message.Type.BROADCAST, new RateLimit(20, 1));
+        config.getRateLimits().setPolicy(RateLimits.Policy.PAUSE);
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            long start = System.nanoTime();
+            for (int i = 0; i < 6; i++) {
+                alice.send(Message.createBroadcast("alice", "burst " + i));
+            }
+            for (int i = 0; i < 6; i++) {
+                assertEquals("burst " + i, bob.receive(Message.Type.BROADCAST).getContent());
+            }
+            // One goes straight through, the other five wait 50 ms each
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsed >= 200, "took " + elapsed + " ms");
+            assertTrue(alice.receivesNothing(Message.Type.ERROR, 100));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testDrainDeliversQueuedMessagesThenSendsMembersAway(ServerConfig.Transport transport) throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        config.setReconnectTo("chat2.example.com:9000");
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            alice.send(Message.createBroadcast("alice", "one"));
+            alice.send(Message.createBroadcast("alice", "two"));
+            // Alice's messages are handled in order, so once her search is answered both are queued for bob
+            alice.send(new Message("alice", null, Message.Type.SEARCH,
+                SearchPayload.query(new SearchPayload.Query(1, "anything", 1))));
+            alice.receive(Message.Type.SEARCH);
+
+            assertTrue(server.drain(5000));
+
+            assertEquals("one", bob.receive(Message.Type.BROADCAST).getContent());
+            assertEquals("two", bob.receive(Message.Type.BROADCAST).getContent());
+            Handshake hint = Handshake.parse(bob.receive(Message.Type.RECONNECT).getContent());
+            assertEquals("chat2.example.com:9000", hint.get(Handshake.SERVER));
+            assertTrue(hint.getLong(Handshake.WITHIN, 0) > 0);
+            assertThrows(EOFException.class, bob::receive);
+            alice.receive(Message.Type.RECONNECT);
+            assertThrows(IOException.class, () -> new TestClient("carol", port).join().receive());
+        }
+    }
+
+    @Test
+    void testReconnectRejoinsRoomsBeforeReplay() throws Exception {
+        int port = startServer(ServerConfig.Transport.BLOCKING);
+        try (TestClient bob = new TestClient("bob", port).join()) {
+            bob.send(new Message("bob", "general", Message.Type.ROOM_JOIN, ""));
+            bob.receive(Message.Type.ROOM_JOIN);
+            Handshake welcome;
+            try (TestClient alice = new TestClient("alice", port).join(catchUp())) {
+                welcome = Handshake.parse(alice.receive(Message.Type.WELCOME).getContent());
+                alice.send(new Message("alice", "general", Message.Type.ROOM_JOIN, ""));
+                alice.receive(Message.Type.ROOM_JOIN);
+            }
+            awaitCondition(() -> server.memberCount() == 1);
+
+            bob.send(new Message("bob", "general", Message.Type.BROADCAST, "room message"));
+            bob.send(new Message("bob", "elsewhere", Message.Type.BROADCAST, "not a member"));
+            long seen = welcome.getLong(Handshake.SEQUENCE, -1);
+            awaitCondition(() -> server.latestSequence() == seen + 1);
+
+            String rejoin = rejoin(welcome, seen) + ";" + Handshake.ROOMS + "=general";
+            try (TestClient alice = new TestClient("alice", port).join(rejoin)) {
+                assertEquals(List.of("room message"),
+                    replayed(alice, seen + 1).stream().map(Message::getContent).toList());
+            }
+        }
+    }
+
+    @Test
+    void testMetricsEndpoint() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setMetricsPort(0);
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            alice.send(Message.createBroadcast("alice", "Hello everyone!"));
+            bob.receive(Message.Type.BROADCAST);
+
+            HttpClient http = HttpClient.newHttpClient();
+            HttpResponse<String> response = http.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + server.metricsPort() + "/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            String body = response.body();
+
+            assertAll(
+                () -> assertEquals(200, response.statusCode()),
+                () -> assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain")),
+                () -> assertTrue(body.contains("groupchat_joins_total 2\n")),
+                () -> assertTrue(body.contains("groupchat_messages_in_total{type=\"BROADCAST\"} 1\n")),
+                () -> assertTrue(body.contains("groupchat_broadcast_fanout_seconds_count 1\n")),
+                () -> assertTrue(body.contains("groupchat_members 2\n")),
+                () -> assertTrue(body.contains("groupchat_connections_open 2\n"))
+            );
+        }
+    }
+
+    @Test
+    void testNioBuffersGoBackToThePool() throws Exception {
+        int port = startServer(ServerConfig.Transport.NIO);
+        String large = "x".repeat(2 * BufferPool.MAX_SIZE);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join();
+             TestClient carol = new TestClient("carol", port).join()) {
+            carol.awaitMembers("alice", "bob", "carol");
+            for (int i = 0; i < 50; i++) {
+                alice.send(Message.createBroadcast("alice", "Message " + i));
+            }
+            alice.send(Message.createPrivate("alice", "bob", "Hi bob"));
+            alice.send(Message.createBroadcast("alice", large));
+
+            for (int i = 0; i < 50; i++) {
+                assertEquals("Message " + i, carol.receive(Message.Type.BROADCAST).getContent());
+            }
+            assertEquals("Hi bob", bob.receive(Message.Type.PRIVATE).getContent());
+            assertEquals(large.length(), carol.receive(Message.Type.BROADCAST).getContent().length());
+        }
+        awaitCondition(() -> server.memberCount() == 0);
+        awaitCondition(() -> server.bufferPool().buffersInUse() == 0);
+        assertTrue(server.scrape().contains("groupchat_buffers_in_use 0\n"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Transport.class)
+    void testTracesSampledMessages(ServerConfig.Transport transport) throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setTransport(transport);
+        config.setTraceSampleEvery(1);
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            alice.send(Message.createBroadcast("alice", "Hello everyone!"));
+            bob.receive(Message.Type.BROADCAST);
+
+            // The trace finishes once the writer is back from the socket, just after bob can read it. On
+            // NIO bob's loop may write before alice's loop has recorded the fan-out, so wait for every stage.
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            List<String> stages = List.of("read", "fanout", "queued", "write");
+            while (!stages.stream().allMatch(stage ->
+                    server.scrape().contains("groupchat_trace_" + stage + "_seconds_count 1\n"))) {
+                assertTrue(System.nanoTime() < deadline, "trace not finished within 2s: " + server.scrape());
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    void testSilentMemberTimesOut() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setHeartbeatTimeoutMillis(1000);
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            long start = System.nanoTime();
+
+            // bob keeps sending heartbeats, alice goes quiet
+            while (server.getQueueDepths().containsKey("alice")) {
+                bob.send(Message.createHeartbeat("bob"));
+                assertTrue(System.nanoTime() - start < 3_000_000_000L, "alice not expired within 3s");
+                Thread.sleep(100);
+            }
+
+            // Timed out one timeout after joining, plus at most a tick or two
+            assertTrue(System.nanoTime() - start < 2_000_000_000L);
+            assertTrue(server.getQueueDepths().containsKey("bob"));
+        }
+    }
+
+    @Test
+    void testAnyMessageCountsAsHeartbeat() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setHeartbeatTimeoutMillis(1000);
+        int port = startServer(config);
+        try (TestClient alice = new TestClient("alice", port).join();
+             TestClient bob = new TestClient("bob", port).join()) {
+            bob.awaitMembers("alice", "bob");
+            long start = System.nanoTime();
+
+            // Only chat from bob, no heartbeats, for twice the timeout
+            while (System.nanoTime() - start < 2_000_000_000L) {
+                bob.send(Message.createPrivate("bob", "bob", "still here"));
+                Thread.sleep(100);
+            }
+
+            assertTrue(server.getQueueDepths().containsKey("bob"));
+            assertFalse(server.getQueueDepths().containsKey("alice"));
+        }
+    }
+
+    @Test
+    void testObjectStreamClientOnBlockingTransport() throws Exception {
+        int port = startServer(ServerConfig.Transport.BLOCKING);
+        try (Socket socket = new Socket("localhost", port);
+             TestClient bob = new TestClient("bob", port)) {
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            out.writeObject(new Message("legacy", null, Message.Type.JOIN, "test"));
+            out.flush();
+            assertEquals(Message.Type.MEMBER_LIST, ((Message) in.readObject()).getType());
+
+            bob.join();
+            bob.send(Message.createBroadcast("bob", "Hello legacy"));
+
+            Message received;
+            do {
+                received = (Message) in.readObject();
+            } while (received.getType() != Message.Type.BROADCAST);
+            assertEquals("Hello legacy", received.getContent());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Member;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeartbeatWheelTest {
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final List<Member> expired = new ArrayList<>();
+
+    @Test
+    void testExpiresWithinATickOfTimeout() throws Exception {
+        Member member = new Member("test1", InetAddress.getLoopbackAddress(), 8080);
+        long start = System.nanoTime();
+        HeartbeatWheel wheel = new HeartbeatWheel(TIMEOUT, TICK, start, expired::add);
+        wheel.add(member);
+
+        wheel.tick(start + TIMEOUT / 2);
+        assertTrue(expired.isEmpty());
+
+        wheel.tick(start + TIMEOUT + 2 * TICK);
+        assertEquals(List.of(member), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testHeartbeatPostponesExpiry() throws Exception {
+        Member member = new Member("test1", InetAddress.getLoopbackAddress(), 8080);
+        long start = System.nanoTime();
+        HeartbeatWheel wheel = new HeartbeatWheel(TIMEOUT, TICK, start, expired::add);
+        wheel.add(member);
+        wheel.tick(start);
+
+        Thread.sleep(300);
+        member.updateHeartbeat();
+
+        // The original deadline passes, but the member is refiled instead of expired
+        wheel.tick(start + TIMEOUT + TICK);
+        assertTrue(expired.isEmpty());
+        assertEquals(1, wheel.size());
+
+        wheel.tick(member.getLastHeartbeatNanos() + TIMEOUT + TICK);
+        assertEquals(List.of(member), expired);
+    }
+
+    @Test
+    void testCatchesUpAfterStall() throws Exception {
+        long start = System.nanoTime();
+        HeartbeatWheel wheel = new HeartbeatWheel(TIMEOUT, TICK, start, expired::add);
+        for (int i = 0; i < 100; i++) {
+            wheel.add(new Member("test" + i, InetAddress.getLoopbackAddress(), 8080 + i));
+        }
+        wheel.tick(start);
+
+        // Several rotations late
+        wheel.tick(start + 10 * TIMEOUT);
+        assertEquals(100, expired.size());
+    }
+}
@@ -0,0 +1,34 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void testRecordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Metrics metrics = new Metrics();
+        Runnable record = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                metrics.fannedOut(i);
+                metrics.messageIn(Message.Type.BROADCAST);
+                metrics.bytesOut(i);
+            }
+        };
+        record.run();
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        record.run();
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // Allow for the measurement itself, far below one object per call
+        assertTrue(allocated < 1024, "Recording allocated " + allocated + " bytes");
+        assertEquals(200_000, metrics.messagesIn(Message.Type.BROADCAST));
+    }
+}
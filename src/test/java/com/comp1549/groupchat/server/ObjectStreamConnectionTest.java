@@ -0,0 +1,70 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectStreamConnectionTest {
+
+    @Test
+    void testStreamResetsPeriodically() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectStreamConnection connection = new ObjectStreamConnection(new Socket(), bytes, new ServerConfig(0), new Metrics());
+        EncodedMessage message = new EncodedMessage(Message.createBroadcast("user1", "Hello everyone!"));
+
+        for (int i = 0; i <= ObjectStreamConnection.RESET_MESSAGES; i++) {
+            connection.write(message);
+        }
+        connection.flush();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Object first = in.readObject();
+        Object second = in.readObject();
+        for (int i = 2; i < ObjectStreamConnection.RESET_MESSAGES; i++) {
+            in.readObject();
+        }
+        Object afterReset = in.readObject();
+
+        // Back-references are kept between resets and dropped by them
+        assertSame(first, second);
+        assertNotSame(first, afterReset);
+        assertEquals("Hello everyone!", ((Message) afterReset).getContent());
+    }
+
+    // Run with: mvn test -Psoak
+    @Test
+    @Tag("soak")
+    void testRetainedMemoryStaysFlat() throws Exception {
+        ObjectStreamConnection connection =
+            new ObjectStreamConnection(new Socket(), OutputStream.nullOutputStream(), new ServerConfig(0), new Metrics());
+        int total = Integer.getInteger("groupchat.soak.messages", 5_000_000);
+
+        long warmHeap = 0;
+        for (int i = 0; i < total; i++) {
+            connection.write(new EncodedMessage(Message.createBroadcast("user" + (i % 100), "message " + i)));
+            if (i == total / 10) {
+                connection.flush();
+                warmHeap = usedHeap();
+            }
+        }
+        connection.flush();
+        long finalHeap = usedHeap();
+
+        assertTrue(finalHeap - warmHeap < 16 * 1024 * 1024,
+            "Heap grew by " + (finalHeap - warmHeap) / 1024 + "KB over " + total + " messages");
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,49 @@
+package com.comp1549.groupchat.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    @Test
+    void testDropOldest() {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(2, ServerConfig.OverflowPolicy.DROP_OLDEST);
+
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+
+        assertAll(
+            () -> assertEquals(1, queue.dropped()),
+            () -> assertEquals(2, queue.poll()),
+            () -> assertEquals(3, queue.poll())
+        );
+    }
+
+    @Test
+    void testDropNewest() {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(2, ServerConfig.OverflowPolicy.DROP_NEWEST);
+
+        queue.offer(1);
+        queue.offer(2);
+        assertTrue(queue.offer(3));
+
+        assertAll(
+            () -> assertEquals(1, queue.dropped()),
+            () -> assertEquals(1, queue.poll()),
+            () -> assertEquals(2, queue.poll()),
+            () -> assertNull(queue.poll())
+        );
+    }
+
+    @Test
+    void testDisconnect() {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(2, ServerConfig.OverflowPolicy.DISCONNECT);
+
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertEquals(2, queue.size());
+    }
+}
@@ -0,0 +1,116 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Handshake;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelFanOutTest {
+    private final ParallelFanOut fanOut = new ParallelFanOut(4);
+
+    @AfterEach
+    void shutdown() {
+        fanOut.shutdown();
+    }
+
+    private static Session[] sessions(int count) {
+        Session[] sessions = new Session[count];
+        for (int i = 0; i < count; i++) {
+            sessions[i] = new Session(null, new Recorder(), new Handshake());
+        }
+        return sessions;
+    }
+
+    private static List<Message> received(Session session) {
+        return ((Recorder) session.connection()).received;
+    }
+
+    @Test
+    void testReachesEveryRecipientOnceButExcluded() throws IOException {
+        Session[] sessions = sessions(5 * ParallelFanOut.STRIPE + 7);
+        sessions[3000] = null;
+        Session excluded = sessions[10];
+        fanOut.send(new EncodedMessage(Message.createBroadcast("alice", "hi")), i -> sessions[i], sessions.length, excluded);
+
+        Set<String> threads = new HashSet<>();
+        for (Session session : sessions) {
+            if (session != null) {
+                assertEquals(session == excluded ? 0 : 1, received(session).size());
+                threads.addAll(((Recorder) session.connection()).threads);
+            }
+        }
+        assertTrue(threads.size() > 1, "ran on " + threads);
+    }
+
+    @Test
+    void testKeepsEachSendersOrder() throws IOException {
+        Session[] sessions = sessions(3 * ParallelFanOut.STRIPE);
+        for (int n = 0; n < 50; n++) {
+            fanOut.send(new EncodedMessage(Message.createBroadcast("alice", Integer.toString(n))),
+                i -> sessions[i], sessions.length, null);
+        }
+        for (Session session : sessions) {
+            List<Message> messages = received(session);
+            for (int n = 0; n < 50; n++) {
+                assertEquals(Integer.toString(n), messages.get(n).getContent());
+            }
+        }
+    }
+
+    @Test
+    void testPassesOnSendFailures() {
+        Session[] sessions = sessions(2 * ParallelFanOut.STRIPE);
+        ((Recorder) sessions[1500].connection()).fail = true;
+        IOException e = assertThrows(IOException.class, () -> fanOut.send(
+            new EncodedMessage(Message.createBroadcast("alice", "hi")), i -> sessions[i], sessions.length, null));
+        assertEquals("closed", e.getMessage());
+    }
+
+    private static final class Recorder implements ClientConnection {
+        final List<Message> received = new ArrayList<>();
+        final Set<String> threads = new HashSet<>();
+        boolean fail;
+
+        @Override
+        public synchronized void send(EncodedMessage message) throws IOException {
+            if (fail) {
+                throw new IOException("closed");
+            }
+            received.add(message.message());
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public int queueDepth() {
+            return 0;
+        }
+
+        @Override
+        public long droppedMessages() {
+            return 0;
+        }
+
+        @Override
+        public InetAddress getAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public int getPort() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
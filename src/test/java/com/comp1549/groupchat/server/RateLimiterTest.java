@@ -0,0 +1,76 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+    private final AtomicLongArray buckets = new AtomicLongArray(RateLimiter.SLOTS);
+
+    private static RateLimiter limiter(RateLimits.Policy policy, RateLimit member) {
+        RateLimits limits = new RateLimits();
+        limits.setPolicy(policy);
+        limits.setMemberLimit(member);
+        return new RateLimiter(limits);
+    }
+
+    @Test
+    void testRejectsOnceBurstIsSpentAndRefills() throws InterruptedException {
+        RateLimiter limiter = limiter(RateLimits.Policy.REJECT, new RateLimit(20, 3));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.admit(buckets, Message.Type.BROADCAST, 0));
+        }
+        long over = limiter.admit(buckets, Message.Type.BROADCAST, 0);
+        assertTrue(over > 0 && over <= 50_000_000L, "over by " + over);
+        // A rejected message takes nothing, so it is still over until a token comes back
+        assertTrue(limiter.admit(buckets, Message.Type.PRIVATE, 0) > 0);
+        assertEquals(0, limiter.admit(buckets, Message.Type.HEARTBEAT, 0));
+
+        Thread.sleep(60);
+        assertEquals(0, limiter.admit(buckets, Message.Type.BROADCAST, 0));
+    }
+
+    @Test
+    void testPauseRunsIntoDebt() {
+        RateLimiter limiter = limiter(RateLimits.Policy.PAUSE, new RateLimit(10, 1));
+        assertEquals(0, limiter.admit(buckets, Message.Type.BROADCAST, 0));
+        long first = limiter.admit(buckets, Message.Type.BROADCAST, 0);
+        long second = limiter.admit(buckets, Message.Type.BROADCAST, 0);
+        assertTrue(first > 50_000_000L && first <= 100_000_000L, "over by " + first);
+        assertTrue(second - first > 90_000_000L, first + " then " + second);
+    }
+
+    @Test
+    void testTypeAndFanOutLimits() {
+        RateLimits limits = new RateLimits();
+        limits.setTypeLimit(Message.Type.SEARCH, new RateLimit(1, 1));
+        limits.setFanOutLimit(new RateLimit(1, 100));
+        RateLimiter limiter = new RateLimiter(limits);
+
+        assertEquals(0, limiter.admit(buckets, Message.Type.SEARCH, 0));
+        assertTrue(limiter.admit(buckets, Message.Type.SEARCH, 0) > 0);
+        assertEquals(0, limiter.admit(buckets, Message.Type.PRIVATE, 0));
+
+        // Bigger than the whole budget: it goes through once and empties it
+        assertEquals(0, limiter.admit(buckets, Message.Type.BROADCAST, 1000));
+        assertTrue(limiter.admit(buckets, Message.Type.BROADCAST, 1) > 0);
+        assertThrows(IllegalArgumentException.class, () -> limits.setTypeLimit(Message.Type.HEARTBEAT, new RateLimit(1, 1)));
+    }
+
+    @Test
+    void testUpdateChangesLimitsInPlace() {
+        RateLimiter limiter = limiter(RateLimits.Policy.REJECT, new RateLimit(1, 1));
+        assertEquals(0, limiter.admit(buckets, Message.Type.BROADCAST, 0));
+        assertTrue(limiter.admit(buckets, Message.Type.BROADCAST, 0) > 0);
+
+        limiter.update(null);
+        assertFalse(limiter.active());
+        assertEquals(0, limiter.admit(buckets, Message.Type.BROADCAST, 0));
+        assertEquals(new RateLimit(5, 5), RateLimit.parse("5"));
+        assertEquals(new RateLimit(5, 10), RateLimit.parse(" 5/10"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimit.parse("fast"));
+    }
+}
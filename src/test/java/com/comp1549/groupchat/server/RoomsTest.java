@@ -0,0 +1,73 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.protocol.Handshake;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomsTest {
+    private final Rooms rooms = new Rooms();
+
+    private static Session session() {
+        return new Session(null, null, new Handshake());
+    }
+
+    @Test
+    void testFirstMemberHostsAndHandsOver() {
+        rooms.join("general", "alice", session());
+        rooms.join("general", "bob", session());
+        rooms.join("random", "bob", session());
+
+        assertEquals("alice", rooms.get("general").host());
+        assertEquals("bob", rooms.get("random").host());
+        assertNull(rooms.leave("general", "carol"));
+        assertEquals("bob", rooms.leave("general", "alice"));
+        assertEquals("bob", rooms.get("general").host());
+        assertEquals(Set.of("bob"), Set.copyOf(rooms.get("general").memberIds()));
+    }
+
+    @Test
+    void testEmptyRoomIsDropped() {
+        rooms.join("general", "alice", session());
+        assertNull(rooms.leave("general", "alice"));
+
+        assertNull(rooms.get("general"));
+        assertEquals(0, rooms.size());
+        assertEquals("bob", rooms.join("general", "bob", session()).host());
+    }
+
+    @Test
+    void testConcurrentJoinsAndLeaves() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            String member = "member" + t;
+            threads.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    rooms.join("room" + (i % 8), member, session());
+                    rooms.leave("room" + (i % 8), member);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        threads.shutdown();
+
+        // Every room emptied out, so none is left behind
+        assertEquals(0, rooms.size());
+    }
+
+    @Test
+    void testNamesMustFitInAHandshake() {
+        assertTrue(Rooms.isValidName("general"));
+        assertFalse(Rooms.isValidName("a,b"));
+        assertFalse(Rooms.isValidName("a;b"));
+        assertFalse(Rooms.isValidName(" "));
+    }
+}
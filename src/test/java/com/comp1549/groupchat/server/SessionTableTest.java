@@ -0,0 +1,75 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.protocol.Handshake;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTableTest {
+    private final SessionTable table = new SessionTable(2);
+
+    private static Session session() {
+        return new Session(null, null, new Handshake());
+    }
+
+    @Test
+    void testReusesLowestFreeHandle() {
+        Session alice = session();
+        Session bob = session();
+        Session carol = session();
+        Session dave = session();
+        assertEquals(0, table.add(alice));
+        assertEquals(1, table.add(bob));
+        assertEquals(2, table.add(carol));
+        assertEquals(3, table.add(dave));
+
+        assertTrue(table.remove(carol));
+        assertTrue(table.remove(alice));
+        assertFalse(table.remove(alice));
+        assertEquals(-1, alice.handle());
+        assertEquals(2, table.size());
+        assertEquals(4, table.limit());
+
+        assertEquals(0, table.add(session()));
+        assertEquals(2, table.add(session()));
+        assertEquals(4, table.add(session()));
+        assertSame(bob, table.get(1));
+        assertSame(dave, table.get(3));
+    }
+
+    @Test
+    void testLimitShrinksPastTrailingGaps() {
+        List<Session> added = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            added.add(session());
+            table.add(added.get(i));
+        }
+        table.remove(added.get(2));
+        table.remove(added.get(3));
+        table.remove(added.get(4));
+
+        assertEquals(2, table.limit());
+        assertNull(table.get(2));
+        assertEquals(2, table.add(session()));
+        assertEquals(3, table.add(session()));
+        assertEquals(4, table.limit());
+    }
+
+    @Test
+    void testGrowsPastInitialCapacity() {
+        List<Session> added = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Session session = session();
+            assertEquals(i, table.add(session));
+            added.add(session);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertSame(added.get(i), table.get(i));
+        }
+        assertNull(table.get(100));
+        assertThrows(IllegalStateException.class, () -> table.add(added.get(0)));
+    }
+}
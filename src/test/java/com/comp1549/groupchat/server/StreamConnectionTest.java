@@ -0,0 +1,163 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.WireFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamConnectionTest {
+    private final Metrics metrics = new Metrics();
+    private ServerSocket listener;
+    private Socket client;
+    private Socket accepted;
+    private DataInputStream in;
+    private FramedStreamConnection connection;
+    private Thread writer;
+
+    // The server end of a loopback socket pair; its writer is started separately
+    private FramedStreamConnection connect(ServerConfig config) throws IOException {
+        listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort());
+        client.setSoTimeout(5000);
+        accepted = listener.accept();
+        in = new DataInputStream(client.getInputStream());
+        connection = new FramedStreamConnection(accepted, WireFormat.BINARY, config, metrics);
+        return connection;
+    }
+
+    private void startWriter() {
+        writer = new Thread(connection::writeLoop);
+        writer.start();
+    }
+
+    private String receive() throws IOException {
+        byte[] frame = Frames.readFrame(in);
+        return WireFormat.decode(frame, 0, frame.length).getContent();
+    }
+
+    private static EncodedMessage broadcast(String content) {
+        return new EncodedMessage(Message.createBroadcast("alice", content));
+    }
+
+    @AfterEach
+    void closeSockets() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (writer != null) {
+            writer.join(5000);
+        }
+        for (AutoCloseable closeable : new AutoCloseable[]{client, accepted, listener}) {
+            if (closeable != null) {
+                closeable.close();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.OverflowPolicy.class)
+    void testClosesAfterDrainingFullQueue(ServerConfig.OverflowPolicy policy) throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setQueueCapacity(2);
+        config.setOverflowPolicy(policy);
+        connect(config);
+
+        // The queue is full before the writer starts, and more arrives after the close is asked for
+        connection.send(broadcast("first"));
+        connection.send(broadcast("second"));
+        connection.closeWhenDrained();
+        connection.send(broadcast("too late"));
+        connection.send(broadcast("later still"));
+        startWriter();
+
+        assertEquals("first", receive());
+        assertEquals("second", receive());
+        assertThrows(EOFException.class, () -> Frames.readFrame(in));
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+    }
+
+    @Test
+    void testLoneMessageIsFlushedWithoutWaiting() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        // Lingering for this long would outlast the client's read timeout
+        config.setMaxFlushDelayMicros(TimeUnit.SECONDS.toMicros(30));
+        connect(config);
+        startWriter();
+
+        long start = System.nanoTime();
+        connection.send(broadcast("alone"));
+        assertEquals("alone", receive());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, metrics.socketWrites());
+    }
+
+    @Test
+    void testBurstIsWrittenTogetherWithinMaxFlushDelay() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setMaxFlushDelayMicros(TimeUnit.MILLISECONDS.toMicros(300));
+        connect(config);
+
+        // Everything already queued goes out in one write
+        for (int i = 0; i < 5; i++) {
+            connection.send(broadcast("queued " + i));
+        }
+        startWriter();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("queued " + i, receive());
+        }
+        assertEquals(1, metrics.socketWrites());
+
+        // Now in a burst: the next message waits for company, up to maxFlushDelay, and shares its write
+        long start = System.nanoTime();
+        connection.send(broadcast("first"));
+        Thread.sleep(50);
+        connection.send(broadcast("second"));
+        assertEquals("first", receive());
+        assertEquals("second", receive());
+        long waited = System.nanoTime() - start;
+
+        assertEquals(2, metrics.socketWrites());
+        assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(200), "Flushed after only " + waited + "ns");
+        assertTrue(waited < TimeUnit.MILLISECONDS.toNanos(300 + 500), "Flushed after " + waited + "ns");
+    }
+
+    @Test
+    void testFlushBytesBudgetForcesWrite() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setFlushBytes(1024);
+        config.setMaxFlushDelayMicros(TimeUnit.SECONDS.toMicros(30));
+        connect(config);
+
+        connection.send(broadcast("one"));
+        connection.send(broadcast("two"));
+        startWriter();
+        assertEquals("one", receive());
+        assertEquals("two", receive());
+
+        // In a burst that lingers far longer than the client waits: only the byte budget can write
+        // the first two of these, and the third stays buffered
+        String padding = "x".repeat(400);
+        for (int i = 0; i < 3; i++) {
+            connection.send(broadcast(i + padding));
+        }
+        assertEquals("0" + padding, receive());
+        assertEquals("1" + padding, receive());
+        client.setSoTimeout(300);
+        assertThrows(SocketTimeoutException.class, () -> Frames.readFrame(in));
+    }
+}
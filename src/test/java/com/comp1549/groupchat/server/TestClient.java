@@ -0,0 +1,120 @@
+package com.comp1549.groupchat.server;
+
+import com.comp1549.groupchat.model.Message;
+import com.comp1549.groupchat.protocol.Compression;
+import com.comp1549.groupchat.protocol.Frames;
+import com.comp1549.groupchat.protocol.MessageCodec;
+import com.comp1549.groupchat.protocol.SerializationCodec;
+import com.comp1549.groupchat.protocol.WireFormat;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+// Minimal framed client for driving a server from tests
+class TestClient implements Closeable {
+    private final String id;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final MessageCodec codec;
+    private WireFormat lastFormat;
+    private boolean lastCompressed;
+
+    TestClient(String id, int port) throws IOException {
+        this(id, port, new SerializationCodec());
+    }
+
+    TestClient(String id, int port, MessageCodec codec) throws IOException {
+        this.id = id;
+        this.socket = new Socket("localhost", port);
+        this.socket.setSoTimeout(5000);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = socket.getOutputStream();
+        this.codec = codec;
+    }
+
+    TestClient join() throws IOException {
+        return join("test");
+    }
+
+    TestClient join(String content) throws IOException {
+        send(new Message(id, null, Message.Type.JOIN, content));
+        return this;
+    }
+
+    void send(Message message) throws IOException {
+        out.write(Frames.frame(codec.encode(message)));
+    }
+
+    // In a single socket write, so the server reads them all at once
+    void sendTogether(List<Message> messages) throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (Message message : messages) {
+            frames.write(Frames.frame(codec.encode(message)));
+        }
+        out.write(frames.toByteArray());
+    }
+
+    Message receive() throws IOException {
+        byte[] frame = Frames.readFrame(in);
+        lastCompressed = Compression.isCompressed(frame, 0, frame.length);
+        if (lastCompressed) {
+            frame = Compression.decompress(frame, 0, frame.length);
+        }
+        lastFormat = WireFormat.of(frame, 0, frame.length);
+        return lastFormat.codec().decode(frame, 0, frame.length);
+    }
+
+    // Skips messages of other types, e.g. member list updates
+    Message receive(Message.Type type) throws IOException {
+        while (true) {
+            Message message = receive();
+            if (message.getType() == type) {
+                return message;
+            }
+        }
+    }
+
+    // Waits until a member list names every given member
+    void awaitMembers(String... ids) throws IOException {
+        while (true) {
+            String members = receive(Message.Type.MEMBER_LIST).getContent();
+            if (java.util.Arrays.stream(ids).allMatch(id -> members.contains("id='" + id + "'"))) {
+                return;
+            }
+        }
+    }
+
+    // True if nothing of the given type arrives within the timeout
+    boolean receivesNothing(Message.Type type, int timeoutMillis) throws IOException {
+        int previous = socket.getSoTimeout();
+        socket.setSoTimeout(timeoutMillis);
+        try {
+            receive(type);
+            return false;
+        } catch (SocketTimeoutException e) {
+            return true;
+        } finally {
+            socket.setSoTimeout(previous);
+        }
+    }
+
+    WireFormat lastFormat() {
+        return lastFormat;
+    }
+
+    boolean lastCompressed() {
+        return lastCompressed;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}